@@ -0,0 +1,117 @@
+package pl.edu.icm.pl.mxrdr.extension.importer.cbf;
+
+import edu.harvard.iq.dataverse.importer.metadata.ResultField;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of a Pilatus cbf header, both from already read lines and from a frame file
+ * followed by binary data of the given size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CbfFileParserBenchmark {
+
+    private static final List<String> HEADER_LINES = Arrays.asList(
+            "###CBF: VERSION 1.5, CBFlib v0.7.8 - PILATUS detectors",
+            "",
+            "data_test",
+            "",
+            "_array_data.header_convention \"PILATUS_1.2\"",
+            "_array_data.header_contents",
+            ";",
+            "# Detector: PILATUS 6M-F, S/N 60-0112-F",
+            "# 2013-06-21T10:53:14.620",
+            "# Pixel_size 172e-6 m x 172e-6 m",
+            "# Silicon sensor, thickness 0.000450 m",
+            "# Exposure_time 0.0990000 s",
+            "# Exposure_period 0.1000000 s",
+            "# Tau = 383.8e-09 s",
+            "# Count_cutoff 152194 counts",
+            "# Threshold_setting: 6329 eV",
+            "# Gain_setting: mid gain (vrf = -0.200)",
+            "# N_excluded_pixels = 1685",
+            "# Excluded_pixels: badpix_mask.tif",
+            "# Flat_field: FF_p60-0112-F_E12658_T6329_vrf_m0p20.tif",
+            "# Trim_file: p60-0112-F_E12658_T6329.bin",
+            "# Image_path: /ramdisk/",
+            "# Wavelength 0.72932 A",
+            "# Detector_distance 0.19050 m",
+            "# Beam_xy (1221.62, 1257.86) pixels",
+            "# Start_angle 303.5800 deg.",
+            "# Angle_increment 0.1000 deg.",
+            "# Detector_2theta 0.0000 deg.",
+            "# Oscillation_axis X, CW",
+            "# N_oscillations 1",
+            ";",
+            "",
+            "_array_data.data",
+            ";",
+            "--CIF-BINARY-FORMAT-SECTION--",
+            "Content-Type: application/octet-stream;");
+
+    /**
+     * Size of binary data following the header, 6 MB is typical for Pilatus 6M frames.
+     */
+    @Param({ "0", "6144" })
+    private int binaryKilobytes;
+
+    private final CbfFileParser parser = new CbfFileParser();
+
+    private Path cbfFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        cbfFile = Files.createTempFile("benchmark", ".cbf");
+        try (OutputStream output = Files.newOutputStream(cbfFile)) {
+            output.write(String.join("\r\n", HEADER_LINES).getBytes(CbfHeaderReader.CBF_HEADER_CHARSET));
+            output.write("\r\n".getBytes(CbfHeaderReader.CBF_HEADER_CHARSET));
+            byte[] binary = new byte[1024];
+            Random random = new Random(0);
+            for (int i = 0; i < binaryKilobytes; i++) {
+                random.nextBytes(binary);
+                output.write(binary);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(cbfFile);
+    }
+
+    // -------------------- BENCHMARKS --------------------
+
+    @Benchmark
+    public List<ResultField> parseLines() {
+        return parser.parse(HEADER_LINES);
+    }
+
+    @Benchmark
+    public List<ResultField> parseFile() throws IOException {
+        return parser.parse(new CbfHeaderReader(cbfFile));
+    }
+}
@@ -0,0 +1,54 @@
+package pl.edu.icm.pl.mxrdr.extension.importer.cif.file;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rcsb.cif.schema.mm.MmCifBlock;
+import org.rcsb.cif.schema.mm.MmCifFile;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang3.StringUtils.EMPTY;
+
+/**
+ * Filling of container from the 4pvm.cif fixture, with and without reading the file itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CifDataContainerBenchmark {
+
+    private File cifFile;
+    private MmCifBlock cifBlock;
+
+    @Setup
+    public void setUp() throws URISyntaxException {
+        cifFile = new File(getClass().getClassLoader().getResource("cif/4pvm.cif").toURI());
+        cifBlock = CifFileReader.readAndParseCifFile(cifFile, null).getFirstBlock();
+    }
+
+    // -------------------- BENCHMARKS --------------------
+
+    @Benchmark
+    public CifDataContainer init() {
+        return new CifDataContainer().init(cifBlock, EMPTY);
+    }
+
+    @Benchmark
+    public CifDataContainer readAndInit() {
+        MmCifFile mmCifFile = CifFileReader.readAndParseCifFile(cifFile, null);
+        return new CifDataContainer().init(mmCifFile.getFirstBlock(), EMPTY);
+    }
+}
@@ -0,0 +1,59 @@
+package pl.edu.icm.pl.mxrdr.extension.importer.common;
+
+import edu.harvard.iq.dataverse.importer.metadata.ResultField;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.edu.icm.pl.mxrdr.extension.importer.cif.file.CifDataContainer;
+import pl.edu.icm.pl.mxrdr.extension.importer.cif.file.CifFileReader;
+import pl.edu.icm.pl.mxrdr.extension.importer.pdb.PdbDataContainer;
+import pl.edu.icm.pl.mxrdr.extension.importer.pdb.StructureDataProvider;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang3.StringUtils.EMPTY;
+
+/**
+ * Mapping of containers filled from the cif and pdb fixtures into result fields.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommonMapperBenchmark {
+
+    @Param({ "cif", "pdb" })
+    private String source;
+
+    private DataContainer container;
+
+    @Setup
+    public void setUp() throws URISyntaxException {
+        if ("cif".equals(source)) {
+            File cifFile = new File(getClass().getClassLoader().getResource("cif/4pvm.cif").toURI());
+            container = new CifDataContainer().init(CifFileReader.readAndParseCifFile(cifFile, null).getFirstBlock(), EMPTY);
+        } else {
+            container = new PdbDataContainer().init(new StructureDataProvider().createStructureData(), null);
+        }
+    }
+
+    // -------------------- BENCHMARKS --------------------
+
+    @Benchmark
+    public List<ResultField> toResultFields() {
+        return new CommonMapper(container).toResultFields();
+    }
+}
@@ -0,0 +1,46 @@
+package pl.edu.icm.pl.mxrdr.extension.importer.pdb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.edu.icm.pl.mxrdr.extension.importer.pdb.model.StructureData;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filling of container from structure data of the pdb/*.json fixtures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PdbDataContainerBenchmark {
+
+    private StructureData structureData;
+
+    @Setup
+    public void setUp() {
+        structureData = new StructureDataProvider().createStructureData();
+    }
+
+    // -------------------- BENCHMARKS --------------------
+
+    @Benchmark
+    public PdbDataContainer initWithFirstDataSet() {
+        return new PdbDataContainer().init(structureData, null);
+    }
+
+    @Benchmark
+    public PdbDataContainer initWithGivenDataSet() {
+        return new PdbDataContainer().init(structureData, "2");
+    }
+}
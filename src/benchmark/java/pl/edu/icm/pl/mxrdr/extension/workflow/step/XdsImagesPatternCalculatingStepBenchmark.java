@@ -0,0 +1,66 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import edu.harvard.iq.dataverse.workflow.step.WorkflowStepParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.IMAGES_DIR_PARAM_DEFAULT;
+
+/**
+ * Calculation of images name pattern and detection of all sweeps for synthetic sweeps of the given
+ * number of frames, listed in random order and mixed with some unrelated files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class XdsImagesPatternCalculatingStepBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    private int frames;
+
+    private final XdsImagesPatternCalculatingStep step = new XdsImagesPatternCalculatingStep(new WorkflowStepParams());
+
+    private List<String> fileNames;
+
+    @Setup
+    public void setUp() {
+        fileNames = new ArrayList<>(frames + frames / 1000);
+        for (int frame = 1; frame <= frames; frame++) {
+            fileNames.add(String.format("%s/pomiar08_1_%07d.cbf", IMAGES_DIR_PARAM_DEFAULT, frame));
+            if (frame % 1000 == 0) {
+                fileNames.add(String.format("%s/snapshot_%d.jpg", IMAGES_DIR_PARAM_DEFAULT, frame / 1000));
+            }
+        }
+        Collections.shuffle(fileNames, new Random(0));
+    }
+
+    // -------------------- BENCHMARKS --------------------
+
+    @Benchmark
+    public String calculatePattern() {
+        return step.calculatePattern(fileNames);
+    }
+
+    @Benchmark
+    public List<ImageSweep> detectSweeps() {
+        return new ImageSweepDetector().detect(fileNames);
+    }
+}
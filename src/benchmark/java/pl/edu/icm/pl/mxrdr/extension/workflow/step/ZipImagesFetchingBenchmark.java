@@ -0,0 +1,161 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import edu.harvard.iq.dataverse.persistence.datafile.FileMetadata;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.FetchedImages;
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.ImageFetcher;
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.Storage;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Extraction of images from a generated ZIP archive of the given size, compared with the former
+ * extraction reading entries byte by byte. Archive also contains non-image entries of the same size,
+ * which are skipped without inflating when the archive is read as a local file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ZipImagesFetchingBenchmark {
+
+    private static final int IMAGE_SIZE = 4 * 1024 * 1024;
+
+    @Param({ "1024" })
+    private int megabytes;
+
+    @Param({ "4" })
+    private int parallelism;
+
+    private Path zipFile;
+    private Path imgDir;
+    private FileMetadata metadata;
+
+    @Setup
+    public void setUp() throws IOException {
+        zipFile = Files.createTempFile("benchmark", ".zip");
+        imgDir = Files.createTempDirectory("benchmark");
+        metadata = new FileMetadata();
+        metadata.setLabel("images.zip");
+
+        byte[] image = new byte[IMAGE_SIZE];
+        Random random = new Random(0);
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(zipFile)))) {
+            zip.setLevel(1);
+            for (int i = 1; i <= megabytes * 1024L * 1024L / (2 * IMAGE_SIZE); i++) {
+                // images are noisy, but with limited range of values, so compressible to some extent
+                for (int j = 0; j < image.length; j++) {
+                    image[j] = (byte) random.nextInt(16);
+                }
+                zip.putNextEntry(new ZipEntry(String.format("sweep/frame_%05d.cbf", i)));
+                zip.write(image);
+                zip.closeEntry();
+                zip.putNextEntry(new ZipEntry(String.format("processed/frame_%05d.hkl", i)));
+                zip.write(image);
+                zip.closeEntry();
+            }
+            zip.putNextEntry(new ZipEntry("sweep/README.txt"));
+            zip.write("not an image".getBytes());
+            zip.closeEntry();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void cleanImgDir() throws IOException {
+        FileUtils.cleanDirectory(imgDir.toFile());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(imgDir.toFile());
+        Files.deleteIfExists(zipFile);
+    }
+
+    // -------------------- BENCHMARKS --------------------
+
+    @Benchmark
+    public List<String> fetchZipContents() throws IOException {
+        return new ImageFetcher(metadata, fileMetadata -> () -> Files.newInputStream(zipFile))
+                .fetchInto(imgDir);
+    }
+
+    @Benchmark
+    public List<String> fetchLocalZipEntries() throws IOException {
+        Storage localStorage = new Storage() {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return Files.newInputStream(zipFile);
+            }
+
+            @Override
+            public Optional<Path> getLocalPath() {
+                return Optional.of(zipFile);
+            }
+        };
+        return new ImageFetcher(metadata, fileMetadata -> localStorage, new FetchedImages(), parallelism)
+                .fetchInto(imgDir);
+    }
+
+    @Benchmark
+    public List<String> byteByByteExtraction() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(zipFile))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (!entry.isDirectory() && ImageFetcher.IMAGES_PATTERNS.test(entry.getName())) {
+                    String fileName = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+                    Files.copy(new ByteByByteInputStream(zip), imgDir.resolve(fileName));
+                    names.add(fileName);
+                }
+                zip.closeEntry();
+            }
+        }
+        return names;
+    }
+
+    // -------------------- INNER CLASSES --------------------
+
+    /**
+     * Former non closable stream, overriding only single byte read.
+     */
+    private static class ByteByByteInputStream extends InputStream {
+
+        private final InputStream stream;
+
+        ByteByByteInputStream(InputStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return stream.read();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package pl.edu.icm.pl.mxrdr.extension.xds.input;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputFileProcessor.XDS_INPUT_FILE_NAME;
+import static pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputParameterProcessor.replaceAnyValue;
+import static pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputParameterProcessor.replaceUndefinedValue;
+
+/**
+ * Processing of the xar-test-XDS.INP fixture, repeated the given number of times, with the set
+ * of processors applied when filling missing input and adjusting resolution.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XdsInputFileProcessorBenchmark {
+
+    @Param({ "1", "1000" })
+    private int copies;
+
+    private byte[] content;
+    private Path workDir;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] fixture;
+        try (InputStream input = getClass().getResourceAsStream("/xds/xar-test-XDS.INP")) {
+            fixture = IOUtils.toByteArray(input);
+        }
+        content = new byte[fixture.length * copies];
+        for (int copy = 0; copy < copies; copy++) {
+            System.arraycopy(fixture, 0, content, copy * fixture.length, fixture.length);
+        }
+        workDir = Files.createTempDirectory("benchmark");
+    }
+
+    @Setup(Level.Invocation)
+    public void writeInput() throws IOException {
+        FileUtils.cleanDirectory(workDir.toFile());
+        try (OutputStream output = Files.newOutputStream(workDir.resolve(XDS_INPUT_FILE_NAME))) {
+            output.write(content);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(workDir.toFile());
+    }
+
+    // -------------------- BENCHMARKS --------------------
+
+    @Benchmark
+    public void process() throws IOException {
+        new XdsInputFileProcessor(workDir)
+                .with(replaceUndefinedValue("DETECTOR_DISTANCE", () -> "190.5"))
+                .with(replaceUndefinedValue("OSCILLATION_RANGE", () -> "0.1"))
+                .with(replaceUndefinedValue("STARTING_ANGLE", () -> "303.58"))
+                .with(replaceUndefinedValue("X-RAY_WAVELENGTH", () -> "0.72932"))
+                .with(replaceUndefinedValue("ORGX", () -> "1221.62"))
+                .with(replaceUndefinedValue("ORGY", () -> "1257.86"))
+                .with(replaceAnyValue("INCLUDE_RESOLUTION_RANGE", () -> "50 2.11"))
+                .withNewParam("MAXIMUM_NUMBER_OF_PROCESSORS", "4")
+                .withNewParam("MAXIMUM_NUMBER_OF_JOBS", "2")
+                .process();
+    }
+}
@@ -0,0 +1,76 @@
+package pl.edu.icm.pl.mxrdr.extension.xds.output;
+
+import edu.harvard.iq.dataverse.importer.metadata.ResultField;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of CORRECT.LP fixtures, as they are and repeated up to the given size,
+ * which is how statistics of large datasets look to the parser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512m")
+public class XdsOutputFileParserBenchmark {
+
+    @Param({ "CORRECT.LP", "xar-test-CORRECT.LP" })
+    private String fixture;
+
+    /**
+     * Minimal size of parsed file, 0 for the fixture as it is.
+     */
+    @Param({ "0", "50" })
+    private int megabytes;
+
+    private Path correctLp;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] content;
+        try (InputStream input = getClass().getResourceAsStream("/xds/" + fixture)) {
+            content = IOUtils.toByteArray(input);
+        }
+        correctLp = Files.createTempFile("benchmark", XdsOutputFileParser.XDS_OUTPUT_FILE_NAME);
+        try (OutputStream output = Files.newOutputStream(correctLp)) {
+            long written = 0;
+            do {
+                output.write(content);
+                written += content.length;
+            } while (written < megabytes * 1024L * 1024L);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(correctLp);
+    }
+
+    // -------------------- BENCHMARKS --------------------
+
+    @Benchmark
+    public List<ResultField> asResultFields() {
+        return new XdsOutputFileParser(correctLp.toFile()).asResultFields();
+    }
+}
@@ -0,0 +1,97 @@
+package pl.edu.icm.pl.mxrdr.extension.xds.output;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Compares recognition of high resolution shell rows by {@link XdsStatisticsRow} with the former
+ * split, regex cleaning and boxed parsing of each row. Both process all lines of the fixture.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XdsStatisticsRowBenchmark {
+
+    @Param({ "CORRECT.LP", "xar-test-CORRECT.LP" })
+    private String fixture;
+
+    private List<String> lines;
+
+    private final XdsStatisticsRow row = new XdsStatisticsRow();
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream input = getClass().getResourceAsStream("/xds/" + fixture)) {
+            lines = IOUtils.readLines(input, XdsOutputFileParser.XDS_OUTPUT_FILE_CHARSET).stream()
+                    .map(StringUtils::normalizeSpace)
+                    .collect(toList());
+        }
+    }
+
+    // -------------------- BENCHMARKS --------------------
+
+    @Benchmark
+    public int statisticsRowScanner() {
+        int hrsRows = 0;
+        for (String line : lines) {
+            if (row.scan(line) && row.isPercentage(4) && row.isPercentage(5) && row.isPercentage(6)
+                    && isHrs((float) row.value(0), (float) row.value(8), (float) row.value(10))) {
+                hrsRows++;
+            }
+        }
+        return hrsRows;
+    }
+
+    @Benchmark
+    public int splitAndReplace() {
+        int hrsRows = 0;
+        for (String line : lines) {
+            String[] values = StringUtils.normalizeSpace(line).split(" ");
+            if (values.length != 14) {
+                continue;
+            }
+            double resolution = 0.0;
+            double sigma = 0.0;
+            double cc = 0.0;
+            try {
+                resolution = Float.valueOf(values[0].replaceAll("[^\\d.+-]", ""));
+                sigma = Float.valueOf(values[8].replaceAll("[^\\d.+-]", ""));
+                cc = Float.valueOf(values[10].replaceAll("[^\\d.+-]", ""));
+            } catch (NumberFormatException e) {
+                // row not matching, same as in the former parser
+            }
+            if (isHrs(resolution, sigma, cc)
+                    && values[4].endsWith("%") && values[5].endsWith("%") && values[6].endsWith("%")) {
+                hrsRows++;
+            }
+        }
+        return hrsRows;
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private static boolean isHrs(double resolution, double sigma, double cc) {
+        return resolution > 0.3 && resolution < 5.0 && sigma > 1.19 && sigma <= 100 && cc > 50.0;
+    }
+}
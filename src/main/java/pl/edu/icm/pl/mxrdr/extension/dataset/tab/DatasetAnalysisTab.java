@@ -19,6 +19,9 @@ import org.apache.commons.lang.StringUtils;
 import org.omnifaces.util.Faces;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.edu.icm.pl.mxrdr.extension.workflow.XdsAnalysisScheduler;
+import pl.edu.icm.pl.mxrdr.extension.workflow.XdsProgress;
+import pl.edu.icm.pl.mxrdr.extension.workflow.XdsProgressTracker;
 
 import javax.faces.view.ViewScoped;
 import javax.inject.Inject;
@@ -47,15 +50,22 @@ public class DatasetAnalysisTab implements Serializable {
 
     private WorkflowArtifactServiceBean workflowArfifactService;
 
+    private XdsAnalysisScheduler analysisScheduler;
+
+    private XdsProgressTracker progressTracker;
+
     @Inject
     public DatasetAnalysisTab(SettingsServiceBean settingsService, PermissionsWrapper permissionsWrapper,
             WorkflowExecutionService workflowServiceBean,
-            WorkflowArtifactServiceBean workflowArtifactService, DatasetFieldServiceBean datasetFields) {
+            WorkflowArtifactServiceBean workflowArtifactService, DatasetFieldServiceBean datasetFields,
+            XdsAnalysisScheduler analysisScheduler, XdsProgressTracker progressTracker) {
         this.settingsService = settingsService;
         this.permissionsWrapper = permissionsWrapper;
         this.workflowServiceBean = workflowServiceBean;
         this.workflowArfifactService = workflowArtifactService;
         this.datasetFields = datasetFields;
+        this.analysisScheduler = analysisScheduler;
+        this.progressTracker = progressTracker;
 
     }
 
@@ -122,14 +132,48 @@ public class DatasetAnalysisTab implements Serializable {
         return permissionsWrapper.canViewUnpublishedDataset(dataset);
     }
 
-    public boolean isAnalysisQueuedButNotStarted(WorkflowExecution workflowExecution) {
-        return workflowExecution != null && workflowExecution.getSteps().size() == 0;
+    public boolean isAnalysisQueuedButNotStarted(DatasetVersion datasetVersion, WorkflowExecution workflowExecution) {
+        return workflowExecution != null
+                && (workflowExecution.getSteps().size() == 0 || isAnalysisWaitingForAdmission(datasetVersion));
+    }
+
+    /**
+     * @return true if the analysis is started, but waits for its turn to run on this node.
+     */
+    public boolean isAnalysisWaitingForAdmission(DatasetVersion datasetVersion) {
+        return datasetVersion.getId() != null && analysisScheduler.queuePosition(datasetVersion.getId()).isPresent();
+    }
+
+    /**
+     * @return position (counted from 1) of the analysis among analyses waiting to run on this node,
+     * or 0 if it's not waiting.
+     */
+    public int getAnalysisQueuePosition(DatasetVersion datasetVersion) {
+        return datasetVersion.getId() != null
+                ? analysisScheduler.queuePosition(datasetVersion.getId()).orElse(0)
+                : 0;
+    }
+
+    public int getAnalysisQueueDepth() {
+        return analysisScheduler.queueDepth();
     }
 
     public boolean isAnalysisInProgress(WorkflowExecution workflowExecution) {
         return workflowExecution != null && !workflowExecution.isFinished();
     }
 
+    /**
+     * @return progress of XDS processing images of the running analysis, or null if it's not known,
+     * including the case of unknown number of images to process.
+     */
+    public XdsProgress getAnalysisProgress(DatasetVersion datasetVersion) {
+        return datasetVersion.getId() != null
+                ? progressTracker.progressOf(datasetVersion.getId())
+                    .filter(progress -> progress.getTotalImages() > 0)
+                    .orElse(null)
+                : null;
+    }
+
     public boolean isAnalysisNotPerformed(WorkflowExecution workflowExecution) {
         return workflowExecution == null;
     }
@@ -176,10 +220,14 @@ public class DatasetAnalysisTab implements Serializable {
             return "dataset.analysisTab.dataset.in.draft.message";
         } else if (datasetVersion.getDataset().hasActiveEmbargo() && !isPermissionToViewFiles(datasetVersion.getDataset())) {
             return "dataset.analysisTab.embargo.message";
-        } else if (isAnalysisQueuedButNotStarted(workflowExecution)) {
-            return "dataset.analysisTab.analysis.in.queue.message";
+        } else if (isAnalysisQueuedButNotStarted(datasetVersion, workflowExecution)) {
+            return isAnalysisWaitingForAdmission(datasetVersion)
+                    ? "dataset.analysisTab.analysis.in.queue.position.message"
+                    : "dataset.analysisTab.analysis.in.queue.message";
         } else if (isAnalysisInProgress(workflowExecution)) {
-            return "dataset.analysisTab.analysis.in.progress.message";
+            return getAnalysisProgress(datasetVersion) != null
+                    ? "dataset.analysisTab.analysis.in.progress.images.message"
+                    : "dataset.analysisTab.analysis.in.progress.message";
         } else if (isAnalysisNotPerformed(workflowExecution)) {
             return "dataset.analysisTab.analysis.not.performed.message";
         } else if (isAnalysisFailure(workflowExecution)) {
@@ -7,11 +7,18 @@ import javax.inject.Singleton;
 
 import org.apache.commons.lang3.StringUtils;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Class designed to parse cbf file.
+ * <p>
+ * Each header line is tokenized once and dispatched on its leading <code># Keyword</code>
+ * through a table of supported keywords, so lines not carrying any of them cost
+ * a single scan without any intermediate strings.
  */
 @Singleton
 public class CbfFileParser {
@@ -23,37 +30,30 @@ public class CbfFileParser {
      * @return list with extracted fields, or empty if none was extracted.
      */
     List<ResultField> parse(List<String> cbfLines) {
-
-    List<ResultField> results = new ArrayList<>();
-    List<ResultField> dataCollectionChildren = new ArrayList<>();
-
+        HeaderFields headerFields = new HeaderFields();
         for (String cbfLine : cbfLines) {
+            headerFields.accept(cbfLine);
+        }
+        return headerFields.toResultFields();
+    }
 
-            addIfPresentWithResultAdd(MxrdrMetadataField.DETECTOR_TYPE.getValue(), extractDetectorType(cbfLine.toLowerCase(), cbfLine), results);
-
-            addIfPresentWithResultAdd(MxrdrMetadataField.DATA_COLLECTION_DETECTOR_DISTANCE.getValue(),
-                    convertToMilimeters(extractField(cbfLine.toLowerCase(), cbfLine, "detector_distance", 2)), dataCollectionChildren);
-            addIfPresentWithResultAdd(MxrdrMetadataField.DATA_COLLECTION_OSCILLATION_STEP_SIZE.getValue(),
-                    extractField(cbfLine.toLowerCase(), cbfLine, "angle_increment", 2), dataCollectionChildren);
-            addIfPresentWithResultAdd(MxrdrMetadataField.DATA_COLLECTION_DETECTOR_OVERLOAD.getValue(),
-                    extractField(cbfLine.toLowerCase(), cbfLine, "count_cutoff", 2), dataCollectionChildren);
-            addIfPresentWithResultAdd(MxrdrMetadataField.DATA_COLLECTION_DETECTOR_THICKNESS.getValue(),
-                    convertToMilimeters(extractField(cbfLine.toLowerCase(), cbfLine, "thickness", 4)), dataCollectionChildren);
-            addIfPresentWithResultAdd(MxrdrMetadataField.DATA_COLLECTION_STARTING_ANGLE.getValue(),
-                    extractField(cbfLine.toLowerCase(), cbfLine, "start_angle", 2), dataCollectionChildren);
-            addIfPresentWithResultAdd(MxrdrMetadataField.DATA_COLLECTION_WAVELENGTH.getValue(),
-                    extractField(cbfLine.toLowerCase(), cbfLine, "wavelength", 2), dataCollectionChildren);
-            addIfPresentWithResultAdd(MxrdrMetadataField.DATA_COLLECTION_ORG_X.getValue(),
-                    extractOrgX(cbfLine.toLowerCase(), cbfLine), dataCollectionChildren);
-            addIfPresentWithResultAdd(MxrdrMetadataField.DATA_COLLECTION_ORG_Y.getValue(),
-                    extractOrgY(cbfLine.toLowerCase(), cbfLine), dataCollectionChildren);
-
+    /**
+     * Extracts metadataFields from header lines pushed one by one by the given source,
+     * without collecting the lines first.
+     * @return list with extracted fields, or empty if none was extracted.
+     * @throws IOException in case of source I/O issues.
+     */
+    List<ResultField> parse(HeaderSource headerSource) throws IOException {
+        HeaderFields headerFields = new HeaderFields();
+        headerSource.readInto(headerFields::accept);
+        return headerFields.toResultFields();
+    }
 
+    public List<ResultField> addIfPresentWithResultAdd(String name, String extractedValue, List<ResultField> results) {
+        if (!extractedValue.isEmpty()) {
+            results.add(ResultField.of(name, extractedValue));
+            return results;
         }
-        if (!dataCollectionChildren.isEmpty()) {
-            results.add(ResultField.of(MxrdrMetadataField.DATA_COLLECTION.getValue(), dataCollectionChildren.toArray(new ResultField[0])));
-        }
-
         return results;
     }
 
@@ -65,7 +65,7 @@ public class CbfFileParser {
      * @param parsedValue Value parsed from file in meters
      * @return Value in milimeters
      */
-    private String convertToMilimeters(String parsedValue) {
+    private static String convertToMilimeters(String parsedValue) {
         if (StringUtils.isNotEmpty(parsedValue)) {
             return "" + (Float.parseFloat(parsedValue) * 1000);
         } else {
@@ -73,47 +73,198 @@ public class CbfFileParser {
         }
     }
 
+    // -------------------- INNER CLASSES --------------------
 
-    private String extractDetectorType(String normalizedCbfLine, String originalCbfLine) {
-        if (normalizedCbfLine.contains("detector:")) {
-            String[] splittedCbf = originalCbfLine.split(" ");
-            return splittedCbf[2] + " " + splittedCbf[3].replaceAll(",", "");
-        }
-        return "";
+    /**
+     * Source of cbf header lines.
+     */
+    @FunctionalInterface
+    interface HeaderSource {
+        void readInto(Consumer<String> lineConsumer) throws IOException;
     }
 
-    private String extractField(String normalizedCbfLine, String originalCbfLine, String filteredField, int fieldPosition) {
-        if (normalizedCbfLine.contains(filteredField)) {
-            String[] splittedCbf = originalCbfLine.split(" ");
-            return splittedCbf[fieldPosition];
+    /**
+     * Collects fields extracted from consecutive header lines.
+     */
+    private class HeaderFields {
+
+        private final HeaderLine headerLine = new HeaderLine();
+        private final List<ResultField> results = new ArrayList<>();
+        private final List<ResultField> dataCollectionChildren = new ArrayList<>();
+
+        void accept(String cbfLine) {
+            if (!headerLine.tokenize(cbfLine)) {
+                return;
+            }
+            HeaderKeyword keyword = HeaderKeyword.of(headerLine);
+            if (keyword != null) {
+                keyword.extract(headerLine, this);
+            } else if (headerLine.isSensorThickness()) {
+                addToDataCollection(MxrdrMetadataField.DATA_COLLECTION_DETECTOR_THICKNESS,
+                        convertToMilimeters(headerLine.token(4)));
+            }
         }
-        return "";
-    }
 
-    private String extractOrgX(String normalizedCbfLine, String originalCbfLine) {
-        if (normalizedCbfLine.contains("beam_xy")) {
-            String[] splittedCbf = originalCbfLine.split(" ");
-            return splittedCbf[2]
-                    .replace("(", "")
-                    .replace(",", "");
+        void add(MxrdrMetadataField field, String value) {
+            addIfPresentWithResultAdd(field.getValue(), value, results);
+        }
+
+        void addToDataCollection(MxrdrMetadataField field, String value) {
+            addIfPresentWithResultAdd(field.getValue(), value, dataCollectionChildren);
+        }
+
+        List<ResultField> toResultFields() {
+            List<ResultField> fields = new ArrayList<>(results);
+            if (!dataCollectionChildren.isEmpty()) {
+                fields.add(ResultField.of(MxrdrMetadataField.DATA_COLLECTION.getValue(),
+                        dataCollectionChildren.toArray(new ResultField[0])));
+            }
+            return fields;
         }
-        return "";
     }
 
-    private String extractOrgY(String normalizedCbfLine, String originalCbfLine) {
-        if (normalizedCbfLine.contains("beam_xy")) {
-            String[] splittedCbf = originalCbfLine.split(" ");
-            return splittedCbf[3]
-                    .replace(")", "");
+    /**
+     * Supported header keywords, matched case insensitively against the token following <code>#</code>.
+     */
+    private enum HeaderKeyword {
+        DETECTOR("detector:") {
+            @Override
+            void extract(HeaderLine line, HeaderFields fields) {
+                if (line.tokenCount() > 3) {
+                    fields.add(MxrdrMetadataField.DETECTOR_TYPE, line.token(2) + " " + line.token(3).replace(",", ""));
+                }
+            }
+        },
+        DETECTOR_DISTANCE("detector_distance", MxrdrMetadataField.DATA_COLLECTION_DETECTOR_DISTANCE, true),
+        ANGLE_INCREMENT("angle_increment", MxrdrMetadataField.DATA_COLLECTION_OSCILLATION_STEP_SIZE, false),
+        COUNT_CUTOFF("count_cutoff", MxrdrMetadataField.DATA_COLLECTION_DETECTOR_OVERLOAD, false),
+        START_ANGLE("start_angle", MxrdrMetadataField.DATA_COLLECTION_STARTING_ANGLE, false),
+        WAVELENGTH("wavelength", MxrdrMetadataField.DATA_COLLECTION_WAVELENGTH, false),
+        BEAM_XY("beam_xy") {
+            @Override
+            void extract(HeaderLine line, HeaderFields fields) {
+                if (line.tokenCount() > 3) {
+                    fields.addToDataCollection(MxrdrMetadataField.DATA_COLLECTION_ORG_X,
+                            line.token(2).replace("(", "").replace(",", ""));
+                    fields.addToDataCollection(MxrdrMetadataField.DATA_COLLECTION_ORG_Y,
+                            line.token(3).replace(")", ""));
+                }
+            }
+        };
+
+        private static final HeaderKeyword[][] BY_LENGTH = byLength();
+
+        private final String keyword;
+        private final MxrdrMetadataField field;
+        private final boolean inMeters;
+
+        HeaderKeyword(String keyword) {
+            this(keyword, null, false);
+        }
+
+        HeaderKeyword(String keyword, MxrdrMetadataField field, boolean inMeters) {
+            this.keyword = keyword;
+            this.field = field;
+            this.inMeters = inMeters;
+        }
+
+        void extract(HeaderLine line, HeaderFields fields) {
+            if (line.tokenCount() > 2) {
+                String value = line.token(2);
+                fields.addToDataCollection(field, inMeters ? convertToMilimeters(value) : value);
+            }
+        }
+
+        /**
+         * Finds keyword of the given line. Keywords are bucketed by length, which is unique
+         * for each of them, so usually at most one comparison is made.
+         */
+        static HeaderKeyword of(HeaderLine line) {
+            int length = line.tokenLength(1);
+            if (length >= BY_LENGTH.length) {
+                return null;
+            }
+            for (HeaderKeyword candidate : BY_LENGTH[length]) {
+                if (line.tokenEqualsIgnoreCase(1, candidate.keyword)) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+
+        private static HeaderKeyword[][] byLength() {
+            int maxLength = Arrays.stream(values()).mapToInt(value -> value.keyword.length()).max().orElse(0);
+            HeaderKeyword[][] byLength = new HeaderKeyword[maxLength + 1][];
+            for (int length = 0; length <= maxLength; length++) {
+                int keywordLength = length;
+                byLength[length] = Arrays.stream(values())
+                        .filter(value -> value.keyword.length() == keywordLength)
+                        .toArray(HeaderKeyword[]::new);
+            }
+            return byLength;
         }
-        return "";
     }
 
-    public List<ResultField> addIfPresentWithResultAdd(String name, String extractedValue, List<ResultField> results) {
-        if (!extractedValue.isEmpty()) {
-            results.add(ResultField.of(name, extractedValue));
-            return results;
+    /**
+     * Reusable whitespace tokenizer of a single header line. Keeps only token boundaries,
+     * strings are created just for the values actually extracted.
+     */
+    private static class HeaderLine {
+
+        private static final int MAX_TOKENS = 5;
+
+        private final int[] starts = new int[MAX_TOKENS];
+        private final int[] ends = new int[MAX_TOKENS];
+
+        private String line;
+        private int tokenCount;
+
+        /**
+         * @return true if the line is a <code># Keyword ...</code> header line.
+         */
+        boolean tokenize(String line) {
+            this.line = line;
+            tokenCount = 0;
+            int length = line.length();
+            int position = 0;
+            while (tokenCount < MAX_TOKENS) {
+                while (position < length && Character.isWhitespace(line.charAt(position))) {
+                    position++;
+                }
+                if (position == length) {
+                    break;
+                }
+                starts[tokenCount] = position;
+                while (position < length && !Character.isWhitespace(line.charAt(position))) {
+                    position++;
+                }
+                ends[tokenCount++] = position;
+            }
+            return tokenCount > 1 && tokenLength(0) == 1 && line.charAt(starts[0]) == '#';
+        }
+
+        int tokenCount() {
+            return tokenCount;
+        }
+
+        int tokenLength(int index) {
+            return ends[index] - starts[index];
+        }
+
+        String token(int index) {
+            return line.substring(starts[index], ends[index]);
+        }
+
+        boolean tokenEqualsIgnoreCase(int index, String value) {
+            return tokenLength(index) == value.length()
+                    && line.regionMatches(true, starts[index], value, 0, value.length());
+        }
+
+        /**
+         * Sensor line has the form of <code># Silicon sensor, thickness 0.000450 m</code>.
+         */
+        boolean isSensorThickness() {
+            return tokenCount > 4 && tokenEqualsIgnoreCase(3, "thickness");
         }
-        return results;
     }
 }
@@ -0,0 +1,127 @@
+package pl.edu.icm.pl.mxrdr.extension.importer.cbf;
+
+import com.google.common.io.InputSupplier;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Reads text header of cbf file, line by line, up to the beginning of binary data section
+ * (marked with {@value BINARY_SECTION_MARKER}). Bytes are scanned directly from a small
+ * buffer, so only a bounded prefix of the (usually large) file is ever read and decoded.
+ */
+class CbfHeaderReader implements CbfFileParser.HeaderSource {
+
+    static final String BINARY_SECTION_MARKER = "CIF-BINARY-FORMAT-SECTION";
+
+    static final Charset CBF_HEADER_CHARSET = Charset.forName("windows-1252");
+
+    private static final byte[] BINARY_SECTION_MARKER_BYTES = BINARY_SECTION_MARKER.getBytes(CBF_HEADER_CHARSET);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputSupplier<? extends ReadableByteChannel> channelSupplier;
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    CbfHeaderReader(Path cbfFile) {
+        this(() -> FileChannel.open(cbfFile, StandardOpenOption.READ));
+    }
+
+    CbfHeaderReader(InputSupplier<? extends ReadableByteChannel> channelSupplier) {
+        this.channelSupplier = channelSupplier;
+    }
+
+    // -------------------- LOGIC --------------------
+
+    /**
+     * Passes consecutive header lines (without line terminators) to the given consumer.
+     * Stops at the first line containing {@value BINARY_SECTION_MARKER}, which is not passed.
+     */
+    @Override
+    public void readInto(Consumer<String> lineConsumer) throws IOException {
+        try (ReadableByteChannel channel = channelSupplier.getInput()) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            LineBuffer line = new LineBuffer();
+            boolean afterCarriageReturn = false;
+
+            while (channel.read(buffer) != -1) {
+                byte[] bytes = buffer.array();
+                int length = buffer.position();
+                for (int i = 0; i < length; i++) {
+                    byte current = bytes[i];
+                    if (current == '\n' && afterCarriageReturn) {
+                        afterCarriageReturn = false;
+                    } else if (current == '\n' || current == '\r') {
+                        afterCarriageReturn = current == '\r';
+                        if (!line.flushInto(lineConsumer)) {
+                            return;
+                        }
+                    } else {
+                        afterCarriageReturn = false;
+                        line.append(current);
+                    }
+                }
+                buffer.clear();
+            }
+            if (!line.isEmpty()) {
+                line.flushInto(lineConsumer);
+            }
+        }
+    }
+
+    // -------------------- INNER CLASSES --------------------
+
+    /**
+     * Growable buffer for bytes of a single line.
+     */
+    private static class LineBuffer {
+
+        private byte[] bytes = new byte[256];
+        private int length;
+
+        void append(byte value) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length * 2);
+            }
+            bytes[length++] = value;
+        }
+
+        boolean isEmpty() {
+            return length == 0;
+        }
+
+        /**
+         * @return false if the line marks the beginning of binary section and reading should stop.
+         */
+        boolean flushInto(Consumer<String> lineConsumer) {
+            if (containsBinarySectionMarker()) {
+                return false;
+            }
+            lineConsumer.accept(new String(bytes, 0, length, CBF_HEADER_CHARSET));
+            length = 0;
+            return true;
+        }
+
+        private boolean containsBinarySectionMarker() {
+            int markerLength = BINARY_SECTION_MARKER_BYTES.length;
+            for (int start = 0; start <= length - markerLength; start++) {
+                int matched = 0;
+                while (matched < markerLength && bytes[start + matched] == BINARY_SECTION_MARKER_BYTES[matched]) {
+                    matched++;
+                }
+                if (matched == markerLength) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -14,12 +14,8 @@ import pl.edu.icm.pl.mxrdr.extension.importer.MetadataBlock;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -77,9 +73,9 @@ public class CbfImporter implements MetadataImporter {
         if (map.containsKey(CbfImporterForm.CBF_FILE)) {
             File cbfFile = (File) map.get(CbfImporterForm.CBF_FILE);
 
-            List<String> cbfLines = readCbfWithoutBinaryData(cbfFile);
-
-            return cbfFileParser.parse(cbfLines);
+            return CbfSweepParser.isSweep(cbfFile)
+                    ? parseSweepHeaders(cbfFile)
+                    : parseHeader(cbfFile);
         }
 
         return Collections.emptyList();
@@ -91,7 +87,8 @@ public class CbfImporter implements MetadataImporter {
 
         File cbfFile = (File) importerInput.get(CbfImporterForm.CBF_FILE);
 
-        if (cbfFile != null && !FilenameUtils.getExtension(cbfFile.getName()).equals("cbf")) {
+        if (cbfFile != null && !CbfSweepParser.isSweep(cbfFile)
+                && !FilenameUtils.getExtension(cbfFile.getName()).equals("cbf")) {
             errors.put(CbfImporterForm.CBF_FILE, "cbf.error.wrongFile");
             return errors;
         }
@@ -102,25 +99,24 @@ public class CbfImporter implements MetadataImporter {
     // -------------------- PRIVATE --------------------
 
     /**
-     * Reads headers from cbf file while skipping binary data which is very long in terms of text lines.
+     * Parses headers from cbf file while skipping binary data which is very long in terms of text lines.
      */
-    private List<String> readCbfWithoutBinaryData(File cbfFile) {
-        List<String> lines = new ArrayList<>();
-
-        try (BufferedReader reader = Files.newBufferedReader(cbfFile.toPath(), Charset.forName("windows-1252"))) {
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.contains("CIF-BINARY-FORMAT-SECTION")) {
-                    break;
-                }
-                lines.add(line);
-            }
-
+    private List<ResultField> parseHeader(File cbfFile) {
+        try {
+            return cbfFileParser.parse(new CbfHeaderReader(cbfFile.toPath()));
         } catch (IOException e) {
            throw new IllegalStateException("There was a problem with reading cbf file", e);
         }
+    }
 
-        return lines;
+    /**
+     * Parses headers of all frames from ZIP archive or directory and consolidates them.
+     */
+    private List<ResultField> parseSweepHeaders(File sweep) {
+        try {
+            return new CbfSweepParser(cbfFileParser).parse(sweep);
+        } catch (IOException e) {
+            throw new IllegalStateException("There was a problem with reading cbf files", e);
+        }
     }
 }
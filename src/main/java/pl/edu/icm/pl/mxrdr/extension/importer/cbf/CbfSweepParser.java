@@ -0,0 +1,252 @@
+package pl.edu.icm.pl.mxrdr.extension.importer.cbf;
+
+import edu.harvard.iq.dataverse.importer.metadata.ResultField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.edu.icm.pl.mxrdr.extension.importer.MxrdrMetadataField;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Extracts metadata from headers of all frames of an image sweep, given either as a ZIP archive
+ * or as a directory of cbf files. Headers are parsed concurrently on a bounded pool and per-frame
+ * values are consolidated into a single set of fields:
+ * <ul>
+ *     <li>starting angle is the lowest one of the sweep,</li>
+ *     <li>wavelength and detector distance are taken only if consistent across all frames,</li>
+ *     <li>number of frames is the number of parsed headers,</li>
+ *     <li>remaining values are taken from the first frame (in file name order).</li>
+ * </ul>
+ */
+class CbfSweepParser {
+
+    private static final Logger log = LoggerFactory.getLogger(CbfSweepParser.class);
+
+    static final int DEFAULT_PARALLELISM = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+
+    /**
+     * Relative difference of wavelengths above which the sweep is considered inconsistent.
+     */
+    static final double WAVELENGTH_TOLERANCE = 1e-4;
+
+    /**
+     * Difference of detector distances (in milimeters) above which the detector is considered drifting.
+     */
+    static final double DETECTOR_DISTANCE_TOLERANCE = 0.1;
+
+    private final CbfFileParser cbfFileParser;
+    private final int parallelism;
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    CbfSweepParser(CbfFileParser cbfFileParser) {
+        this(cbfFileParser, DEFAULT_PARALLELISM);
+    }
+
+    CbfSweepParser(CbfFileParser cbfFileParser, int parallelism) {
+        this.cbfFileParser = cbfFileParser;
+        this.parallelism = parallelism;
+    }
+
+    // -------------------- LOGIC --------------------
+
+    static boolean isSweep(File file) {
+        return file.isDirectory() || file.getName().toLowerCase().endsWith(".zip");
+    }
+
+    /**
+     * Parses headers of all cbf frames found in given ZIP archive or directory.
+     * @return consolidated fields, or empty if no frames were found.
+     * @throws IOException in case of I/O issues.
+     */
+    List<ResultField> parse(File sweep) throws IOException {
+        if (sweep.isDirectory()) {
+            return parse(framesIn(sweep.toPath()));
+        }
+        try (ZipFile zipFile = new ZipFile(sweep)) {
+            return parse(framesIn(zipFile));
+        }
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private List<ResultField> parse(List<CbfHeaderReader> frames) throws IOException {
+        log.trace("Parsing headers of {} cbf frames", frames.size());
+        return consolidate(parseConcurrently(frames));
+    }
+
+    private List<CbfHeaderReader> framesIn(Path directory) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.{cbf,CBF}")) {
+            stream.forEach(paths::add);
+        }
+        Collections.sort(paths);
+        return paths.stream()
+                .map(CbfHeaderReader::new)
+                .collect(toList());
+    }
+
+    private List<CbfHeaderReader> framesIn(ZipFile zipFile) {
+        return zipFile.stream()
+                .filter(entry -> !entry.isDirectory() && entry.getName().toLowerCase().endsWith(".cbf"))
+                .sorted(Comparator.comparing(ZipEntry::getName))
+                .map(entry -> new CbfHeaderReader(() -> Channels.newChannel(zipFile.getInputStream(entry))))
+                .collect(toList());
+    }
+
+    /**
+     * Parses each frame in a separate task on a pool of {@link #parallelism} threads, keeping order
+     * of frames. On first failure frames not parsed yet are cancelled.
+     */
+    private List<FrameHeader> parseConcurrently(List<CbfHeaderReader> frames) throws IOException {
+        int threads = Math.max(1, Math.min(parallelism, frames.size()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<FrameHeader>> parsed = new ArrayList<>();
+            for (CbfHeaderReader frame : frames) {
+                parsed.add(pool.submit(() -> new FrameHeader(cbfFileParser.parse(frame))));
+            }
+            List<FrameHeader> headers = new ArrayList<>();
+            for (Future<FrameHeader> header : parsed) {
+                headers.add(header.get());
+            }
+            return headers;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing cbf frames", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("There was a problem with parsing cbf frames", e.getCause());
+        } finally {
+            pool.shutdownNow();
+            awaitTermination(pool);
+        }
+    }
+
+    /**
+     * Waits for frames being parsed, so none of them is read once the sweep is closed.
+     */
+    private static void awaitTermination(ExecutorService pool) {
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("Still waiting for cbf frames being parsed");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<ResultField> consolidate(List<FrameHeader> frames) {
+        if (frames.isEmpty()) {
+            return Collections.emptyList();
+        }
+        FrameHeader first = frames.get(0);
+        Map<String, String> dataCollection = new LinkedHashMap<>(first.dataCollection);
+
+        replaceWithLowest(dataCollection, MxrdrMetadataField.DATA_COLLECTION_STARTING_ANGLE, frames);
+        removeIfInconsistent(dataCollection, MxrdrMetadataField.DATA_COLLECTION_WAVELENGTH, frames,
+                (reference, value) -> Math.abs(value - reference) <= Math.abs(reference) * WAVELENGTH_TOLERANCE);
+        removeIfInconsistent(dataCollection, MxrdrMetadataField.DATA_COLLECTION_DETECTOR_DISTANCE, frames,
+                (reference, value) -> Math.abs(value - reference) <= DETECTOR_DISTANCE_TOLERANCE);
+        dataCollection.put(MxrdrMetadataField.DATA_COLLECTION_NUMBER_OF_FRAMES.getValue(), String.valueOf(frames.size()));
+
+        List<ResultField> results = new ArrayList<>();
+        if (first.detectorType != null) {
+            results.add(ResultField.of(MxrdrMetadataField.DETECTOR_TYPE.getValue(), first.detectorType));
+        }
+        results.add(ResultField.of(MxrdrMetadataField.DATA_COLLECTION.getValue(), dataCollection.entrySet().stream()
+                .map(entry -> ResultField.of(entry.getKey(), entry.getValue()))
+                .toArray(ResultField[]::new)));
+        return results;
+    }
+
+    private void replaceWithLowest(Map<String, String> dataCollection, MxrdrMetadataField field, List<FrameHeader> frames) {
+        String lowest = null;
+        double lowestValue = Double.POSITIVE_INFINITY;
+        for (FrameHeader frame : frames) {
+            String value = frame.dataCollection.get(field.getValue());
+            double numericValue = parseOrNaN(value);
+            if (numericValue < lowestValue) {
+                lowest = value;
+                lowestValue = numericValue;
+            }
+        }
+        if (lowest != null) {
+            log.trace("Sweep {} ranges from {}", field.getValue(), lowest);
+            dataCollection.put(field.getValue(), lowest);
+        }
+    }
+
+    private void removeIfInconsistent(Map<String, String> dataCollection, MxrdrMetadataField field,
+                                      List<FrameHeader> frames, Tolerance tolerance) {
+        String reference = dataCollection.get(field.getValue());
+        if (reference == null) {
+            return;
+        }
+        double referenceValue = parseOrNaN(reference);
+        for (FrameHeader frame : frames) {
+            String value = frame.dataCollection.get(field.getValue());
+            if (value == null || !tolerance.accepts(referenceValue, parseOrNaN(value))) {
+                log.warn("Inconsistent {} within the sweep: {} and {}, skipping", field.getValue(), reference, value);
+                dataCollection.remove(field.getValue());
+                return;
+            }
+        }
+    }
+
+    private static double parseOrNaN(String value) {
+        try {
+            return value != null ? Double.parseDouble(value) : Double.NaN;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    // -------------------- INNER CLASSES --------------------
+
+    @FunctionalInterface
+    private interface Tolerance {
+        boolean accepts(double reference, double value);
+    }
+
+    /**
+     * Values extracted from the header of a single frame.
+     */
+    private static class FrameHeader {
+
+        private String detectorType;
+        private final Map<String, String> dataCollection = new LinkedHashMap<>();
+
+        FrameHeader(List<ResultField> fields) {
+            for (ResultField field : fields) {
+                if (MxrdrMetadataField.DETECTOR_TYPE.getValue().equals(field.getName()) && detectorType == null) {
+                    detectorType = field.getValue();
+                } else if (MxrdrMetadataField.DATA_COLLECTION.getValue().equals(field.getName())) {
+                    field.getChildren().forEach(child -> dataCollection.putIfAbsent(child.getName(), child.getValue()));
+                }
+            }
+        }
+    }
+}
@@ -6,14 +6,20 @@ import edu.harvard.iq.dataverse.workflow.WorkflowStepRegistry;
 import edu.harvard.iq.dataverse.workflow.WorkflowStepSPI;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStep;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStepParams;
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsAnalysisAdmittingStep;
 import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep;
 import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesPatternCalculatingStep;
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsIndexingCheckingStep;
 import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsInputAdjustingStep;
 import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsMissingInputFillingStep;
 import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsOutputImportingStep;
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsParallelismPlanner;
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsRunningStep;
 import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsValidateMetadataStep;
+import pl.edu.icm.pl.mxrdr.extension.xds.output.XdsOutputAnalysisCache;
 
 import javax.annotation.PostConstruct;
+import javax.ejb.Schedule;
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
 import javax.inject.Inject;
@@ -27,16 +33,26 @@ public class MxrdrWorkflowStepSPI implements WorkflowStepSPI {
     private final WorkflowStepRegistry stepRegistry;
     private final DatasetVersionServiceBean datasetVersions;
     private final DatasetFieldTypeRepository fieldTypes;
+    private final XdsAnalysisScheduler analysisScheduler;
+    private final XdsProgressTracker progressTracker;
+    private final XdsParallelismPlanner parallelismPlanner;
+    private final XdsOutputAnalysisCache outputAnalyses = new XdsOutputAnalysisCache();
 
     // -------------------- CONSTRUCTORS --------------------
 
     @Inject
     public MxrdrWorkflowStepSPI(WorkflowStepRegistry stepRegistry,
                                 DatasetVersionServiceBean datasetVersions,
-                                DatasetFieldTypeRepository fieldTypes) {
+                                DatasetFieldTypeRepository fieldTypes,
+                                XdsAnalysisScheduler analysisScheduler,
+                                XdsProgressTracker progressTracker,
+                                XdsParallelismPlanner parallelismPlanner) {
         this.stepRegistry = stepRegistry;
         this.datasetVersions = datasetVersions;
         this.fieldTypes = fieldTypes;
+        this.analysisScheduler = analysisScheduler;
+        this.progressTracker = progressTracker;
+        this.parallelismPlanner = parallelismPlanner;
     }
 
     @PostConstruct
@@ -46,21 +62,36 @@ public class MxrdrWorkflowStepSPI implements WorkflowStepSPI {
 
     // -------------------- LOGIC --------------------
 
+    /**
+     * Admits analyses waiting for capacity that became available without any analysis being released,
+     * e.g. since scratch space was freed, and resumes again analyses which failed to resume.
+     */
+    @Schedule(hour = "*", minute = "*", persistent = false)
+    public void admitWaitingAnalyses() {
+        analysisScheduler.admitWaiting();
+    }
+
     @Override
     public WorkflowStep getStep(String stepType, WorkflowStepParams stepParameters) {
         switch (stepType) {
             case XdsValidateMetadataStep.STEP_ID:
                 return new XdsValidateMetadataStep(datasetVersions);
+            case XdsAnalysisAdmittingStep.STEP_ID:
+                return new XdsAnalysisAdmittingStep(stepParameters, datasetVersions, analysisScheduler);
             case XdsImagesFetchingStep.STEP_ID:
                 return new XdsImagesFetchingStep(stepParameters, datasetVersions);
             case XdsImagesPatternCalculatingStep.STEP_ID:
                 return new XdsImagesPatternCalculatingStep(stepParameters);
             case XdsMissingInputFillingStep.STEP_ID:
-                return new XdsMissingInputFillingStep(stepParameters, datasetVersions);
+                return new XdsMissingInputFillingStep(stepParameters, datasetVersions, parallelismPlanner);
             case XdsInputAdjustingStep.STEP_ID:
-                return new XdsInputAdjustingStep(stepParameters);
+                return new XdsInputAdjustingStep(stepParameters, outputAnalyses);
+            case XdsRunningStep.STEP_ID:
+                return new XdsRunningStep(stepParameters, datasetVersions, progressTracker);
+            case XdsIndexingCheckingStep.STEP_ID:
+                return new XdsIndexingCheckingStep(stepParameters);
             case XdsOutputImportingStep.STEP_ID:
-                return new XdsOutputImportingStep(stepParameters, datasetVersions, fieldTypes);
+                return new XdsOutputImportingStep(stepParameters, datasetVersions, fieldTypes, outputAnalyses);
             default:
                 throw new IllegalArgumentException("Unsupported step type: '" + stepType + "'.");
         }
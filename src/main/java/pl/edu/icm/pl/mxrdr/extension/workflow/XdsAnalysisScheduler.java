@@ -0,0 +1,411 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow;
+
+import edu.harvard.iq.dataverse.workflow.execution.WorkflowExecutionFacade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Limits number of XDS analyses running at the same time on this node. Analyses of dataset versions
+ * wait for admission in a queue, where smaller datasets go first, unless a larger one waits longer than
+ * {@link #STARVATION_TIMEOUT}. Workflows of waiting analyses are paused and no thread waits for them:
+ * workflow of analysis is resumed once it's admitted. Analysis is running since admission until it's
+ * released, which should happen when its workflow finishes in any way, or until {@link #LEASE_TIMEOUT}
+ * passes, whichever comes first. Analyses whose workflows are paused, waiting or admitted but not resumed yet,
+ * are kept in the queue file, from which the queue is rebuilt when the node starts again.
+ */
+@ApplicationScoped
+public class XdsAnalysisScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(XdsAnalysisScheduler.class);
+
+    /**
+     * Time after which waiting analysis goes before all smaller ones that waited less.
+     */
+    static final Duration STARVATION_TIMEOUT = Duration.ofHours(1);
+
+    /**
+     * Time after which running analysis not released is no longer counted as running,
+     * e.g. if the end of its workflow was not noticed.
+     */
+    static final Duration LEASE_TIMEOUT = Duration.ofHours(48);
+
+    /**
+     * Time after which workflow of analysis, which failed to resume, is resumed again. Doubles with
+     * each failed attempt, up to {@link #MAX_RESUME_BACKOFF}.
+     */
+    static final Duration RESUME_BACKOFF = Duration.ofMinutes(1);
+
+    static final Duration MAX_RESUME_BACKOFF = Duration.ofHours(1);
+
+    /**
+     * System property containing path of the queue file.
+     * Defaults to <code>mxrdr-xds-analysis-queue</code> in the temporary directory.
+     */
+    static final String QUEUE_FILE_PROPERTY = "mxrdr.xds.analysisQueueFile";
+
+    private final Consumer<String> resumer;
+    private final Clock clock;
+    private final Path queueFile;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Waiting> waiting = new ArrayList<>();
+    private final List<Waiting> resuming = new ArrayList<>();
+    private final Map<Long, Long> runningSince = new HashMap<>();
+    private long nextSequence = 0;
+    private volatile IntSupplier capacity = () -> 1;
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    protected XdsAnalysisScheduler() {
+        this(invocationId -> { }, Clock.systemUTC());
+    }
+
+    @Inject
+    public XdsAnalysisScheduler(WorkflowExecutionFacade executionFacade) {
+        this(invocationId -> executionFacade.resume(invocationId, ""), Clock.systemUTC(),
+                Paths.get(System.getProperty(QUEUE_FILE_PROPERTY,
+                        Paths.get(System.getProperty("java.io.tmpdir"), "mxrdr-xds-analysis-queue").toString())));
+    }
+
+    /**
+     * Creates scheduler not keeping its queue in any file.
+     * @param resumer resumes paused workflow execution of given invocation id.
+     */
+    public XdsAnalysisScheduler(Consumer<String> resumer, Clock clock) {
+        this(resumer, clock, null);
+    }
+
+    /**
+     * Creates scheduler keeping its queue in given file, rebuilding the queue from it if it exists.
+     * @param resumer resumes paused workflow execution of given invocation id.
+     */
+    public XdsAnalysisScheduler(Consumer<String> resumer, Clock clock, Path queueFile) {
+        this.resumer = resumer;
+        this.clock = clock;
+        this.queueFile = queueFile;
+        readQueue();
+    }
+
+    // -------------------- LOGIC --------------------
+
+    /**
+     * Admits analysis of given dataset version right away, if it would be first in the queue and less than
+     * given capacity of analyses are running. Otherwise puts it in the queue, to resume workflow execution
+     * of given invocation id once it's admitted. Admitting already running analysis returns immediately.
+     * @param datasetSize size of dataset files in bytes, deciding order of the queue.
+     * @param capacity maximum number of running analyses, checked again whenever the queue moves.
+     * @return <code>true</code> if analysis was admitted, <code>false</code> if it waits in the queue.
+     */
+    public boolean admit(long datasetVersionId, long datasetSize, String invocationId, IntSupplier capacity) {
+        this.capacity = capacity;
+        List<Waiting> admitted;
+        lock.lock();
+        try {
+            if (runningSince.containsKey(datasetVersionId)) {
+                return true;
+            }
+            waiting.removeIf(entry -> entry.datasetVersionId == datasetVersionId);
+            waiting.add(new Waiting(datasetVersionId, datasetSize, invocationId, clock.millis(), nextSequence++));
+            admitted = admitWaitingEntries();
+            resuming.removeIf(entry -> entry.datasetVersionId == datasetVersionId);
+            writeQueue();
+        } finally {
+            lock.unlock();
+        }
+        boolean admittedRightAway = admitted.removeIf(entry -> entry.datasetVersionId == datasetVersionId);
+        resume(admitted);
+        return admittedRightAway;
+    }
+
+    /**
+     * Ends running or waiting analysis of given dataset version, letting the next one in.
+     */
+    public void release(long datasetVersionId) {
+        List<Waiting> admitted;
+        lock.lock();
+        try {
+            runningSince.remove(datasetVersionId);
+            waiting.removeIf(entry -> entry.datasetVersionId == datasetVersionId);
+            resuming.removeIf(entry -> entry.datasetVersionId == datasetVersionId);
+            admitted = admitWaitingEntries();
+            writeQueue();
+        } finally {
+            lock.unlock();
+        }
+        resume(admitted);
+    }
+
+    /**
+     * Admits waiting analyses if there is capacity for them, e.g. since scratch space was freed,
+     * leases of running analyses expired, or it's time to resume again workflows which failed to resume.
+     */
+    public void admitWaiting() {
+        List<Waiting> admitted;
+        lock.lock();
+        try {
+            admitted = admitWaitingEntries();
+            writeQueue();
+        } finally {
+            lock.unlock();
+        }
+        resume(admitted);
+    }
+
+    /**
+     * @return position (counted from 1) of analysis of given dataset version in the queue,
+     * or empty if it's not waiting.
+     */
+    public OptionalInt queuePosition(long datasetVersionId) {
+        lock.lock();
+        try {
+            List<Waiting> queue = new ArrayList<>(waiting);
+            queue.sort(queueOrder());
+            for (int i = 0; i < queue.size(); i++) {
+                if (queue.get(i).datasetVersionId == datasetVersionId) {
+                    return OptionalInt.of(i + 1);
+                }
+            }
+            return OptionalInt.empty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return maximum number of running analyses, as last given for admission, at least one.
+     */
+    public int capacity() {
+        return Math.max(1, capacity.getAsInt());
+    }
+
+    public int queueDepth() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int runningAnalyses() {
+        lock.lock();
+        try {
+            return runningSince.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    /**
+     * Moves analyses from the head of the queue to running ones, while there is capacity for them.
+     * Analyses which failed to resume are skipped until it's time to resume them again.
+     * Has to be called holding the lock.
+     * @return admitted analyses, to be resumed.
+     */
+    private List<Waiting> admitWaitingEntries() {
+        expireLeases();
+        List<Waiting> admitted = new ArrayList<>();
+        Optional<Waiting> next;
+        while (runningSince.size() < capacity() && (next = next()).isPresent()) {
+            waiting.remove(next.get());
+            runningSince.put(next.get().datasetVersionId, clock.millis());
+            resuming.add(next.get());
+            admitted.add(next.get());
+        }
+        return admitted;
+    }
+
+    private void expireLeases() {
+        long expiredSince = clock.millis() - LEASE_TIMEOUT.toMillis();
+        Iterator<Map.Entry<Long, Long>> running = runningSince.entrySet().iterator();
+        while (running.hasNext()) {
+            Map.Entry<Long, Long> entry = running.next();
+            if (entry.getValue() < expiredSince) {
+                log.warn("Analysis of dataset version {} was not released for {}, no longer counting it as running",
+                        entry.getKey(), LEASE_TIMEOUT);
+                running.remove();
+            }
+        }
+    }
+
+    /**
+     * Resumes workflows of given admitted analyses. Analysis which could not be resumed, e.g. since its
+     * workflow is not paused yet, goes back to the queue, to be resumed again after a backoff. It stays
+     * there until it's resumed, or released when its workflow finishes.
+     */
+    private void resume(List<Waiting> admitted) {
+        for (Waiting entry : admitted) {
+            try {
+                log.debug("Resuming admitted analysis of dataset version {}", entry.datasetVersionId);
+                resumer.accept(entry.invocationId);
+                resumed(entry);
+            } catch (RuntimeException e) {
+                Waiting failed = entry.withFailedResume(clock.millis());
+                log.warn("Unable to resume admitted analysis of dataset version " + entry.datasetVersionId
+                        + ", attempt " + failed.resumeAttempts + ", resuming again in " + backoff(failed), e);
+                requeue(entry, failed);
+            }
+        }
+    }
+
+    private void resumed(Waiting entry) {
+        lock.lock();
+        try {
+            if (resuming.remove(entry)) {
+                writeQueue();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void requeue(Waiting entry, Waiting failed) {
+        lock.lock();
+        try {
+            if (resuming.remove(entry)) {
+                runningSince.remove(entry.datasetVersionId);
+                waiting.add(failed);
+                writeQueue();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Optional<Waiting> next() {
+        long now = clock.millis();
+        return waiting.stream()
+                .filter(entry -> entry.failedResumeAt + backoff(entry).toMillis() <= now)
+                .min(queueOrder());
+    }
+
+    private static Duration backoff(Waiting entry) {
+        if (entry.resumeAttempts == 0) {
+            return Duration.ZERO;
+        }
+        Duration backoff = RESUME_BACKOFF.multipliedBy(1L << Math.min(entry.resumeAttempts - 1, 16));
+        return backoff.compareTo(MAX_RESUME_BACKOFF) < 0 ? backoff : MAX_RESUME_BACKOFF;
+    }
+
+    /**
+     * Rebuilds the queue from the queue file, if there is any. Workflows of all its analyses are
+     * paused, so they're waiting again, in the order they arrived.
+     */
+    private void readQueue() {
+        if (queueFile == null) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(queueFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ", 4);
+                if (fields.length == 4) {
+                    waiting.add(new Waiting(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[3],
+                            Long.parseLong(fields[2]), nextSequence++));
+                }
+            }
+            log.info("Rebuilt queue of {} analyses waiting for admission from {}", waiting.size(), queueFile);
+        } catch (NoSuchFileException e) {
+            log.debug("No queue of analyses to rebuild in {}", queueFile);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to rebuild queue of analyses from " + queueFile, e);
+        }
+    }
+
+    /**
+     * Writes analyses, whose workflows are paused, to the queue file, replacing it.
+     * Has to be called holding the lock.
+     */
+    private void writeQueue() {
+        if (queueFile == null) {
+            return;
+        }
+        List<Waiting> paused = new ArrayList<>(resuming);
+        paused.addAll(waiting);
+        paused.sort(Comparator.comparingLong(entry -> entry.sequence));
+        Path tempFile = queueFile.resolveSibling(queueFile.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                for (Waiting entry : paused) {
+                    writer.write(entry.datasetVersionId + " " + entry.datasetSize + " " + entry.waitingSince
+                            + " " + entry.invocationId);
+                    writer.newLine();
+                }
+            }
+            Files.move(tempFile, queueFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Unable to write queue of analyses to " + queueFile, e);
+        }
+    }
+
+    /**
+     * Starving analyses first, in order of arrival, then the rest by size and order of arrival.
+     * Starvation depends on the current time, so the order is computed each time it's needed.
+     */
+    private Comparator<Waiting> queueOrder() {
+        long starvingSince = clock.millis() - STARVATION_TIMEOUT.toMillis();
+        return Comparator.<Waiting, Boolean>comparing(entry -> entry.waitingSince > starvingSince)
+                .thenComparingLong(entry -> entry.waitingSince > starvingSince ? entry.datasetSize : 0)
+                .thenComparingLong(entry -> entry.sequence);
+    }
+
+    // -------------------- INNER CLASSES --------------------
+
+    private static class Waiting {
+
+        private final long datasetVersionId;
+        private final long datasetSize;
+        private final String invocationId;
+        private final long waitingSince;
+        private final long sequence;
+        private final int resumeAttempts;
+        private final long failedResumeAt;
+
+        Waiting(long datasetVersionId, long datasetSize, String invocationId, long waitingSince, long sequence) {
+            this(datasetVersionId, datasetSize, invocationId, waitingSince, sequence, 0, 0);
+        }
+
+        private Waiting(long datasetVersionId, long datasetSize, String invocationId, long waitingSince,
+                        long sequence, int resumeAttempts, long failedResumeAt) {
+            this.datasetVersionId = datasetVersionId;
+            this.datasetSize = datasetSize;
+            this.invocationId = invocationId;
+            this.waitingSince = waitingSince;
+            this.sequence = sequence;
+            this.resumeAttempts = resumeAttempts;
+            this.failedResumeAt = failedResumeAt;
+        }
+
+        Waiting withFailedResume(long failedAt) {
+            return new Waiting(datasetVersionId, datasetSize, invocationId, waitingSince, sequence,
+                    resumeAttempts + 1, failedAt);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow;
+
+/**
+ * Progress of a single XDS stage processing images (e.g. INTEGRATE), as read from its output while it runs.
+ */
+public class XdsProgress {
+
+    private final String stage;
+    private final int processedImages;
+    private final int totalImages;
+    private final long remainingMinutes;
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    public XdsProgress(String stage, int processedImages, int totalImages, long remainingMinutes) {
+        this.stage = stage;
+        this.processedImages = processedImages;
+        this.totalImages = totalImages;
+        this.remainingMinutes = remainingMinutes;
+    }
+
+    // -------------------- GETTERS --------------------
+
+    public String getStage() {
+        return stage;
+    }
+
+    public int getProcessedImages() {
+        return processedImages;
+    }
+
+    /**
+     * @return number of images to process by the stage, or 0 if unknown.
+     */
+    public int getTotalImages() {
+        return totalImages;
+    }
+
+    /**
+     * @return estimated time left until the stage finishes, assuming the rest of images is processed
+     * at the same rate as so far.
+     */
+    public long getRemainingMinutes() {
+        return remainingMinutes;
+    }
+
+    // -------------------- toString --------------------
+
+    @Override
+    public String toString() {
+        return stage + ": " + processedImages + "/" + totalImages + " images, " + remainingMinutes + " min left";
+    }
+}
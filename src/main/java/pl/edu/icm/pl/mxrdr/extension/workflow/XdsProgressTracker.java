@@ -0,0 +1,32 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latest {@link XdsProgress} of analyses running on this node, so it can be shown while XDS runs.
+ */
+@ApplicationScoped
+public class XdsProgressTracker {
+
+    private final Map<Long, XdsProgress> progresses = new ConcurrentHashMap<>();
+
+    // -------------------- LOGIC --------------------
+
+    public void update(long datasetVersionId, XdsProgress progress) {
+        progresses.put(datasetVersionId, progress);
+    }
+
+    /**
+     * Forgets progress of analysis of given dataset version, e.g. when XDS stopped running.
+     */
+    public void clear(long datasetVersionId) {
+        progresses.remove(datasetVersionId);
+    }
+
+    public Optional<XdsProgress> progressOf(long datasetVersionId) {
+        return Optional.ofNullable(progresses.get(datasetVersionId));
+    }
+}
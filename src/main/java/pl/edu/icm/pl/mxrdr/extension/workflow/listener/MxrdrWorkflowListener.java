@@ -1,10 +1,13 @@
 package pl.edu.icm.pl.mxrdr.extension.workflow.listener;
 
 import edu.harvard.iq.dataverse.dataset.datasetversion.DatasetVersionServiceBean;
+import edu.harvard.iq.dataverse.persistence.dataset.DatasetVersion;
 import edu.harvard.iq.dataverse.workflow.execution.WorkflowExecutionContext;
 import edu.harvard.iq.dataverse.workflow.listener.WorkflowExecutionListener;
 import edu.harvard.iq.dataverse.workflow.step.Failure;
 import pl.edu.icm.pl.mxrdr.extension.notification.MxrdrNotificationSender;
+import pl.edu.icm.pl.mxrdr.extension.workflow.XdsAnalysisScheduler;
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsParallelismPlanner;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -17,19 +20,25 @@ public class MxrdrWorkflowListener implements WorkflowExecutionListener {
 
     private final DatasetVersionServiceBean versionsService;
     private final MxrdrNotificationSender notificationSender;
+    private final XdsAnalysisScheduler analysisScheduler;
+    private final XdsParallelismPlanner parallelismPlanner;
 
     // -------------------- CONSTRUCTORS --------------------
 
     @Inject
-    public MxrdrWorkflowListener(DatasetVersionServiceBean versionsService, MxrdrNotificationSender notificationSender) {
+    public MxrdrWorkflowListener(DatasetVersionServiceBean versionsService, MxrdrNotificationSender notificationSender,
+                                 XdsAnalysisScheduler analysisScheduler, XdsParallelismPlanner parallelismPlanner) {
         this.versionsService = versionsService;
         this.notificationSender = notificationSender;
+        this.analysisScheduler = analysisScheduler;
+        this.parallelismPlanner = parallelismPlanner;
     }
 
     // -------------------- LOGIC --------------------
 
     @Override
     public void onSuccess(WorkflowExecutionContext context) {
+        releaseAnalysis(context);
         versionsService.withDatasetVersion(context,
                 datasetVersion -> notificationSender.sendNotification(MXRDR_WORKFLOW_SUCCESS,
                         datasetVersion.getDataset(),
@@ -39,10 +48,21 @@ public class MxrdrWorkflowListener implements WorkflowExecutionListener {
 
     @Override
     public void onFailure(WorkflowExecutionContext context, Failure failure) {
+        releaseAnalysis(context);
         versionsService.withDatasetVersion(context,
                 datasetVersion -> notificationSender.sendNotification(MXRDR_WORKFLOW_FAIL,
                         datasetVersion.getDataset(),
                         context.getRequest().getAuthenticatedUser())
         );
     }
+
+    // -------------------- PRIVATE --------------------
+
+    private void releaseAnalysis(WorkflowExecutionContext context) {
+        versionsService.withDatasetVersion(context, DatasetVersion::getId)
+                .ifPresent(datasetVersionId -> {
+                    parallelismPlanner.release(datasetVersionId);
+                    analysisScheduler.release(datasetVersionId);
+                });
+    }
 }
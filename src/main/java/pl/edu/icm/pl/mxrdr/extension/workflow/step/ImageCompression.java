@@ -0,0 +1,84 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.Storage;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compression formats of single image files, recognized by the file name suffix.
+ * Concatenated streams, as written by parallel compressors (<code>pigz</code>, <code>pbzip2</code>),
+ * are decompressed as a whole.
+ */
+enum ImageCompression {
+
+    GZIP(".gz") {
+        @Override
+        InputStream decompressing(InputStream in) throws IOException {
+            return new GZIPInputStream(in, DECOMPRESSION_BUFFER_SIZE);
+        }
+    },
+    BZIP2(".bz2") {
+        @Override
+        InputStream decompressing(InputStream in) throws IOException {
+            return new BZip2CompressorInputStream(new BufferedInputStream(in, DECOMPRESSION_BUFFER_SIZE), true);
+        }
+    },
+    XZ(".xz") {
+        @Override
+        InputStream decompressing(InputStream in) throws IOException {
+            return new XZCompressorInputStream(new BufferedInputStream(in, DECOMPRESSION_BUFFER_SIZE), true);
+        }
+    };
+
+    private static final int DECOMPRESSION_BUFFER_SIZE = 64 * 1024;
+
+    private final String suffix;
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    ImageCompression(String suffix) {
+        this.suffix = suffix;
+    }
+
+    // -------------------- LOGIC --------------------
+
+    /**
+     * @return compression of the file of given name, if it's compressed.
+     */
+    static Optional<ImageCompression> of(String fileName) {
+        return Stream.of(values())
+                .filter(compression -> fileName.endsWith(compression.suffix))
+                .findFirst();
+    }
+
+    /**
+     * @return name of the file once decompressed, that is given name without the suffix.
+     */
+    String decompressedName(String fileName) {
+        return fileName.substring(0, fileName.length() - suffix.length());
+    }
+
+    /**
+     * @return storage of decompressed data of given one.
+     */
+    Storage decompressing(Storage storage) {
+        return () -> {
+            InputStream in = storage.getInputStream();
+            try {
+                return decompressing(in);
+            } catch (IOException | RuntimeException e) {
+                in.close();
+                throw e;
+            }
+        };
+    }
+
+    abstract InputStream decompressing(InputStream in) throws IOException;
+}
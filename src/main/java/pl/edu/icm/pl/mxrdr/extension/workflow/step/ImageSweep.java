@@ -0,0 +1,179 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Single sweep of images sharing the same XDS name template, like <code>img/test_????.cbf</code>,
+ * together with the range of its frame numbers and the frames missing from that range.
+ * <p>
+ * Sweeps are exchanged between steps in the text form of {@link #toString()}, one sweep per line:
+ * <pre>
+ *     img/test_????.cbf 1-900 missing:301-310,455
+ *     img/other_master.h5
+ * </pre>
+ */
+class ImageSweep {
+
+    static final String SWEEPS_SEPARATOR = "\n";
+
+    private static final String MISSING_FRAMES_PREFIX = "missing:";
+
+    private final String template;
+    private final FrameRange frames;
+    private final int frameCount;
+    private final List<FrameRange> missingFrames;
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    ImageSweep(String template, FrameRange frames, int frameCount, List<FrameRange> missingFrames) {
+        this.template = template;
+        this.frames = frames;
+        this.frameCount = frameCount;
+        this.missingFrames = missingFrames;
+    }
+
+    /**
+     * Creates sweep of a container, like <code>HDF5</code> master file, holding all frames by itself.
+     */
+    static ImageSweep ofContainer(String fileName) {
+        return new ImageSweep(fileName, null, 1, Collections.emptyList());
+    }
+
+    // -------------------- GETTERS --------------------
+
+    /**
+     * @return name template with frame number replaced by <code>?</code> characters.
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return first and last frame number, or null if frames are not numbered by file names.
+     */
+    public FrameRange getFrames() {
+        return frames;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return ranges of frame numbers missing between first and last one.
+     */
+    public List<FrameRange> getMissingFrames() {
+        return missingFrames;
+    }
+
+    // -------------------- LOGIC --------------------
+
+    static String format(List<ImageSweep> sweeps) {
+        return sweeps.stream()
+                .map(ImageSweep::toString)
+                .collect(joining(SWEEPS_SEPARATOR));
+    }
+
+    static List<ImageSweep> parse(String sweeps) {
+        List<ImageSweep> parsed = new ArrayList<>();
+        for (String line : sweeps.split(SWEEPS_SEPARATOR)) {
+            if (!line.trim().isEmpty()) {
+                parsed.add(parseSweep(line.trim()));
+            }
+        }
+        return parsed;
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private static ImageSweep parseSweep(String line) {
+        String[] parts = line.split(" ");
+        if (parts.length == 1) {
+            return ofContainer(parts[0]);
+        }
+        FrameRange frames = FrameRange.parse(parts[1]);
+        List<FrameRange> missingFrames = new ArrayList<>();
+        if (parts.length > 2 && parts[2].startsWith(MISSING_FRAMES_PREFIX)) {
+            for (String missing : parts[2].substring(MISSING_FRAMES_PREFIX.length()).split(",")) {
+                missingFrames.add(FrameRange.parse(missing));
+            }
+        }
+        long missingCount = missingFrames.stream().mapToLong(FrameRange::size).sum();
+        return new ImageSweep(parts[0], frames, (int) (frames.size() - missingCount), missingFrames);
+    }
+
+    // -------------------- toString --------------------
+
+    @Override
+    public String toString() {
+        if (frames == null) {
+            return template;
+        }
+        String sweep = template + " " + frames;
+        return missingFrames.isEmpty()
+                ? sweep
+                : sweep + " " + MISSING_FRAMES_PREFIX + missingFrames.stream().map(FrameRange::toString).collect(joining(","));
+    }
+
+    // -------------------- INNER CLASSES --------------------
+
+    /**
+     * Inclusive range of frame numbers.
+     */
+    static class FrameRange {
+
+        private final long first;
+        private final long last;
+
+        FrameRange(long first, long last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        static FrameRange parse(String range) {
+            int separator = range.indexOf('-');
+            return separator < 0
+                    ? new FrameRange(Long.parseLong(range), Long.parseLong(range))
+                    : new FrameRange(Long.parseLong(range.substring(0, separator)), Long.parseLong(range.substring(separator + 1)));
+        }
+
+        public long getFirst() {
+            return first;
+        }
+
+        public long getLast() {
+            return last;
+        }
+
+        long size() {
+            return last - first + 1;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (other == null || getClass() != other.getClass()) {
+                return false;
+            }
+            FrameRange that = (FrameRange) other;
+            return first == that.first && last == that.last;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(first, last);
+        }
+
+        @Override
+        public String toString() {
+            return first == last ? String.valueOf(first) : first + "-" + last;
+        }
+    }
+}
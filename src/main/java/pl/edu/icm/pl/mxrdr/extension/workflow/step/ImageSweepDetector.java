@@ -0,0 +1,267 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.ImageSweep.FrameRange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Clusters image file names, passed one by one without collecting them, into all sweeps present,
+ * unlike {@link XdsImagesPatternCalculatingStep#calculatePattern(List)} finding the dominant one only.
+ * <p>
+ * Every run of digits in a name is a candidate frame number. Names are grouped by their shape (the name
+ * with all candidates replaced by <code>?</code> characters), and within each shape by their template
+ * (the name with a single candidate replaced) of each candidate. Frame number is the candidate making
+ * the fewest templates, that is having most names in each, so <code>crystal1_0005.cbf</code> among
+ * hundred frames of two crystals falls into <code>crystal1_????.cbf</code>, one of two templates of the last
+ * candidate, and not <code>crystal?_0005.cbf</code>, one of hundred templates of the first one. Only
+ * frame numbers of each template are kept, a bit per frame, and candidates making more than
+ * {@value MAX_CANDIDATE_TEMPLATES} templates are dropped, so memory does not grow with names.
+ * Templates of at least {@value MIN_SWEEP_FRAMES} frames are sweeps, remaining names are ignored.
+ * <code>HDF5</code> master files are sweeps by themselves, while other <code>.h5</code> files are taken
+ * as their data files.
+ */
+class ImageSweepDetector implements Consumer<String> {
+
+    static final int MIN_SWEEP_FRAMES = 2;
+
+    /**
+     * Maximum number of templates of a single candidate frame number within names of the same shape,
+     * above which the candidate is not frame number.
+     */
+    static final int MAX_CANDIDATE_TEMPLATES = 1000;
+
+    private static final String CONTAINER_SUFFIX = "master.h5";
+    private static final String CONTAINER_DATA_SUFFIX = ".h5";
+
+    /**
+     * Longest frame number still parsed as long.
+     */
+    private static final int MAX_FRAME_NUMBER_DIGITS = 18;
+
+    private static final Comparator<ImageSweep> LARGEST_FIRST = Comparator.comparing(ImageSweep::getFrameCount).reversed()
+            .thenComparing(ImageSweep::getTemplate);
+
+    private final List<ImageSweep> containers = new ArrayList<>();
+    private final Map<String, Shape> shapes = new HashMap<>();
+
+    // -------------------- LOGIC --------------------
+
+    @Override
+    public void accept(String fileName) {
+        if (fileName.endsWith(CONTAINER_SUFFIX)) {
+            containers.add(ImageSweep.ofContainer(fileName));
+        } else if (!fileName.endsWith(CONTAINER_DATA_SUFFIX)) {
+            FrameName frameName = new FrameName(fileName);
+            if (frameName.runCount() > 0) {
+                shapes.computeIfAbsent(frameName.shape(), shape -> new Shape(frameName.runCount()))
+                        .add(frameName);
+            }
+        }
+    }
+
+    /**
+     * @return sweeps detected in given names, from the largest one.
+     */
+    List<ImageSweep> detect(List<String> fileNames) {
+        fileNames.forEach(this);
+        return sweeps();
+    }
+
+    /**
+     * @return sweeps of names passed so far, from the largest one.
+     */
+    List<ImageSweep> sweeps() {
+        List<ImageSweep> sweeps = new ArrayList<>(containers);
+        templates().stream()
+                .filter(template -> template.getFrameCount() >= MIN_SWEEP_FRAMES)
+                .forEach(sweeps::add);
+        sweeps.sort(LARGEST_FIRST);
+        return sweeps;
+    }
+
+    /**
+     * @return templates of numbered names passed so far, with their frames, from the largest one,
+     * including templates of too few frames to be sweeps.
+     */
+    List<ImageSweep> templates() {
+        List<ImageSweep> templates = new ArrayList<>();
+        for (Shape shape : shapes.values()) {
+            shape.frameTemplates()
+                    .forEach((template, frames) -> templates.add(frames.sweepOf(template)));
+        }
+        templates.sort(LARGEST_FIRST);
+        return templates;
+    }
+
+    // -------------------- INNER CLASSES --------------------
+
+    /**
+     * File name with positions of its digit runs, that is candidate frame numbers.
+     */
+    private static class FrameName {
+
+        private final String fileName;
+        private int[] starts = new int[2];
+        private int[] ends = new int[2];
+        private int runCount;
+
+        FrameName(String fileName) {
+            this.fileName = fileName;
+            int position = 0;
+            while (position < fileName.length()) {
+                if (isDigit(fileName.charAt(position))) {
+                    int start = position;
+                    while (position < fileName.length() && isDigit(fileName.charAt(position))) {
+                        position++;
+                    }
+                    if (position - start <= MAX_FRAME_NUMBER_DIGITS) {
+                        addRun(start, position);
+                    }
+                } else {
+                    position++;
+                }
+            }
+        }
+
+        int runCount() {
+            return runCount;
+        }
+
+        String template(int run) {
+            StringBuilder template = new StringBuilder(fileName.length())
+                    .append(fileName, 0, starts[run]);
+            for (int i = starts[run]; i < ends[run]; i++) {
+                template.append('?');
+            }
+            return template.append(fileName, ends[run], fileName.length())
+                    .toString();
+        }
+
+        long frameNumber(int run) {
+            return Long.parseLong(fileName.substring(starts[run], ends[run]));
+        }
+
+        /**
+         * @return name with all runs replaced by <code>?</code> characters.
+         */
+        String shape() {
+            StringBuilder shape = new StringBuilder(fileName.length());
+            int position = 0;
+            for (int run = 0; run < runCount; run++) {
+                shape.append(fileName, position, starts[run]);
+                for (int i = starts[run]; i < ends[run]; i++) {
+                    shape.append('?');
+                }
+                position = ends[run];
+            }
+            return shape.append(fileName, position, fileName.length())
+                    .toString();
+        }
+
+        private void addRun(int start, int end) {
+            if (runCount == starts.length) {
+                starts = Arrays.copyOf(starts, runCount * 2);
+                ends = Arrays.copyOf(ends, runCount * 2);
+            }
+            starts[runCount] = start;
+            ends[runCount++] = end;
+        }
+
+        private static boolean isDigit(char character) {
+            return character >= '0' && character <= '9';
+        }
+    }
+
+    /**
+     * Names of the same shape, with frames of templates of each of their runs, as long as the run
+     * makes few enough templates to be frame number.
+     */
+    private static class Shape {
+
+        private final List<Map<String, Frames>> templatesOfRuns = new ArrayList<>();
+
+        Shape(int runCount) {
+            for (int run = 0; run < runCount; run++) {
+                templatesOfRuns.add(new HashMap<>());
+            }
+        }
+
+        void add(FrameName frameName) {
+            for (int run = 0; run < templatesOfRuns.size(); run++) {
+                Map<String, Frames> templates = templatesOfRuns.get(run);
+                if (templates == null) {
+                    continue;
+                }
+                String template = frameName.template(run);
+                Frames frames = templates.get(template);
+                if (frames == null && templates.size() == MAX_CANDIDATE_TEMPLATES) {
+                    templatesOfRuns.set(run, null);
+                    continue;
+                }
+                if (frames == null) {
+                    frames = new Frames();
+                    templates.put(template, frames);
+                }
+                frames.add(frameName.frameNumber(run));
+            }
+        }
+
+        /**
+         * @return templates of the run which is frame number: of the fewest templates,
+         * the last one of equally few, or none if all runs made too many templates.
+         */
+        Map<String, Frames> frameTemplates() {
+            Map<String, Frames> fewest = Collections.emptyMap();
+            int fewestCount = Integer.MAX_VALUE;
+            for (Map<String, Frames> templates : templatesOfRuns) {
+                if (templates != null && templates.size() <= fewestCount) {
+                    fewest = templates;
+                    fewestCount = templates.size();
+                }
+            }
+            return fewest;
+        }
+    }
+
+    /**
+     * Set of frame numbers, a bit per frame in words of 64 consecutive frames.
+     */
+    private static class Frames {
+
+        private final TreeMap<Long, Long> words = new TreeMap<>();
+
+        void add(long frame) {
+            words.merge(frame >>> 6, 1L << (frame & 63), (word, bit) -> word | bit);
+        }
+
+        ImageSweep sweepOf(String template) {
+            List<FrameRange> missingFrames = new ArrayList<>();
+            long first = 0;
+            long previous = 0;
+            int count = 0;
+            for (Map.Entry<Long, Long> word : words.entrySet()) {
+                long bits = word.getValue();
+                while (bits != 0) {
+                    long frame = (word.getKey() << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    if (count == 0) {
+                        first = frame;
+                    } else if (frame > previous + 1) {
+                        missingFrames.add(new FrameRange(previous + 1, frame - 1));
+                    }
+                    previous = frame;
+                    count++;
+                }
+            }
+            return new ImageSweep(template, new FrameRange(first, previous), count, missingFrames);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import edu.harvard.iq.dataverse.persistence.datafile.DataFile;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.ImageFetcher;
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.Storage;
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.StorageSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Local cache of dataset files, shared by all runs of the workflow, so files of a dataset analysed
+ * again in a new version are not downloaded again. Files are addressed by their content, that is
+ * by the checksum kept by Dataverse for each {@link DataFile}, and stored as
+ * <code>&lt;root&gt;/&lt;checksum type&gt;/&lt;checksum&gt;</code>. Files not having a checksum
+ * are not cached.
+ * <p>
+ * Cached images are hard linked into the images directory where possible, so they are neither read
+ * nor copied. Downloaded files are verified against their checksum before they are put into the cache.
+ * MD5 digest of each cached file is kept next to it, unless the checksum is MD5 itself. Once the total
+ * size of cached files exceeds the limit, least recently used ones are evicted.
+ */
+class ImagesCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ImagesCache.class);
+
+    private static final Pattern CHECKSUM = Pattern.compile("[0-9a-fA-F]+");
+    private static final String MD5_FILE_SUFFIX = ".md5";
+    private static final String TEMP_DIR_NAME = "tmp";
+
+    private final Path root;
+    private final long maxSize;
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    ImagesCache(Path root, long maxSize) {
+        this.root = root;
+        this.maxSize = maxSize;
+    }
+
+    // -------------------- LOGIC --------------------
+
+    /**
+     * @return source of files taken from this cache, and downloaded from the given source
+     * into the cache on first use.
+     */
+    StorageSource caching(StorageSource source) {
+        return metadata -> {
+            DataFile dataFile = metadata.getDataFile();
+            if (!isCacheable(dataFile)) {
+                return source.getStorage(metadata);
+            }
+            return new CachedStorage(dataFile.getChecksumType(), dataFile.getChecksumValue().toLowerCase(),
+                    () -> source.getStorage(metadata).getInputStream());
+        };
+    }
+
+    /**
+     * Removes least recently used files, until total size of cached files fits in the limit.
+     */
+    void evict() throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        List<CachedFile> cachedFiles;
+        try (Stream<Path> paths = Files.walk(root)) {
+            cachedFiles = paths
+                    .filter(path -> !path.startsWith(root.resolve(TEMP_DIR_NAME)))
+                    .filter(path -> !path.getFileName().toString().endsWith(MD5_FILE_SUFFIX))
+                    .map(CachedFile::of)
+                    .filter(cachedFile -> cachedFile != null && cachedFile.attributes.isRegularFile())
+                    .sorted(Comparator.comparing(cachedFile -> cachedFile.attributes.lastModifiedTime()))
+                    .collect(toList());
+        }
+        long size = cachedFiles.stream().mapToLong(cachedFile -> cachedFile.attributes.size()).sum();
+        for (CachedFile cachedFile : cachedFiles) {
+            if (size <= maxSize) {
+                break;
+            }
+            log.trace("Evicting {} from images cache", cachedFile.path);
+            Files.deleteIfExists(cachedFile.path);
+            Files.deleteIfExists(md5FileOf(cachedFile.path));
+            size -= cachedFile.attributes.size();
+        }
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private boolean isCacheable(DataFile dataFile) {
+        return dataFile != null && dataFile.getChecksumType() != null && dataFile.getChecksumValue() != null
+                && CHECKSUM.matcher(dataFile.getChecksumValue()).matches();
+    }
+
+    private static MessageDigest digestOf(DataFile.ChecksumType checksumType) {
+        switch (checksumType) {
+            case MD5:
+                return DigestUtils.getMd5Digest();
+            case SHA1:
+                return DigestUtils.getSha1Digest();
+            case SHA256:
+                return DigestUtils.getSha256Digest();
+            case SHA512:
+                return DigestUtils.getSha512Digest();
+            default:
+                throw new IllegalArgumentException("Unsupported checksum type: " + checksumType);
+        }
+    }
+
+    /**
+     * Gives cached file of given checksum, downloading it first if it's not there.
+     * @throws IOException if the downloaded file does not match the checksum.
+     */
+    private Path cachedFile(DataFile.ChecksumType checksumType, String checksum, Storage source) throws IOException {
+        String key = checksumType.name().toLowerCase() + "/" + checksum;
+        Path cachedFile = root.resolve(key);
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            if (Files.exists(cachedFile)) {
+                Files.setLastModifiedTime(cachedFile, FileTime.fromMillis(System.currentTimeMillis()));
+                return cachedFile;
+            }
+            Files.createDirectories(cachedFile.getParent());
+            Path tempDir = Files.createDirectories(root.resolve(TEMP_DIR_NAME));
+            Path tempFile = Files.createTempFile(tempDir, "image", null);
+            try {
+                MessageDigest checksumDigest = digestOf(checksumType);
+                MessageDigest md5Digest = checksumType == DataFile.ChecksumType.MD5
+                        ? checksumDigest
+                        : DigestUtils.getMd5Digest();
+                InputStream digestingIn = new DigestInputStream(source.getInputStream(), checksumDigest);
+                if (md5Digest != checksumDigest) {
+                    digestingIn = new DigestInputStream(digestingIn, md5Digest);
+                }
+                try (InputStream in = digestingIn;
+                     OutputStream out = Files.newOutputStream(tempFile)) {
+                    ImageFetcher.transfer(in, out);
+                }
+                String actualChecksum = Hex.encodeHexString(checksumDigest.digest());
+                if (!actualChecksum.equals(checksum)) {
+                    throw new IOException("Downloaded file has " + checksumType + " checksum " + actualChecksum
+                            + ", expected " + checksum);
+                }
+                if (md5Digest != checksumDigest) {
+                    String md5 = Hex.encodeHexString(md5Digest.digest());
+                    Files.write(md5FileOf(cachedFile), md5.getBytes(StandardCharsets.US_ASCII));
+                }
+                Files.move(tempFile, cachedFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                log.trace("File {} was cached concurrently", key);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            return cachedFile;
+        }
+    }
+
+    private static Path md5FileOf(Path cachedFile) {
+        return cachedFile.resolveSibling(cachedFile.getFileName() + MD5_FILE_SUFFIX);
+    }
+
+    // -------------------- INNER CLASSES --------------------
+
+    /**
+     * File of the cache, downloaded on first access.
+     */
+    private class CachedStorage implements Storage {
+
+        private final DataFile.ChecksumType checksumType;
+        private final String checksum;
+        private final Storage source;
+
+        CachedStorage(DataFile.ChecksumType checksumType, String checksum, Storage source) {
+            this.checksumType = checksumType;
+            this.checksum = checksum;
+            this.source = source;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return Files.newInputStream(cachedFile(checksumType, checksum, source));
+        }
+
+        @Override
+        public Optional<Path> getLocalPath() throws IOException {
+            return Optional.of(cachedFile(checksumType, checksum, source));
+        }
+
+        /**
+         * Gives MD5 of the cached file, which is the verified checksum itself in case of MD5 checksums.
+         */
+        @Override
+        public Optional<String> getMd5() throws IOException {
+            Path cachedFile = cachedFile(checksumType, checksum, source);
+            return checksumType == DataFile.ChecksumType.MD5
+                    ? Optional.of(checksum)
+                    : Optional.of(new String(Files.readAllBytes(md5FileOf(cachedFile)), StandardCharsets.US_ASCII));
+        }
+    }
+
+    private static class CachedFile {
+
+        private final Path path;
+        private final BasicFileAttributes attributes;
+
+        private CachedFile(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.attributes = attributes;
+        }
+
+        static CachedFile of(Path path) {
+            try {
+                return new CachedFile(path, Files.readAttributes(path, BasicFileAttributes.class));
+            } catch (IOException e) {
+                log.warn("Unable to read attributes of cached file: " + path, e);
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzipped list of fetched images, written by {@link XdsImagesFetchingStep}, so the following steps
+ * do not need to list the images directory. Each line describes a single image:
+ * <pre>
+ *     img/test_0001.cbf	6331523	0c7d2bb2f40e1d5a0b52ef3d1d5c1c35
+ * </pre>
+ * that is tab separated name relative to the working directory, size in bytes and MD5 digest.
+ * The digest of the whole list identifies the set of images, so it may be used as a cache key.
+ */
+class ImagesManifest {
+
+    static final String MANIFEST_FILE_NAME = "images.manifest.gz";
+
+    private static final Charset MANIFEST_CHARSET = StandardCharsets.UTF_8;
+    private static final char SEPARATOR = '\t';
+
+    // -------------------- LOGIC --------------------
+
+    /**
+     * Writes given entries into the manifest file.
+     * @return hex encoded MD5 digest of the (uncompressed) manifest contents.
+     */
+    static String write(Path file, List<Entry> entries) throws IOException {
+        MessageDigest digest = DigestUtils.getMd5Digest();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new DigestOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(file)), digest), MANIFEST_CHARSET))) {
+            for (Entry entry : entries) {
+                writer.append(entry.getName()).append(SEPARATOR)
+                        .append(String.valueOf(entry.getSize())).append(SEPARATOR)
+                        .append(entry.getDigest()).append('\n');
+            }
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    /**
+     * Passes entries of the manifest file one by one to the given consumer.
+     */
+    static void read(Path file, Consumer<Entry> entryConsumer) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), MANIFEST_CHARSET))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    entryConsumer.accept(parseEntry(line));
+                }
+            }
+        }
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private static Entry parseEntry(String line) throws IOException {
+        int sizeStart = line.indexOf(SEPARATOR);
+        int digestStart = line.indexOf(SEPARATOR, sizeStart + 1);
+        if (sizeStart < 0 || digestStart < 0) {
+            throw new IOException("Malformed images manifest line: " + line);
+        }
+        try {
+            return new Entry(line.substring(0, sizeStart),
+                    Long.parseLong(line.substring(sizeStart + 1, digestStart)),
+                    line.substring(digestStart + 1));
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed images manifest line: " + line, e);
+        }
+    }
+
+    // -------------------- INNER CLASSES --------------------
+
+    /**
+     * Single image of the manifest.
+     */
+    static class Entry {
+
+        private final String name;
+        private final long size;
+        private final String digest;
+
+        Entry(String name, long size, String digest) {
+            this.name = name;
+            this.size = size;
+            this.digest = digest;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return hex encoded MD5 digest of the image.
+         */
+        public String getDigest() {
+            return digest;
+        }
+
+        Entry withName(String name) {
+            return new Entry(name, size, digest);
+        }
+    }
+}
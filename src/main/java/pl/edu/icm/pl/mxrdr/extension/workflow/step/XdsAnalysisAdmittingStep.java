@@ -0,0 +1,160 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import edu.harvard.iq.dataverse.dataset.datasetversion.DatasetVersionServiceBean;
+import edu.harvard.iq.dataverse.persistence.datafile.FileMetadata;
+import edu.harvard.iq.dataverse.persistence.dataset.DatasetVersion;
+import edu.harvard.iq.dataverse.workflow.execution.WorkflowExecutionStepContext;
+import edu.harvard.iq.dataverse.workflow.step.Failure;
+import edu.harvard.iq.dataverse.workflow.step.Pending;
+import edu.harvard.iq.dataverse.workflow.step.Success;
+import edu.harvard.iq.dataverse.workflow.step.WorkflowStep;
+import edu.harvard.iq.dataverse.workflow.step.WorkflowStepParams;
+import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.edu.icm.pl.mxrdr.extension.workflow.XdsAnalysisScheduler;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Map;
+import java.util.Optional;
+
+import static edu.harvard.iq.dataverse.workflow.step.FilesystemAccessingWorkflowStep.BASE_WORK_DIR_PARAM_NAME;
+
+/**
+ * Asks {@link XdsAnalysisScheduler} for admission of the analysis, so only as many analyses
+ * run on this node at once, as its processors, memory and scratch space allow. The step pauses
+ * until the analysis is admitted, when the scheduler resumes it. Should precede fetching of images,
+ * as the analysis is running since then until its workflow finishes.
+ */
+public class XdsAnalysisAdmittingStep implements WorkflowStep {
+
+    private static final Logger log = LoggerFactory.getLogger(XdsAnalysisAdmittingStep.class);
+
+    public static final String STEP_ID = "xds-admit-analysis";
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    /**
+     * Input parameter containing maximum number of analyses running at once on this node.
+     * Defaults to {@value MAX_ANALYSES_PARAM_DEFAULT}, that is limited only by other parameters.
+     */
+    static final String MAX_ANALYSES_PARAM_NAME = "maxAnalyses";
+
+    static final String MAX_ANALYSES_PARAM_DEFAULT = "0";
+
+    /**
+     * Input parameter containing number of processors needed by a single analysis.
+     * Defaults to {@value ANALYSIS_PROCESSORS_PARAM_DEFAULT}.
+     */
+    static final String ANALYSIS_PROCESSORS_PARAM_NAME = "analysisProcessors";
+
+    static final String ANALYSIS_PROCESSORS_PARAM_DEFAULT = "8";
+
+    /**
+     * Input parameter containing memory in megabytes needed by a single analysis.
+     * Defaults to {@value ANALYSIS_MEMORY_PARAM_DEFAULT}, that is memory is not limiting.
+     */
+    static final String ANALYSIS_MEMORY_PARAM_NAME = "analysisMemory";
+
+    static final String ANALYSIS_MEMORY_PARAM_DEFAULT = "0";
+
+    /**
+     * Input parameter containing free space in megabytes needed by a single analysis in
+     * the base working directory. Defaults to {@value ANALYSIS_SCRATCH_PARAM_DEFAULT},
+     * that is scratch space is not limiting.
+     */
+    static final String ANALYSIS_SCRATCH_PARAM_NAME = "analysisScratch";
+
+    static final String ANALYSIS_SCRATCH_PARAM_DEFAULT = "0";
+
+    private final DatasetVersionServiceBean versionsService;
+    private final XdsAnalysisScheduler scheduler;
+
+    private final int maxAnalyses;
+    private final int analysisProcessors;
+    private final long analysisMemory;
+    private final long analysisScratch;
+    private final String baseWorkDir;
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    public XdsAnalysisAdmittingStep(WorkflowStepParams inputParams, DatasetVersionServiceBean versionsService,
+                                    XdsAnalysisScheduler scheduler) {
+        this.versionsService = versionsService;
+        this.scheduler = scheduler;
+        this.maxAnalyses = Integer.parseInt(inputParams.getOrDefault(MAX_ANALYSES_PARAM_NAME, MAX_ANALYSES_PARAM_DEFAULT));
+        this.analysisProcessors = Integer.parseInt(inputParams.getOrDefault(ANALYSIS_PROCESSORS_PARAM_NAME, ANALYSIS_PROCESSORS_PARAM_DEFAULT));
+        this.analysisMemory = Long.parseLong(inputParams.getOrDefault(ANALYSIS_MEMORY_PARAM_NAME, ANALYSIS_MEMORY_PARAM_DEFAULT)) * MEGABYTE;
+        this.analysisScratch = Long.parseLong(inputParams.getOrDefault(ANALYSIS_SCRATCH_PARAM_NAME, ANALYSIS_SCRATCH_PARAM_DEFAULT)) * MEGABYTE;
+        this.baseWorkDir = inputParams.getOrDefault(BASE_WORK_DIR_PARAM_NAME, System.getProperty("java.io.tmpdir"));
+    }
+
+    // -------------------- LOGIC --------------------
+
+    @Override
+    public WorkflowStepResult run(WorkflowExecutionStepContext context) {
+        Optional<Long> datasetVersionId = versionsService.withDatasetVersion(context, DatasetVersion::getId);
+        if (!datasetVersionId.isPresent()) {
+            return new Failure("Dataset version of the analysis not found");
+        }
+        long datasetSize = versionsService.withDatasetVersion(context, this::datasetSize).orElse(0L);
+        if (scheduler.admit(datasetVersionId.get(), datasetSize, context.getInvocationId(), this::capacity)) {
+            log.debug("Admitted analysis of dataset version {}", datasetVersionId.get());
+            return new Success();
+        }
+        log.debug("Analysis of dataset version {} of {} bytes waits for admission, {} analyses waiting",
+                datasetVersionId.get(), datasetSize, scheduler.queueDepth());
+        return new Pending();
+    }
+
+    /**
+     * Called by {@link XdsAnalysisScheduler} once the paused analysis is admitted.
+     */
+    @Override
+    public WorkflowStepResult resume(WorkflowExecutionStepContext context, Map<String, String> internalData, String externalData) {
+        versionsService.withDatasetVersion(context, DatasetVersion::getId)
+                .ifPresent(datasetVersionId -> log.debug("Admitted analysis of dataset version {}", datasetVersionId));
+        return new Success();
+    }
+
+    @Override
+    public void rollback(WorkflowExecutionStepContext context, Failure failure) {
+        versionsService.withDatasetVersion(context, DatasetVersion::getId)
+                .ifPresent(scheduler::release);
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private long datasetSize(DatasetVersion datasetVersion) {
+        return datasetVersion.getFileMetadatas().stream()
+                .map(FileMetadata::getDataFile)
+                .mapToLong(dataFile -> Math.max(0, dataFile.getFilesize()))
+                .sum();
+    }
+
+    /**
+     * @return number of analyses that may run at once, at least one.
+     */
+    int capacity() {
+        long capacity = Runtime.getRuntime().availableProcessors() / Math.max(1, analysisProcessors);
+        if (maxAnalyses > 0) {
+            capacity = Math.min(capacity, maxAnalyses);
+        }
+        if (analysisMemory > 0) {
+            capacity = Math.min(capacity, totalMemory() / analysisMemory);
+        }
+        if (analysisScratch > 0) {
+            capacity = Math.min(capacity, scheduler.runningAnalyses() + new File(baseWorkDir).getUsableSpace() / analysisScratch);
+        }
+        return (int) Math.max(1, capacity);
+    }
+
+    private long totalMemory() {
+        OperatingSystemMXBean system = ManagementFactory.getOperatingSystemMXBean();
+        return system instanceof com.sun.management.OperatingSystemMXBean
+                ? ((com.sun.management.OperatingSystemMXBean) system).getTotalPhysicalMemorySize()
+                : Runtime.getRuntime().maxMemory();
+    }
+}
@@ -11,29 +11,53 @@ import edu.harvard.iq.dataverse.workflow.step.Failure;
 import edu.harvard.iq.dataverse.workflow.step.FilesystemAccessingWorkflowStep;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStepParams;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import static edu.harvard.iq.dataverse.dataaccess.DataAccess.dataAccess;
 import static edu.harvard.iq.dataverse.workflow.step.Success.successWith;
+import static java.util.stream.Collectors.toList;
 
 /**
  * Fetches dataset version files into local directory filtering images only.
@@ -55,17 +79,82 @@ public class XdsImagesFetchingStep extends FilesystemAccessingWorkflowStep {
      */
     static final String IMAGES_DIR_PARAM_DEFAULT = "img";
 
+    /**
+     * Input parameter containing maximal number of files fetched concurrently.
+     * Defaults to {@value FETCH_PARALLELISM_PARAM_DEFAULT}, that is fetching files one by one.
+     */
+    static final String FETCH_PARALLELISM_PARAM_NAME = "fetchParallelism";
+
+    static final String FETCH_PARALLELISM_PARAM_DEFAULT = "1";
+
+    /**
+     * Input parameter containing number of times fetching of a single file is retried after I/O failure.
+     * Defaults to {@value FETCH_RETRIES_PARAM_DEFAULT}.
+     */
+    static final String FETCH_RETRIES_PARAM_NAME = "fetchRetries";
+
+    static final String FETCH_RETRIES_PARAM_DEFAULT = "2";
+
+    /**
+     * Input parameter telling whether compressed images (see {@link ImageCompression}) are decompressed
+     * while being fetched, so XDS reads plain images. Defaults to false.
+     */
+    static final String DECOMPRESS_IMAGES_PARAM_NAME = "decompressImages";
+
+    /**
+     * Output parameter containing the name of {@link ImagesManifest} file within current working directory.
+     */
+    static final String IMAGES_MANIFEST_PARAM_NAME = "imagesManifest";
+
+    /**
+     * Output parameter containing the digest of {@link ImagesManifest}, identifying the set of fetched images.
+     */
+    static final String IMAGES_DIGEST_PARAM_NAME = "imagesDigest";
+
+    /**
+     * Input parameter containing maximal total size (in megabytes) of {@link ImagesCache}, shared by all runs.
+     * Defaults to {@value IMAGES_CACHE_SIZE_PARAM_DEFAULT}, that is images are not cached.
+     */
+    static final String IMAGES_CACHE_SIZE_PARAM_NAME = "imagesCacheSize";
+
+    static final String IMAGES_CACHE_SIZE_PARAM_DEFAULT = "0";
+
+    /**
+     * Input parameter containing the directory of {@link ImagesCache}.
+     * Defaults to {@value IMAGES_CACHE_DIR_PARAM_DEFAULT} directory within base working directory.
+     */
+    static final String IMAGES_CACHE_DIR_PARAM_NAME = "imagesCacheDir";
+
+    static final String IMAGES_CACHE_DIR_PARAM_DEFAULT = "images-cache";
+
     /**
      * Default files storage source using {@link StorageIO} API.
      */
-    static final StorageSource DEFAULT_STORAGE_SOURCE = metadata -> () -> {
-        StorageIO<DataFile> storage = dataAccess().getStorageIO(metadata.getDataFile());
-        storage.open(DataAccessOption.READ_ACCESS);
-        return storage.getInputStream();
+    static final StorageSource DEFAULT_STORAGE_SOURCE = metadata -> new Storage() {
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return open().getInputStream();
+        }
+
+        @Override
+        public Optional<Path> getLocalPath() throws IOException {
+            StorageIO<DataFile> storage = open();
+            return storage.isLocalFile() ? Optional.of(storage.getFileSystemPath()) : Optional.empty();
+        }
+
+        private StorageIO<DataFile> open() throws IOException {
+            StorageIO<DataFile> storage = dataAccess().getStorageIO(metadata.getDataFile());
+            storage.open(DataAccessOption.READ_ACCESS);
+            return storage;
+        }
     };
 
     private final String imgDirName;
+    private final int fetchParallelism;
+    private final int fetchRetries;
+    private final boolean decompressImages;
     private final DatasetVersionServiceBean versionsService;
+    private final ImagesCache imagesCache;
     private final StorageSource storageSource;
 
     // -------------------- CONSTRUCTORS --------------------
@@ -77,8 +166,12 @@ public class XdsImagesFetchingStep extends FilesystemAccessingWorkflowStep {
     public XdsImagesFetchingStep(WorkflowStepParams inputParams, DatasetVersionServiceBean versionsService, StorageSource storageSource) {
         super(inputParams);
         this.imgDirName = inputParams.getOrDefault(IMAGES_DIR_PARAM_NAME, IMAGES_DIR_PARAM_DEFAULT);
+        this.fetchParallelism = Integer.parseInt(inputParams.getOrDefault(FETCH_PARALLELISM_PARAM_NAME, FETCH_PARALLELISM_PARAM_DEFAULT));
+        this.fetchRetries = Integer.parseInt(inputParams.getOrDefault(FETCH_RETRIES_PARAM_NAME, FETCH_RETRIES_PARAM_DEFAULT));
+        this.decompressImages = inputParams.getBoolean(DECOMPRESS_IMAGES_PARAM_NAME);
         this.versionsService = versionsService;
-        this.storageSource = storageSource;
+        this.imagesCache = imagesCacheOf(inputParams);
+        this.storageSource = imagesCache != null ? imagesCache.caching(storageSource) : storageSource;
     }
 
     // -------------------- LOGIC --------------------
@@ -88,24 +181,56 @@ public class XdsImagesFetchingStep extends FilesystemAccessingWorkflowStep {
         List<FileMetadata> fileMetadata = versionsService
                 .withDatasetVersion(context, DatasetVersion::getFileMetadatas)
                 .orElseGet(Collections::emptyList);
-        fetchInto(fileMetadata, workDir);
-        return successWith(data ->
-                data.put(IMAGES_DIR_PARAM_NAME, imgDirName)
-        );
+        List<ImagesManifest.Entry> images = fetchImagesInto(fileMetadata, workDir);
+        String imagesDigest = ImagesManifest.write(workDir.resolve(ImagesManifest.MANIFEST_FILE_NAME), images);
+        return successWith(data -> {
+            data.put(IMAGES_DIR_PARAM_NAME, imgDirName);
+            data.put(IMAGES_MANIFEST_PARAM_NAME, ImagesManifest.MANIFEST_FILE_NAME);
+            data.put(IMAGES_DIGEST_PARAM_NAME, imagesDigest);
+        });
     }
 
+    /**
+     * Fetches images of given files, up to {@value FETCH_PARALLELISM_PARAM_NAME} files at a time.
+     * @return paths of fetched images relative to the working directory, in order of given files.
+     * @throws IOException if any file could not be fetched even after retries.
+     * @throws IllegalArgumentException if two different images have the same name.
+     */
     List<String> fetchInto(List<FileMetadata> metadatas, Path workDir) throws IOException {
+        return fetchImagesInto(metadatas, workDir).stream()
+                .map(ImagesManifest.Entry::getName)
+                .collect(toList());
+    }
+
+    /**
+     * Fetches images the same as {@link #fetchInto(List, Path)}.
+     * @return manifest entries of fetched images, in order of given files, followed by images
+     * already present in the directory, that some of given files turned out to be equal to.
+     */
+    List<ImagesManifest.Entry> fetchImagesInto(List<FileMetadata> metadatas, Path workDir) throws IOException {
         Path imgDir = Files.createDirectories(workDir.resolve(imgDirName));
-        log.trace("Fetching images into {}", imgDir);
+        log.trace("Fetching images into {} using {} threads", imgDir, fetchParallelism);
         Path relativeImgDir = workDir.relativize(imgDir);
-        List<String> fileNames = new ArrayList<>();
-        for (FileMetadata metadata : metadatas) {
-            new ImageFetcher(metadata, storageSource).fetchInto(imgDir).stream()
-                    .map(fileName -> relativeImgDir.resolve(fileName).toString())
-                    .forEach(fileNames::add);
+        FetchedImages fetchedImages = new FetchedImages();
+        List<ImagesManifest.Entry> images = new ArrayList<>();
+        Set<String> fetchedNames = new HashSet<>();
+        try {
+            for (List<String> fetched : fetchAll(metadatas, imgDir, fetchedImages)) {
+                fetchedNames.addAll(fetched);
+                fetched.stream()
+                        .map(fileName -> fetchedImages.entryOf(fileName).withName(relativeImgDir.resolve(fileName).toString()))
+                        .forEach(images::add);
+            }
+        } finally {
+            evictImagesCache();
         }
-        log.trace("Fetched {} images into {}", fileNames.size(), imgDir);
-        return fileNames;
+        fetchedImages.entries().stream()
+                .filter(image -> !fetchedNames.contains(image.getName()))
+                .sorted(Comparator.comparing(ImagesManifest.Entry::getName))
+                .map(image -> image.withName(relativeImgDir.resolve(image.getName()).toString()))
+                .forEach(images::add);
+        log.trace("Fetched {} images into {}", images.size(), imgDir);
+        return images;
     }
 
     @Override
@@ -132,6 +257,127 @@ public class XdsImagesFetchingStep extends FilesystemAccessingWorkflowStep {
                 });
     }
 
+    // -------------------- PRIVATE --------------------
+
+    private static ImagesCache imagesCacheOf(WorkflowStepParams inputParams) {
+        long maxSize = Long.parseLong(inputParams.getOrDefault(IMAGES_CACHE_SIZE_PARAM_NAME, IMAGES_CACHE_SIZE_PARAM_DEFAULT));
+        if (maxSize <= 0) {
+            return null;
+        }
+        Path baseWorkDir = Paths.get(inputParams.getOrDefault(BASE_WORK_DIR_PARAM_NAME, System.getProperty("java.io.tmpdir")));
+        Path cacheDir = baseWorkDir.resolve(inputParams.getOrDefault(IMAGES_CACHE_DIR_PARAM_NAME, IMAGES_CACHE_DIR_PARAM_DEFAULT));
+        return new ImagesCache(cacheDir, maxSize * 1024 * 1024);
+    }
+
+    private void evictImagesCache() {
+        if (imagesCache == null) {
+            return;
+        }
+        try {
+            imagesCache.evict();
+        } catch (IOException e) {
+            log.warn("Unable to evict files from images cache", e);
+        }
+    }
+
+    private List<List<String>> fetchAll(List<FileMetadata> metadatas, Path imgDir,
+                                        FetchedImages fetchedImages) throws IOException {
+        if (fetchParallelism <= 1 || metadatas.size() <= 1) {
+            List<List<String>> fetched = new ArrayList<>();
+            for (FileMetadata metadata : metadatas) {
+                fetched.add(fetchWithRetries(fetcherOf(metadata, fetchedImages, fetchParallelism), imgDir));
+            }
+            return fetched;
+        }
+        return fetchConcurrently(metadatas, imgDir, fetchedImages);
+    }
+
+    /**
+     * Fetches given files on {@link #fetchParallelism} threads. Entries of archives are extracted
+     * sequentially then, by the thread fetching the archive, so no more threads read at once.
+     */
+    private List<List<String>> fetchConcurrently(List<FileMetadata> metadatas, Path imgDir,
+                                                 FetchedImages fetchedImages) throws IOException {
+        List<Callable<List<String>>> fetches = new ArrayList<>();
+        for (FileMetadata metadata : metadatas) {
+            ImageFetcher fetcher = fetcherOf(metadata, fetchedImages, 1);
+            fetches.add(() -> fetchWithRetries(fetcher, imgDir));
+        }
+        return callConcurrently(fetches, fetchParallelism);
+    }
+
+    /**
+     * @param parallelism number of threads extracting entries of archive.
+     */
+    private ImageFetcher fetcherOf(FileMetadata metadata, FetchedImages fetchedImages, int parallelism) {
+        return new ImageFetcher(metadata, storageSource, fetchedImages, parallelism, decompressImages);
+    }
+
+    private List<String> fetchWithRetries(ImageFetcher fetcher, Path imgDir) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return fetcher.fetchInto(imgDir);
+            } catch (IOException e) {
+                if (attempt > fetchRetries) {
+                    throw e;
+                }
+                log.warn("Fetching of {} failed on attempt {}, retrying", fetcher.getLabel(), attempt, e);
+            }
+        }
+    }
+
+    /**
+     * Runs given tasks on a bounded pool, collecting results in order of given tasks. On first failure
+     * tasks not yet started are cancelled and the failure is rethrown once running ones complete.
+     */
+    static <T> List<T> callConcurrently(List<Callable<T>> tasks, int parallelism) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        CompletionService<T> completionService = new ExecutorCompletionService<>(pool);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (Callable<T> task : tasks) {
+                futures.add(completionService.submit(task));
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                completionService.take().get();
+            }
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching images", e);
+        } catch (ExecutionException e) {
+            throw rethrown(e.getCause());
+        } finally {
+            pool.shutdownNow();
+            awaitTermination(pool);
+        }
+    }
+
+    private static IOException rethrown(Throwable cause) {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+
+    private static void awaitTermination(ExecutorService pool) {
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("Still waiting for images being fetched");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     // -------------------- INNER CLASSES --------------------
 
     /**
@@ -140,6 +386,20 @@ public class XdsImagesFetchingStep extends FilesystemAccessingWorkflowStep {
     @FunctionalInterface
     interface Storage {
         InputStream getInputStream() throws IOException;
+
+        /**
+         * @return path of the data in local filesystem, if it's available there.
+         */
+        default Optional<Path> getLocalPath() throws IOException {
+            return Optional.empty();
+        }
+
+        /**
+         * @return hex encoded MD5 digest of the data, if it's known without reading the data.
+         */
+        default Optional<String> getMd5() throws IOException {
+            return Optional.empty();
+        }
     }
 
     /**
@@ -153,7 +413,15 @@ public class XdsImagesFetchingStep extends FilesystemAccessingWorkflowStep {
     /**
      * Fetches given file from remote {@link Storage} into local directory.
      * Fetching is done only if the file confirms to defined image naming patterns.
-     * If given file is a ZIP archive, it's contents are unpacked and taken.
+     * If given file is a ZIP archive, it's contents are unpacked and taken. Archives available
+     * in local filesystem are read through their central directory, so only image entries are
+     * inflated, up to given number at a time.
+     * Digest of each image is computed while it's written and kept in {@link FetchedImages}
+     * shared by all fetchers of a run, so an image of already fetched name is compared
+     * by reading the new image only. Images of the same name are written and compared
+     * one at a time. Compressed images may be decompressed on the fly, under the name without
+     * the compression suffix. If fetching fails, images already written by this fetcher are
+     * removed, so it can be retried.
      */
     static class ImageFetcher {
 
@@ -164,22 +432,55 @@ public class XdsImagesFetchingStep extends FilesystemAccessingWorkflowStep {
                         .map(Pattern::asPredicate)
                         .reduce(x -> false, Predicate::or);
 
+        /**
+         * Size of buffers used for copying images and reading archives. Copy buffers are kept
+         * per thread, so they are reused by all fetchers running on the same thread.
+         */
+        static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+        private static final ThreadLocal<byte[]> COPY_BUFFER = ThreadLocal.withInitial(() -> new byte[COPY_BUFFER_SIZE]);
+
         private final FileMetadata metadata;
         private final StorageSource storageSource;
+        private final FetchedImages fetchedImages;
+        private final int parallelism;
+        private final boolean decompress;
 
         ImageFetcher(FileMetadata metadata, StorageSource storageSource) {
+            this(metadata, storageSource, new FetchedImages(), 1);
+        }
+
+        ImageFetcher(FileMetadata metadata, StorageSource storageSource, FetchedImages fetchedImages, int parallelism) {
+            this(metadata, storageSource, fetchedImages, parallelism, false);
+        }
+
+        ImageFetcher(FileMetadata metadata, StorageSource storageSource, FetchedImages fetchedImages, int parallelism,
+                     boolean decompress) {
             this.metadata = metadata;
             this.storageSource = storageSource;
+            this.fetchedImages = fetchedImages;
+            this.parallelism = parallelism;
+            this.decompress = decompress;
+        }
+
+        String getLabel() {
+            return metadata.getLabel();
         }
 
         List<String> fetchInto(Path dir) throws IOException {
-            Storage fileStorage = storageSource.getStorage(metadata);
-            if (isZip(metadata)) {
-                return fetchZipContents(fileStorage, dir);
-            } else {
-                return fetchImage(metadata.getLabel(), fileStorage, dir)
-                        .map(Collections::singletonList)
-                        .orElseGet(Collections::emptyList);
+            List<String> fetched = new ArrayList<>();
+            try {
+                Storage fileStorage = storageSource.getStorage(metadata);
+                if (isZip(metadata)) {
+                    fetchZipContents(fileStorage, dir, fetched);
+                } else {
+                    fetchImage(metadata.getLabel(), fileStorage, dir)
+                            .ifPresent(fetched::add);
+                }
+                return fetched;
+            } catch (IOException e) {
+                removeFetched(fetched, dir);
+                throw e;
             }
         }
 
@@ -188,9 +489,13 @@ public class XdsImagesFetchingStep extends FilesystemAccessingWorkflowStep {
                     .endsWith(".zip");
         }
 
-        private List<String> fetchZipContents(Storage storage, Path dir) throws IOException {
-            try (ZipInputStream zip = new ZipInputStream(storage.getInputStream())) {
-                List<String> names = new ArrayList<>();
+        private void fetchZipContents(Storage storage, Path dir, List<String> names) throws IOException {
+            Optional<Path> localPath = storage.getLocalPath();
+            if (localPath.isPresent()) {
+                fetchZipEntries(localPath.get(), dir, names);
+                return;
+            }
+            try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(storage.getInputStream(), COPY_BUFFER_SIZE))) {
                 Storage zipStorage = () -> new NonClosableInputStream(zip);
                 ZipEntry entry;
                 while ((entry = zip.getNextEntry()) != null) {
@@ -200,7 +505,37 @@ public class XdsImagesFetchingStep extends FilesystemAccessingWorkflowStep {
                     }
                     zip.closeEntry();
                 }
-                return names;
+            }
+        }
+
+        private void fetchZipEntries(Path zipPath, Path dir, List<String> names) throws IOException {
+            try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+                List<ZipEntry> entries = zipFile.stream()
+                        .filter(entry -> !entry.isDirectory() && isImage(entry.getName()))
+                        .collect(toList());
+                if (parallelism <= 1 || entries.size() <= 1) {
+                    for (ZipEntry entry : entries) {
+                        fetchImage(entry.getName(), () -> zipFile.getInputStream(entry), dir)
+                                .ifPresent(names::add);
+                    }
+                    return;
+                }
+                List<String> written = Collections.synchronizedList(new ArrayList<>());
+                List<Callable<Optional<String>>> extractions = new ArrayList<>();
+                for (ZipEntry entry : entries) {
+                    extractions.add(() -> {
+                        Optional<String> fileName = fetchImage(entry.getName(), () -> zipFile.getInputStream(entry), dir);
+                        fileName.ifPresent(written::add);
+                        return fileName;
+                    });
+                }
+                try {
+                    callConcurrently(extractions, Math.min(parallelism, entries.size()))
+                            .forEach(fileName -> fileName.ifPresent(names::add));
+                } catch (IOException | RuntimeException e) {
+                    names.addAll(written);
+                    throw e;
+                }
             }
         }
 
@@ -209,18 +544,44 @@ public class XdsImagesFetchingStep extends FilesystemAccessingWorkflowStep {
                 if (fileName.contains(File.separator)) {
                     fileName = fileName.substring(fileName.lastIndexOf(File.separator) + 1, fileName.length());
                 }
+                Optional<ImageCompression> compression = decompress ? ImageCompression.of(fileName) : Optional.empty();
+                if (compression.isPresent() && isImage(compression.get().decompressedName(fileName))) {
+                    fileName = compression.get().decompressedName(fileName);
+                    storage = compression.get().decompressing(storage);
+                }
                 Path filePath = dir.resolve(fileName);
-                if (Files.exists(filePath)) {
-                    String newSum = DigestUtils.md5Hex(storage.getInputStream());
-                    String existingSum = DigestUtils.md5Hex(Files.newInputStream(filePath));
-                    if (!existingSum.equals(newSum)) {
-                        throw new IllegalArgumentException("Duplicate file: " + fileName);
-                    } else {
-                        return Optional.empty();
+                synchronized (fetchedImages.lockOf(fileName)) {
+                    Optional<String> knownSum = storage.getMd5();
+                    String existingSum = fetchedImages.digestOf(fileName, filePath);
+                    if (existingSum != null) {
+                        String newSum = knownSum.orElse(null);
+                        if (newSum == null) {
+                            try (InputStream in = storage.getInputStream()) {
+                                newSum = md5Of(in);
+                            }
+                        }
+                        if (!existingSum.equals(newSum)) {
+                            throw new IllegalArgumentException("Duplicate file: " + fileName);
+                        } else {
+                            return Optional.empty();
+                        }
                     }
-                }
-                try (InputStream in = storage.getInputStream()) {
-                    Files.copy(in, filePath);
+                    Optional<Path> localPath = knownSum.isPresent() ? storage.getLocalPath() : Optional.empty();
+                    if (localPath.isPresent()) {
+                        linkOrCopy(localPath.get(), filePath);
+                        fetchedImages.add(new ImagesManifest.Entry(fileName, Files.size(filePath), knownSum.get()));
+                        return Optional.of(fileName);
+                    }
+                    MessageDigest digest = DigestUtils.getMd5Digest();
+                    long size;
+                    try (InputStream in = new DigestInputStream(storage.getInputStream(), digest);
+                         OutputStream out = Files.newOutputStream(filePath, StandardOpenOption.CREATE_NEW)) {
+                        size = transfer(in, out);
+                    } catch (IOException e) {
+                        Files.deleteIfExists(filePath);
+                        throw e;
+                    }
+                    fetchedImages.add(new ImagesManifest.Entry(fileName, size, Hex.encodeHexString(digest.digest())));
                 }
                 return Optional.of(fileName);
             } else {
@@ -228,13 +589,114 @@ public class XdsImagesFetchingStep extends FilesystemAccessingWorkflowStep {
             }
         }
 
+        /**
+         * Hard links given file, so it's not copied if it's in the same filesystem. Otherwise copies it.
+         */
+        private void linkOrCopy(Path source, Path filePath) throws IOException {
+            try {
+                Files.createLink(filePath, source);
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                log.trace("Unable to link {}, copying it", source, e);
+                Files.copy(source, filePath);
+            }
+        }
+
         private boolean isImage(String fileName) {
             return IMAGES_PATTERNS.test(fileName);
         }
+
+        /**
+         * Copies all remaining data of the input into the output, through the copy buffer of current thread.
+         * @return number of bytes copied.
+         */
+        static long transfer(InputStream in, OutputStream out) throws IOException {
+            byte[] buffer = COPY_BUFFER.get();
+            long transferred = 0;
+            int read;
+            while ((read = in.read(buffer, 0, buffer.length)) >= 0) {
+                out.write(buffer, 0, read);
+                transferred += read;
+            }
+            return transferred;
+        }
+
+        private void removeFetched(List<String> fileNames, Path dir) {
+            for (String fileName : fileNames) {
+                synchronized (fetchedImages.lockOf(fileName)) {
+                    try {
+                        Files.deleteIfExists(dir.resolve(fileName));
+                        fetchedImages.remove(fileName);
+                    } catch (IOException e) {
+                        log.warn("Unable to remove partially fetched image: " + fileName, e);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Computes MD5 digest of all remaining data of the input.
+         * @return hex encoded digest.
+         */
+        static String md5Of(InputStream in) throws IOException {
+            MessageDigest digest = DigestUtils.getMd5Digest();
+            byte[] buffer = COPY_BUFFER.get();
+            int read;
+            while ((read = in.read(buffer, 0, buffer.length)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+            return Hex.encodeHexString(digest.digest());
+        }
+    }
+
+    /**
+     * Index of images fetched in a single run, holding size and MD5 digest of each image by its name,
+     * together with locks guarding each name.
+     */
+    static class FetchedImages {
+
+        private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, ImagesManifest.Entry> images = new ConcurrentHashMap<>();
+
+        Object lockOf(String fileName) {
+            return locks.computeIfAbsent(fileName, name -> new Object());
+        }
+
+        /**
+         * Gives digest of already fetched image of given name. Images present in the directory,
+         * but not fetched in this run, are read to compute it.
+         * @return hex encoded digest, or null if there is no such image.
+         */
+        String digestOf(String fileName, Path filePath) throws IOException {
+            ImagesManifest.Entry image = images.get(fileName);
+            if (image == null && Files.exists(filePath)) {
+                try (InputStream in = Files.newInputStream(filePath)) {
+                    image = new ImagesManifest.Entry(fileName, Files.size(filePath), ImageFetcher.md5Of(in));
+                }
+                images.put(fileName, image);
+            }
+            return image != null ? image.getDigest() : null;
+        }
+
+        ImagesManifest.Entry entryOf(String fileName) {
+            return images.get(fileName);
+        }
+
+        Collection<ImagesManifest.Entry> entries() {
+            return images.values();
+        }
+
+        void add(ImagesManifest.Entry image) {
+            images.put(image.getName(), image);
+        }
+
+        void remove(String fileName) {
+            images.remove(fileName);
+        }
     }
 
     /**
      * Prevents stream from closing on {@link java.io.Closeable} call.
+     * All reads are passed to the underlying stream as they are, so bulk reads stay bulk.
      */
     static class NonClosableInputStream extends InputStream {
 
@@ -249,6 +711,30 @@ public class XdsImagesFetchingStep extends FilesystemAccessingWorkflowStep {
             return stream.read();
         }
 
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return stream.read(buffer, offset, length);
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            return stream.skip(count);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return stream.available();
+        }
+
+        /**
+         * Copies all remaining data of the underlying stream into the output,
+         * the same as <code>InputStream.transferTo</code> of newer JDKs.
+         * @return number of bytes copied.
+         */
+        public long transferTo(OutputStream out) throws IOException {
+            return ImageFetcher.transfer(stream, out);
+        }
+
         @Override
         public void close() {
             // suppress & do nothing
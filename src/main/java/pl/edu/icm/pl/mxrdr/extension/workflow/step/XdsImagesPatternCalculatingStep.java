@@ -8,22 +8,26 @@ import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.ImageSweep.FrameRange;
 
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.BiFunction;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 import static edu.harvard.iq.dataverse.workflow.internalspi.SystemProcessStep.ARGUMENTS_PARAM_NAME;
 import static edu.harvard.iq.dataverse.workflow.step.Success.successWith;
 import static java.util.Collections.emptyList;
-import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.joining;
 import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.IMAGES_DIR_PARAM_DEFAULT;
 import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.IMAGES_DIR_PARAM_NAME;
+import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.IMAGES_MANIFEST_PARAM_NAME;
 import static pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputFileProcessor.XDS_INPUT_FILE_NAME;
 
 /**
@@ -54,26 +58,59 @@ public class XdsImagesPatternCalculatingStep extends FilesystemAccessingWorkflow
 
     public static final String STEP_ID = "xds-calculate-images-pattern";
 
+    /**
+     * Boolean input parameter deciding if all image sweeps should be detected, in addition to the pattern
+     * of the dominant one. Default value is <code>false</code>.
+     */
+    static final String DETECT_SWEEPS_PARAM_NAME = "detectSweeps";
+
+    /**
+     * Output parameter containing all detected image sweeps, in the form described by {@link ImageSweep}.
+     * Present only if sweeps detection was requested by {@value DETECT_SWEEPS_PARAM_NAME}.
+     */
+    static final String IMAGE_SWEEPS_PARAM_NAME = "imageSweeps";
+
+    /**
+     * Output parameter containing name templates of all numbered images, one per line, each with number of its
+     * frames and range of their numbers, like <code>img/test_????.cbf 900 1-900</code>, from the largest one.
+     */
+    static final String IMAGE_TEMPLATES_PARAM_NAME = "imageTemplates";
+
     private final String imgDirName;
+    private final String imagesManifestName;
+    private final boolean detectSweeps;
 
     // -------------------- CONSTRUCTORS --------------------
 
     public XdsImagesPatternCalculatingStep(WorkflowStepParams inputParams) {
         super(inputParams);
         this.imgDirName = inputParams.getOrDefault(IMAGES_DIR_PARAM_NAME, IMAGES_DIR_PARAM_DEFAULT);
+        this.imagesManifestName = inputParams.getOrDefault(IMAGES_MANIFEST_PARAM_NAME, "");
+        this.detectSweeps = inputParams.getBoolean(DETECT_SWEEPS_PARAM_NAME);
     }
 
     // -------------------- LOGIC --------------------
 
     @Override
     protected WorkflowStepResult.Source runInternal(WorkflowExecutionStepContext context, Path workDir) throws IOException {
-        List<String> fileNames = readFileNamesIn(workDir);
-        log.trace("Calculating XDS images name pattern for {} files", fileNames.size());
-        String namePattern = calculatePattern(fileNames);
-        log.trace("Calculated XDS images name pattern: {}", namePattern);
+        ImagesPatternScan scan = new ImagesPatternScan();
+        ImageSweepDetector detector = new ImageSweepDetector();
+        scanFileNamesIn(workDir, scan.andThen(detector));
+        log.trace("Calculating XDS images name pattern for {} files", scan.count());
+        String namePattern = scan.pattern();
+        log.trace("Calculated XDS images name pattern: {} matching {} files of frames {}", namePattern,
+                  scan.patternCount(), scan.patternFrames().map(FrameRange::toString).orElse("not numbered"));
+        String templates = formatTemplates(detector.templates());
+        log.debug("Frames of XDS image name templates in {}:\n{}", workDir, templates);
+        List<ImageSweep> sweeps = detectSweeps ? detector.sweeps() : emptyList();
+        log.trace("Detected {} XDS image sweeps", sweeps.size());
         return successWith(data -> {
             data.put(ARGUMENTS_PARAM_NAME, namePattern);
             data.put(FAILURE_ARTIFACTS_PARAM_NAME, XDS_INPUT_FILE_NAME);
+            data.put(IMAGE_TEMPLATES_PARAM_NAME, templates);
+            if (detectSweeps) {
+                data.put(IMAGE_SWEEPS_PARAM_NAME, ImageSweep.format(sweeps));
+            }
         });
     }
 
@@ -89,149 +126,210 @@ public class XdsImagesPatternCalculatingStep extends FilesystemAccessingWorkflow
     // -------------------- PRIVATE --------------------
 
     List<String> readFileNamesIn(Path workDir) throws IOException {
+        List<String> fileNames = new ArrayList<>();
+        scanFileNamesIn(workDir, fileNames::add);
+        return fileNames;
+    }
+
+    /**
+     * Passes names of files in the images directory, relative to the working directory,
+     * one by one to the given consumer. Names are taken from {@link ImagesManifest} given by
+     * {@value XdsImagesFetchingStep#IMAGES_MANIFEST_PARAM_NAME} parameter if it's present,
+     * otherwise the directory is listed.
+     */
+    void scanFileNamesIn(Path workDir, Consumer<String> fileNameConsumer) throws IOException {
+        if (StringUtils.isNotEmpty(imagesManifestName) && Files.exists(workDir.resolve(imagesManifestName))) {
+            ImagesManifest.read(workDir.resolve(imagesManifestName), image -> fileNameConsumer.accept(image.getName()));
+            return;
+        }
         Path imgDir = workDir.resolve(imgDirName);
         if (!Files.exists(imgDir)) {
-            return emptyList();
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(imgDir)) {
+            for (Path path : stream) {
+                fileNameConsumer.accept(workDir.relativize(path).toString());
+            }
         }
-        return Files.list(imgDir)
-                .map(workDir::relativize)
-                .map(Path::toString)
-                .collect(toList());
     }
 
     String calculatePattern(List<String> fileNames) {
-        WithCommonSubstring prefix = new MostCommonLongestSubstringFinder(this::prefixOf)
-                .findIn(fileNames);
-
-        WithCommonSubstring suffix = new MostCommonLongestSubstringFinder(this::suffixOf)
-                .findIn(prefix.elements);
-
-        return patternWith(prefix, suffix);
+        ImagesPatternScan scan = new ImagesPatternScan();
+        fileNames.forEach(scan);
+        return scan.pattern();
     }
 
-    private String prefixOf(String value, int prefixLength) {
-        return value.substring(0, prefixLength);
+    static String formatTemplates(List<ImageSweep> templates) {
+        return templates.stream()
+                .map(template -> template.getTemplate() + " " + template.getFrameCount() + " " + template.getFrames())
+                .collect(joining(ImageSweep.SWEEPS_SEPARATOR));
     }
 
-    private String suffixOf(String value, int suffixLength) {
-        return value.substring(value.length() - suffixLength);
-    }
-
-    private String patternWith(WithCommonSubstring prefix, WithCommonSubstring suffix) {
-        if (".h5".equals(suffix.substring)) {
-            return prefix.substring + "master.h5";
-        } else {
-            String prefixString = removeLastDigits(prefix.substring);
-            String suffixString = removeFirstDigits(suffix.substring);
-            int questionMarkCount = suffix.elements.get(0).length() - prefixString.length() - suffixString.length();
-            String questionMarks = StringUtils.repeat('?', questionMarkCount);
-            return prefixString + questionMarks + suffixString;
-        }
-    }
-    
-    private String removeLastDigits(String input) {
-        while (StringUtils.isNotEmpty(input) && Character.isDigit(input.charAt(input.length() - 1))) {
-            input = input.substring(0, input.length() - 1);
+    private static String removeLastDigits(String input) {
+        int end = input.length();
+        while (end > 0 && Character.isDigit(input.charAt(end - 1))) {
+            end--;
         }
-        return input;
+        return input.substring(0, end);
     }
 
-    private String removeFirstDigits(String input) {
-        while (StringUtils.isNotEmpty(input) && Character.isDigit(input.charAt(0))) {
-            input = input.substring(1);
+    private static String removeFirstDigits(String input) {
+        int start = 0;
+        while (start < input.length() && Character.isDigit(input.charAt(start))) {
+            start++;
         }
-        return input;
+        return input.substring(start);
     }
 
     // -------------------- INNER CLASSES --------------------
 
     /**
-     * Finder class for most common and longest substring.
+     * Calculates pattern of names passed one by one, without collecting them.
      * Consult assumptions documented at the outer class level.
+     * <p>
+     * Pattern is made of the most common and longest prefix, and the most common and longest suffix
+     * of names having that prefix. Names are bucketed by their first character, which is the first
+     * level of a radix tree built of the names. No prefix is more common than the largest bucket,
+     * and the longest prefix as common as that is the common prefix of the whole bucket, that is
+     * the edge below it in the tree. So only buckets are kept, with the length of their common prefix
+     * narrowed by each name. Within each of them names are bucketed the same way by their last character
+     * for the suffix. Of equally common and long candidates the one completed first is taken.
      */
-    private static class MostCommonLongestSubstringFinder {
-
-        private final Map<String, WithCommonSubstring> cache = new HashMap<>();
-        private final BiFunction<String, Integer, String> substringSupplier;
+    static class ImagesPatternScan implements Consumer<String> {
 
-        private WithCommonSubstring found = new WithCommonSubstring("");
-        private int checkedSubstringLength = 0;
-        private boolean longerSubstringPossible = true;
+        private final Map<Character, Bucket> prefixes = new HashMap<>();
+        private int count;
 
-        MostCommonLongestSubstringFinder(BiFunction<String, Integer, String> substringSupplier) {
-            this.substringSupplier = substringSupplier;
+        @Override
+        public void accept(String fileName) {
+            int index = count++;
+            if (fileName.isEmpty()) {
+                return;
+            }
+            Bucket prefix = prefixes.computeIfAbsent(fileName.charAt(0), first -> new Bucket(fileName, false));
+            prefix.add(fileName, index);
+            prefix.suffixes.computeIfAbsent(fileName.charAt(fileName.length() - 1), last -> new Bucket(fileName, true))
+                    .add(fileName, index);
         }
 
-        WithCommonSubstring findIn(List<String> values) {
-            while (isLongerSubstringPossible()) {
-                for (String value : values) {
-                    cacheAndCompare(value);
-                }
-            }
-            return found;
+        /**
+         * @return number of names scanned.
+         */
+        int count() {
+            return count;
         }
 
-        private boolean isLongerSubstringPossible() {
-            if (longerSubstringPossible) {
-                checkedSubstringLength++;
-                longerSubstringPossible = false;
-                return true;
+        /**
+         * @return pattern of the most common names.
+         * @throws IllegalStateException if no names were scanned.
+         */
+        String pattern() {
+            Bucket prefix = mostCommonOrLongest(prefixes);
+            Bucket suffix = mostCommonOrLongest(prefix.suffixes);
+            if (".h5".equals(suffix.commonSubstring())) {
+                return prefix.commonSubstring() + "master.h5";
             } else {
-                return false;
+                String prefixString = removeLastDigits(prefix.commonSubstring());
+                String suffixString = removeFirstDigits(suffix.commonSubstring());
+                int questionMarkCount = suffix.reference.length() - prefixString.length() - suffixString.length();
+                String questionMarks = StringUtils.repeat('?', questionMarkCount);
+                return prefixString + questionMarks + suffixString;
             }
         }
 
-        private void cacheAndCompare(String value) {
-            if (checkedSubstringLength > value.length()) {
-                return;
-            }
-
-            WithCommonSubstring candidate = computeAndCache(value);
+        /**
+         * @return number of names following the pattern.
+         */
+        int patternCount() {
+            return mostCommonOrLongest(mostCommonOrLongest(prefixes).suffixes).count;
+        }
 
-            if (candidate.isMoreCommonOrLonger(found)) {
-                found = candidate;
-                longerSubstringPossible = true;
+        /**
+         * @return range of frame numbers of names following the pattern, if these are numbered.
+         */
+        Optional<FrameRange> patternFrames() {
+            String pattern = pattern();
+            Bucket suffix = mostCommonOrLongest(mostCommonOrLongest(prefixes).suffixes);
+            int start = pattern.indexOf('?');
+            int end = pattern.lastIndexOf('?') + 1;
+            if (start < 0 || suffix.first.length() != pattern.length() || suffix.last.length() != pattern.length()) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(new FrameRange(Long.parseLong(suffix.first.substring(start, end)),
+                                                  Long.parseLong(suffix.last.substring(start, end))));
+            } catch (NumberFormatException e) {
+                return Optional.empty();
             }
         }
 
-        private WithCommonSubstring computeAndCache(String value) {
-            String substring = substringSupplier.apply(value, checkedSubstringLength);
-            return cache.computeIfAbsent(substring, WithCommonSubstring::new)
-                    .withElement(value);
+        private static Bucket mostCommonOrLongest(Map<Character, Bucket> buckets) {
+            Bucket found = null;
+            for (Bucket bucket : buckets.values()) {
+                if (found == null || bucket.isMoreCommonOrLonger(found)) {
+                    found = bucket;
+                }
+            }
+            if (found == null) {
+                throw new IllegalStateException("There are no names to calculate pattern of");
+            }
+            return found;
         }
     }
 
     /**
-     * Holder class for a common substring and all elements sharing it.
+     * Names of a single first (or last) character, with the length of their common prefix (or suffix),
+     * and the lowest and highest of them.
      */
-    private static class WithCommonSubstring {
-
-        private final String substring;
-        private final List<String> elements = new ArrayList<>();
-
-        WithCommonSubstring(String substring) {
-            this.substring = substring;
-        }
-
-        int length() {
-            return substring.length();
+    private static class Bucket {
+
+        private final Map<Character, Bucket> suffixes = new HashMap<>();
+        private final boolean fromEnd;
+        private final String reference;
+        private String first;
+        private String last;
+        private int commonLength;
+        private int count;
+        private int lastIndex;
+
+        Bucket(String reference, boolean fromEnd) {
+            this.reference = reference;
+            this.fromEnd = fromEnd;
+            this.first = reference;
+            this.last = reference;
+            this.commonLength = reference.length();
         }
 
-        WithCommonSubstring withElement(String element) {
-            elements.add(element);
-            return this;
+        void add(String name, int index) {
+            int maxLength = Math.min(name.length(), commonLength);
+            int length = 0;
+            while (length < maxLength && charAt(name, length) == charAt(reference, length)) {
+                length++;
+            }
+            commonLength = length;
+            lastIndex = index;
+            count++;
+            if (name.compareTo(first) < 0) {
+                first = name;
+            } else if (name.compareTo(last) > 0) {
+                last = name;
+            }
         }
 
-        boolean isMoreCommonOrLonger(WithCommonSubstring other) {
-            return isMoreCommon(other) || isAsCommonAndLonger(other);
+        String commonSubstring() {
+            return fromEnd
+                    ? reference.substring(reference.length() - commonLength)
+                    : reference.substring(0, commonLength);
         }
 
-        private boolean isMoreCommon(WithCommonSubstring other) {
-            return elements.size() > other.elements.size();
+        boolean isMoreCommonOrLonger(Bucket other) {
+            return count > other.count
+                    || (count == other.count && commonLength > other.commonLength)
+                    || (count == other.count && commonLength == other.commonLength && lastIndex < other.lastIndex);
         }
 
-        private boolean isAsCommonAndLonger(WithCommonSubstring other) {
-            return elements.size() == other.elements.size() && substring.length() > other.substring.length();
+        private char charAt(String value, int position) {
+            return fromEnd ? value.charAt(value.length() - 1 - position) : value.charAt(position);
         }
     }
 }
@@ -0,0 +1,89 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import edu.harvard.iq.dataverse.workflow.execution.WorkflowExecutionStepContext;
+import edu.harvard.iq.dataverse.workflow.step.Failure;
+import edu.harvard.iq.dataverse.workflow.step.FilesystemAccessingWorkflowStep;
+import edu.harvard.iq.dataverse.workflow.step.WorkflowStepParams;
+import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.edu.icm.pl.mxrdr.extension.xds.output.XdsIndexingReport;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static edu.harvard.iq.dataverse.workflow.step.Success.successWith;
+import static pl.edu.icm.pl.mxrdr.extension.xds.output.XdsIndexingReport.INDEXING_OUTPUT_FILE_NAME;
+
+/**
+ * Checks quality of indexing reported in {@value XdsIndexingReport#INDEXING_OUTPUT_FILE_NAME},
+ * so the workflow fails right after IDXREF, instead of integrating images that could not be indexed.
+ */
+public class XdsIndexingCheckingStep extends FilesystemAccessingWorkflowStep {
+
+    private static final Logger log = LoggerFactory.getLogger(XdsIndexingCheckingStep.class);
+
+    public static final String STEP_ID = "xds-check-indexing";
+
+    /**
+     * Input parameter containing minimal fraction of spots that have to be indexed.
+     * Defaults to {@value MIN_INDEXED_FRACTION_PARAM_DEFAULT}, the same as XDS requires.
+     */
+    static final String MIN_INDEXED_FRACTION_PARAM_NAME = "minIndexedFraction";
+
+    static final String MIN_INDEXED_FRACTION_PARAM_DEFAULT = "0.5";
+
+    /**
+     * Output parameter containing fraction of indexed spots.
+     */
+    static final String INDEXED_FRACTION_PARAM_NAME = "indexedFraction";
+
+    private final double minIndexedFraction;
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    public XdsIndexingCheckingStep(WorkflowStepParams inputParams) {
+        super(inputParams);
+        this.minIndexedFraction = Double.parseDouble(
+                inputParams.getOrDefault(MIN_INDEXED_FRACTION_PARAM_NAME, MIN_INDEXED_FRACTION_PARAM_DEFAULT));
+    }
+
+    // -------------------- LOGIC --------------------
+
+    @Override
+    protected WorkflowStepResult.Source runInternal(WorkflowExecutionStepContext context, Path workDir) throws Exception {
+        Path indexingOutput = workDir.resolve(INDEXING_OUTPUT_FILE_NAME);
+        if (!Files.exists(indexingOutput)) {
+            throw new IllegalStateException("Indexing failed: " + INDEXING_OUTPUT_FILE_NAME + " not found");
+        }
+        addFailureArtifacts(INDEXING_OUTPUT_FILE_NAME);
+
+        XdsIndexingReport report = XdsIndexingReport.read(indexingOutput);
+        log.trace("Indexed {} of {} spots, compatible lattices: {}",
+                report.getIndexedSpots(), report.getTotalSpots(), report.getCompatibleLattices());
+        if (!report.getErrors().isEmpty()) {
+            throw new IllegalStateException("Indexing failed: " + String.join("; ", report.getErrors()));
+        }
+        if (report.getIndexedFraction() < minIndexedFraction) {
+            throw new IllegalStateException(String.format("Indexing failed: only %d of %d spots indexed, at least %.0f%% required",
+                    report.getIndexedSpots(), report.getTotalSpots(), minIndexedFraction * 100));
+        }
+        if (report.getCompatibleLattices().isEmpty()) {
+            throw new IllegalStateException("Indexing failed: no lattice compatible with indexed spots");
+        }
+
+        return successWith(data ->
+                data.put(INDEXED_FRACTION_PARAM_NAME, String.valueOf(report.getIndexedFraction()))
+        );
+    }
+
+    @Override
+    public WorkflowStepResult resume(WorkflowExecutionStepContext context, Map<String, String> internalData, String externalData) {
+        throw new UnsupportedOperationException("This step does not pause");
+    }
+
+    @Override
+    public void rollback(WorkflowExecutionStepContext context, Failure reason) {
+    }
+}
@@ -1,6 +1,5 @@
 package pl.edu.icm.pl.mxrdr.extension.workflow.step;
 
-import com.google.common.io.InputSupplier;
 import edu.harvard.iq.dataverse.workflow.execution.WorkflowExecutionStepContext;
 import edu.harvard.iq.dataverse.workflow.step.Failure;
 import edu.harvard.iq.dataverse.workflow.step.FilesystemAccessingWorkflowStep;
@@ -9,22 +8,19 @@ import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputDocument;
 import pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputFileProcessor;
+import pl.edu.icm.pl.mxrdr.extension.xds.output.XdsOutputAnalysis;
+import pl.edu.icm.pl.mxrdr.extension.xds.output.XdsOutputAnalysisCache;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Stream;
 
 import static edu.harvard.iq.dataverse.workflow.step.Success.successWith;
 import static java.util.Collections.singletonList;
 import static pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputFileProcessor.XDS_INPUT_FILE_NAME;
-import static pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputParameterProcessor.replaceAnyValue;
 import static pl.edu.icm.pl.mxrdr.extension.xds.output.XdsOutputFileParser.XDS_OUTPUT_FILE_NAME;
 
 /**
@@ -55,16 +51,33 @@ public class XdsInputAdjustingStep extends FilesystemAccessingWorkflowStep {
      * Default value is <code>false</code>.
      */
     static final String ADJUST_RESOLUTION_PARAM_NAME = "adjustResolution";
+    /**
+     * Input parameter containing number of kept copies of XDS input file from before its changes,
+     * shared with other steps changing the file, so the oldest ones are removed.
+     * Default value is {@value INPUT_BACKUPS_PARAM_DEFAULT}.
+     */
+    static final String INPUT_BACKUPS_PARAM_NAME = "inputBackups";
+
+    static final String INPUT_BACKUPS_PARAM_DEFAULT = "1";
 
     private final List<String> jobs;
     private final boolean adjustResolution;
+    private final int inputBackups;
+
+    private final XdsOutputAnalysisCache outputAnalyses;
 
     // -------------------- CONSTRUCTORS --------------------
 
     public XdsInputAdjustingStep(WorkflowStepParams inputParams) {
+        this(inputParams, new XdsOutputAnalysisCache());
+    }
+
+    public XdsInputAdjustingStep(WorkflowStepParams inputParams, XdsOutputAnalysisCache outputAnalyses) {
         super(inputParams);
+        this.outputAnalyses = outputAnalyses;
         jobs = inputParams.getListOrDefault(JOBS_PARAM_NAME, ";", singletonList("CORRECT"));
         adjustResolution = inputParams.getBoolean(ADJUST_RESOLUTION_PARAM_NAME);
+        inputBackups = Integer.parseInt(inputParams.getOrDefault(INPUT_BACKUPS_PARAM_NAME, INPUT_BACKUPS_PARAM_DEFAULT));
     }
 
     // -------------------- LOGIC --------------------
@@ -74,14 +87,11 @@ public class XdsInputAdjustingStep extends FilesystemAccessingWorkflowStep {
         log.trace("Adjusting {} with JOB={}", XDS_INPUT_FILE_NAME, jobsValue());
         addFailureArtifacts(XDS_INPUT_FILE_NAME);
         
-        ResolutionParameterExtractor resolutionParameterExtractor = new ResolutionParameterExtractor(workDir);
+        ResolutionParameterExtractor resolutionParameterExtractor = new ResolutionParameterExtractor(workDir, outputAnalyses);
         
         new XdsInputFileProcessor(workDir)
-                .with(replaceAnyValue("JOB", this::jobsValue)
-                        .matchingWholeLine())
-                .with(replaceAnyValue("INCLUDE_RESOLUTION_RANGE", includeResolutionRangeValue(resolutionParameterExtractor))
-                        .matchingWholeLine()
-                        .processWhen(adjustResolution && resolutionParameterExtractor.hasValidParameter()))
+                .withDocumentProcessor(document -> adjust(document, resolutionParameterExtractor))
+                .withBackups(inputBackups)
                 .process();
         
         return successWith(data ->
@@ -103,84 +113,49 @@ public class XdsInputAdjustingStep extends FilesystemAccessingWorkflowStep {
         return String.join(" ", jobs);
     }
 
-    private InputSupplier<String> includeResolutionRangeValue(ResolutionParameterExtractor extractor) {
-        return () -> "50 " + extractor.extract();
+    private void adjust(XdsInputDocument document, ResolutionParameterExtractor extractor) throws IOException {
+        document.replaceValue("JOB", jobsValue());
+        if (adjustResolution && extractor.hasValidParameter()) {
+            document.replaceValue("INCLUDE_RESOLUTION_RANGE", includeResolutionRangeValue(extractor));
+        }
+    }
+
+    private String includeResolutionRangeValue(ResolutionParameterExtractor extractor) throws IOException {
+        return "50 " + extractor.extract();
     }
 
     // -------------------- INNER CLASSES --------------------
 
+    /**
+     * Reads the resolution cut-off from analysis of {@value XDS_OUTPUT_FILE_NAME}
+     * in the working directory, see {@link XdsOutputAnalysis#getResolutionCutOff()}.
+     */
     static class ResolutionParameterExtractor {
 
-        public static final String NUMBER_REGEX = "[0-9.\\-+Ee]+";
-        public static final String NON_NUMERIC_CHARACTERS_REGEX = "[^0-9.\\-+Ee]";
-
         private final Path workDir;
-
-        private String extractedResolution;
+        private final XdsOutputAnalysisCache outputAnalyses;
 
         // -------------------- CONSTRUCTORS --------------------
 
         public ResolutionParameterExtractor(Path workDir) {
+            this(workDir, new XdsOutputAnalysisCache());
+        }
+
+        public ResolutionParameterExtractor(Path workDir, XdsOutputAnalysisCache outputAnalyses) {
             this.workDir = workDir;
+            this.outputAnalyses = outputAnalyses;
         }
 
         // -------------------- LOGIC --------------------
 
         public String extract() throws IOException {
-            if (extractedResolution != null) {
-                return extractedResolution;
-            }
-            File correctionFile = workDir.resolve(XDS_OUTPUT_FILE_NAME).toFile();
-            try (BufferedReader reader = new BufferedReader(new FileReader(correctionFile))) {
-                extractedResolution = extractResolutionParameter(reader.lines());
-                return extractedResolution;
-            }
+            return outputAnalyses.analysisOf(workDir.resolve(XDS_OUTPUT_FILE_NAME))
+                    .getResolutionCutOff();
         }
 
         public boolean hasValidParameter() throws IOException {
             String extractedResolution = extract();
             return StringUtils.isNotEmpty(extractedResolution);
         }
-
-        // -------------------- PRIVATE --------------------
-
-        /**
-         * Realizes line:
-         * {@code awk '{ if ($1>=0.3 && $1<=5 && $9>=1.2 && $9<=100 && $11>=50 && $5~"%" && $6~"%" && $7~"%") { print $1 } }' CORRECT.LP | tail -n 1}
-         * from the script.
-         */
-        private String extractResolutionParameter(Stream<String> lines) {
-            return lines.map(String::trim)
-                    .map(s -> s.split("\\s+"))
-                    .filter(ResolutionParameterExtractor::recognizeRowWithResolution)
-                    .map(ResolutionParameterExtractor::removeUnusedColumnsAndMapToDoubleArray)
-                    .filter(d -> isBetween(d[0], 0.3, 5.0) && isBetween(d[1], 1.2, 100.0) && d[2] >= 50.0)
-                    .map(d -> d[0])
-                    .map(Object::toString)
-                    .reduce((result, element) -> element)
-                    .orElse(StringUtils.EMPTY);
-        }
-
-        private static boolean recognizeRowWithResolution(String[] a) {
-            return a.length >= 14
-                    && a[0].matches(NUMBER_REGEX)
-                    && containPercentSign(a[4], a[5], a[6]);
-        }
-
-        public static boolean containPercentSign(String... strings) {
-            return Arrays.stream(strings)
-                    .allMatch(e -> e.contains("%"));
-        }
-
-        private static Double[] removeUnusedColumnsAndMapToDoubleArray(String[] a) {
-            return Stream.of(a[0], a[8], a[10])
-                    .map(e -> e.replaceAll(NON_NUMERIC_CHARACTERS_REGEX, StringUtils.EMPTY))
-                    .map(Double::valueOf)
-                    .toArray(Double[]::new);
-        }
-
-        private boolean isBetween(double checked, double lowerBound, double upperBound) {
-            return checked >= lowerBound && checked <= upperBound;
-        }
     }
 }
@@ -1,6 +1,5 @@
 package pl.edu.icm.pl.mxrdr.extension.workflow.step;
 
-import com.google.common.io.InputSupplier;
 import edu.harvard.iq.dataverse.dataset.datasetversion.DatasetVersionServiceBean;
 import edu.harvard.iq.dataverse.persistence.dataset.DatasetField;
 import edu.harvard.iq.dataverse.persistence.dataset.DatasetVersion;
@@ -12,29 +11,30 @@ import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.edu.icm.pl.mxrdr.extension.importer.MxrdrMetadataField;
-import pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputConditionalProcessor;
+import pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputDocument;
 import pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputFileProcessor;
-import pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputLineProcessor;
 
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.function.Function;
+import java.util.Optional;
 
 import static edu.harvard.iq.dataverse.workflow.step.Success.successWith;
 import static java.util.Objects.nonNull;
-import static java.util.stream.Collectors.toList;
+import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsInputAdjustingStep.INPUT_BACKUPS_PARAM_DEFAULT;
+import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsInputAdjustingStep.INPUT_BACKUPS_PARAM_NAME;
 import static pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputFileProcessor.XDS_INPUT_FILE_NAME;
-import static pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputParameterProcessor.replaceUndefinedValue;
 
 /**
  * This step checks whether some values in XDS.INP were not set (these are: DETECTOR_DISTANCE,
  * OSCILLATION_RANGE, STARTING_ANGLE, X-RAY_WAVELENGTH, ORGX, ORGY – in case there are not set
  * their values are XXX or 0 (single zero, without dot)) and tries to supply their values
- * from dataset metadata.
+ * from dataset metadata. Optionally sets number of processors and jobs of XDS planned
+ * by {@link XdsParallelismPlanner}.
  */
 public class XdsMissingInputFillingStep extends FilesystemAccessingWorkflowStep {
 
@@ -42,52 +42,75 @@ public class XdsMissingInputFillingStep extends FilesystemAccessingWorkflowStep
 
     public static final String STEP_ID = "xds-fill-missing-input";
 
-    private static final Map<String, XdsInputLineProcessorFactory> FACTORIES = new HashMap<String, XdsInputLineProcessorFactory>() {{
-        put(MxrdrMetadataField.DATA_COLLECTION_DETECTOR_DISTANCE.getValue(), value ->
-                replaceUndefinedValue("DETECTOR_DISTANCE", value));
-        put(MxrdrMetadataField.DATA_COLLECTION_OSCILLATION_STEP_SIZE.getValue(), value ->
-                replaceUndefinedValue("OSCILLATION_RANGE", value));
-        put(MxrdrMetadataField.DATA_COLLECTION_STARTING_ANGLE.getValue(), value ->
-                replaceUndefinedValue("STARTING_ANGLE", value));
-        put(MxrdrMetadataField.DATA_COLLECTION_WAVELENGTH.getValue(), value ->
-                replaceUndefinedValue("X-RAY_WAVELENGTH", value));
-        put(MxrdrMetadataField.DATA_COLLECTION_ORG_X.getValue(), value ->
-                replaceUndefinedValue("ORGX", value));
-        put(MxrdrMetadataField.DATA_COLLECTION_ORG_Y.getValue(), value ->
-                replaceUndefinedValue("ORGY", value));
+    private static final Map<String, String> XDS_KEYWORDS = new HashMap<String, String>() {{
+        put(MxrdrMetadataField.DATA_COLLECTION_DETECTOR_DISTANCE.getValue(), "DETECTOR_DISTANCE");
+        put(MxrdrMetadataField.DATA_COLLECTION_OSCILLATION_STEP_SIZE.getValue(), "OSCILLATION_RANGE");
+        put(MxrdrMetadataField.DATA_COLLECTION_STARTING_ANGLE.getValue(), "STARTING_ANGLE");
+        put(MxrdrMetadataField.DATA_COLLECTION_WAVELENGTH.getValue(), "X-RAY_WAVELENGTH");
+        put(MxrdrMetadataField.DATA_COLLECTION_ORG_X.getValue(), "ORGX");
+        put(MxrdrMetadataField.DATA_COLLECTION_ORG_Y.getValue(), "ORGY");
     }};
 
     static final String XDS_INPUT_ADDITIONAL_PARAMS_PARAM_NAME = "xds_additional_params";
+    /**
+     * Boolean input parameter deciding if {@value XdsParallelismPlanner#PROCESSORS_KEYWORD} and
+     * {@value XdsParallelismPlanner#JOBS_KEYWORD} should be planned for this node, unless given
+     * in {@value XDS_INPUT_ADDITIONAL_PARAMS_PARAM_NAME}. Default value is <code>false</code>.
+     */
+    static final String PLAN_PARALLELISM_PARAM_NAME = "planParallelism";
 
     private final DatasetVersionServiceBean versionsService;
 
+    private final XdsParallelismPlanner parallelismPlanner;
+
     private Map<String, String> xdsAdditionalParams;
 
+    private final int inputBackups;
+
+    private final boolean planParallelism;
+
     public XdsMissingInputFillingStep(WorkflowStepParams inputParams, DatasetVersionServiceBean versionsService) {
+        this(inputParams, versionsService, new XdsParallelismPlanner());
+    }
+
+    public XdsMissingInputFillingStep(WorkflowStepParams inputParams, DatasetVersionServiceBean versionsService,
+                                      XdsParallelismPlanner parallelismPlanner) {
         super(inputParams);
         this.versionsService = versionsService;
+        this.parallelismPlanner = parallelismPlanner;
 
         List<String> paramsKeyValueList = inputParams.getList(XDS_INPUT_ADDITIONAL_PARAMS_PARAM_NAME, ";");
-        xdsAdditionalParams = new HashMap<>();
+        xdsAdditionalParams = new LinkedHashMap<>();
         for (String paramKeyValue: paramsKeyValueList) {
             xdsAdditionalParams.put(paramKeyValue.split("\\|")[0], paramKeyValue.split("\\|")[1]);
         }
+        inputBackups = Integer.parseInt(inputParams.getOrDefault(INPUT_BACKUPS_PARAM_NAME, INPUT_BACKUPS_PARAM_DEFAULT));
+        planParallelism = inputParams.getBoolean(PLAN_PARALLELISM_PARAM_NAME);
     }
 
     @Override
     protected WorkflowStepResult.Source runInternal(WorkflowExecutionStepContext context, Path workDir) throws Exception {
         addFailureArtifacts(XDS_INPUT_FILE_NAME);
-        List<XdsInputLineProcessor> processors = prepareProcessors(context);
-        log.trace("Potentially adjusting values for {} XDS input parameters", processors.size());
+        Map<String, String> values = prepareValues(context);
+        log.trace("Potentially adjusting values for {} XDS input parameters", values.size());
         XdsInputFileProcessor fileProcessor = new XdsInputFileProcessor(workDir)
-                .withAll(processors);
+                .withDocumentProcessor(document -> values.forEach(document::fillUndefinedValue));
+        if (planParallelism) {
+            Optional<Long> datasetVersionId = versionsService.withDatasetVersion(context, DatasetVersion::getId);
+            if (datasetVersionId.isPresent()) {
+                fileProcessor.withDocumentProcessor(document -> planParallelism(document, datasetVersionId.get()));
+            } else {
+                log.warn("Dataset version of the analysis not found, parallelism of XDS not planned");
+            }
+        }
 
         for (Entry<String, String> paramKeyValue: xdsAdditionalParams.entrySet()) {
             log.trace("Adding param {} to XDS input parameters", paramKeyValue.getKey());
             fileProcessor.withNewParam(paramKeyValue.getKey(), paramKeyValue.getValue());
         }
 
-        fileProcessor.process();
+        fileProcessor.withBackups(inputBackups)
+                .process();
 
         return successWith(data ->
                 data.put(FAILURE_ARTIFACTS_PARAM_NAME, XDS_INPUT_FILE_NAME)
@@ -104,31 +127,36 @@ public class XdsMissingInputFillingStep extends FilesystemAccessingWorkflowStep
 
     // -------------------- PRIVATE --------------------
 
-    private List<XdsInputLineProcessor> prepareProcessors(WorkflowExecutionStepContext context) {
+    private void planParallelism(XdsInputDocument document, long datasetVersionId) {
+        parallelismPlanner.plan(datasetVersionId, document).forEach((keyword, value) -> {
+            if (!xdsAdditionalParams.containsKey(keyword)) {
+                log.trace("Setting planned {}={}", keyword, value);
+                document.setValue(keyword, value);
+            }
+        });
+    }
+
+    private Map<String, String> prepareValues(WorkflowExecutionStepContext context) {
         return versionsService
-                .withDatasetVersion(context,this::prepareProcessors)
-                .orElseGet(Collections::emptyList);
+                .withDatasetVersion(context, this::prepareValues)
+                .orElseGet(Collections::emptyMap);
     }
 
-    private List<XdsInputLineProcessor> prepareProcessors(DatasetVersion datasetVersion) {
-        return datasetVersion
+    /**
+     * @return values of XDS input parameters by their keywords, taken from dataset metadata.
+     */
+    private Map<String, String> prepareValues(DatasetVersion datasetVersion) {
+        Map<String, String> values = new LinkedHashMap<>();
+        datasetVersion
                 .getDatasetFieldByTypeName(MxrdrMetadataField.DATA_COLLECTION.getValue())
                 .map(DatasetField::getDatasetFieldsChildren)
-                .orElseGet(Collections::emptyList).stream()
-                .map(this::getProcessor)
-                .collect(toList());
-    }
-
-    private XdsInputLineProcessor getProcessor(DatasetField field) {
-        final String fieldName = field.getDatasetFieldType().getName();
-        final String fieldValue = field.getValue();
-        return new XdsInputConditionalProcessor(
-                () -> FACTORIES.containsKey(fieldName) && nonNull(fieldValue),
-                () -> FACTORIES.get(fieldName).apply(() -> fieldValue)
-        );
+                .orElseGet(Collections::emptyList)
+                .forEach(field -> {
+                    String keyword = XDS_KEYWORDS.get(field.getDatasetFieldType().getName());
+                    if (keyword != null && nonNull(field.getValue())) {
+                        values.put(keyword, field.getValue());
+                    }
+                });
+        return values;
     }
-
-    // -------------------- INNER CLASSES --------------------
-
-    private interface XdsInputLineProcessorFactory extends Function<InputSupplier<String>, XdsInputLineProcessor> { }
 }
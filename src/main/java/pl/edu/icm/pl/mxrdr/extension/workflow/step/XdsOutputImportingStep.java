@@ -15,9 +15,9 @@ import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import pl.edu.icm.pl.mxrdr.extension.xds.output.XdsOutputFileParser;
+import pl.edu.icm.pl.mxrdr.extension.xds.output.XdsOutputAnalysisCache;
 
-import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
@@ -44,14 +44,24 @@ public class XdsOutputImportingStep extends FilesystemAccessingWorkflowStep {
 
     private final DatasetFieldTypeRepository fieldTypes;
 
+    private final XdsOutputAnalysisCache outputAnalyses;
+
     // -------------------- CONSTRUCTORS --------------------
 
     public XdsOutputImportingStep(WorkflowStepParams inputParams,
                                   DatasetVersionServiceBean versionsService,
                                   DatasetFieldTypeRepository fieldTypes) {
+        this(inputParams, versionsService, fieldTypes, new XdsOutputAnalysisCache());
+    }
+
+    public XdsOutputImportingStep(WorkflowStepParams inputParams,
+                                  DatasetVersionServiceBean versionsService,
+                                  DatasetFieldTypeRepository fieldTypes,
+                                  XdsOutputAnalysisCache outputAnalyses) {
         super(inputParams);
         this.versionsService = versionsService;
         this.fieldTypes = fieldTypes;
+        this.outputAnalyses = outputAnalyses;
     }
 
     // -------------------- LOGIC --------------------
@@ -96,9 +106,12 @@ public class XdsOutputImportingStep extends FilesystemAccessingWorkflowStep {
     }
 
     private Stream<ResultField> parseXdsOutputFrom(Path workDir) {
-        File dataFile = workDir.resolve(XDS_OUTPUT_FILE_NAME).toFile();
-        return new XdsOutputFileParser(dataFile)
-                .asResultFields().stream();
+        try {
+            return outputAnalyses.analysisOf(workDir.resolve(XDS_OUTPUT_FILE_NAME))
+                    .getResultFields().stream();
+        } catch (IOException e) {
+            throw new IllegalStateException("There was a problem with reading XDS output", e);
+        }
     }
 
     private Stream<DatasetField> asDatasetFields(DatasetVersion datasetVersion, ResultField resultField) {
@@ -0,0 +1,158 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Local cache of files produced by runs of XDS, shared by all runs of the workflow, so XDS stages
+ * having exactly the same input as before are not run again. Outputs of each run are addressed by
+ * the digest of its input (see {@link XdsRunningStep}) and stored as <code>&lt;root&gt;/&lt;digest&gt;/</code>
+ * directory. Directories are complete once they are in place, as they are moved there at once.
+ * Once the total size of cached files exceeds the limit, least recently used runs are evicted.
+ * Runs may be stored, restored and evicted concurrently by different workflows.
+ */
+class XdsOutputsCache {
+
+    private static final Logger log = LoggerFactory.getLogger(XdsOutputsCache.class);
+
+    private static final String TEMP_DIR_NAME = "tmp";
+
+    private final Path root;
+    private final long maxSize;
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    XdsOutputsCache(Path root, long maxSize) {
+        this.root = root;
+        this.maxSize = maxSize;
+    }
+
+    // -------------------- LOGIC --------------------
+
+    /**
+     * Copies outputs of the run of given digest into given directory, replacing existing files.
+     * @return names of restored files, or empty if the run is not cached, or was evicted while restored.
+     */
+    Optional<List<String>> restore(String digest, Path targetDir) throws IOException {
+        Path cachedRun = root.resolve(digest);
+        if (!Files.isDirectory(cachedRun)) {
+            return Optional.empty();
+        }
+        try {
+            Files.setLastModifiedTime(cachedRun, FileTime.fromMillis(System.currentTimeMillis()));
+            List<String> restored = new ArrayList<>();
+            for (Path cachedFile : list(cachedRun)) {
+                String name = cachedFile.getFileName().toString();
+                Files.copy(cachedFile, targetDir.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+                restored.add(name);
+            }
+            return Optional.of(restored);
+        } catch (NoSuchFileException e) {
+            log.trace("Outputs of run {} were evicted while restored", digest);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores copies of given files of given directory as outputs of the run of given digest.
+     */
+    void store(String digest, Path sourceDir, Collection<String> names) throws IOException {
+        Path cachedRun = root.resolve(digest);
+        if (Files.exists(cachedRun)) {
+            return;
+        }
+        Path tempDir = Files.createTempDirectory(Files.createDirectories(root.resolve(TEMP_DIR_NAME)), digest);
+        try {
+            for (String name : names) {
+                Files.copy(sourceDir.resolve(name), tempDir.resolve(name));
+            }
+            Files.move(tempDir, cachedRun, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileSystemException e) {
+            if (!Files.isDirectory(cachedRun)) {
+                throw e;
+            }
+            log.trace("Outputs of run {} were cached concurrently", digest);
+        } finally {
+            if (Files.exists(tempDir)) {
+                delete(tempDir);
+            }
+        }
+    }
+
+    /**
+     * Removes least recently used runs, until total size of cached files fits in the limit.
+     */
+    void evict() throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        List<Path> cachedRuns = list(root).stream()
+                .filter(path -> !path.getFileName().toString().equals(TEMP_DIR_NAME))
+                .filter(Files::isDirectory)
+                .sorted(Comparator.comparing(XdsOutputsCache::lastModifiedTime))
+                .collect(toList());
+        long size = 0;
+        List<Long> sizes = new ArrayList<>();
+        for (Path cachedRun : cachedRuns) {
+            long runSize = 0;
+            try {
+                for (Path cachedFile : list(cachedRun)) {
+                    runSize += Files.size(cachedFile);
+                }
+            } catch (NoSuchFileException e) {
+                log.trace("Run {} was evicted concurrently", cachedRun);
+            }
+            sizes.add(runSize);
+            size += runSize;
+        }
+        for (int i = 0; i < cachedRuns.size() && size > maxSize; i++) {
+            log.trace("Evicting {} from XDS outputs cache", cachedRuns.get(i));
+            delete(cachedRuns.get(i));
+            size -= sizes.get(i);
+        }
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private static List<Path> list(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.list(dir)) {
+            return paths.collect(toList());
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try {
+            for (Path file : list(dir)) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(dir);
+        } catch (NoSuchFileException e) {
+            log.trace("{} was deleted concurrently", dir);
+        }
+    }
+
+    private static FileTime lastModifiedTime(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            log.warn("Unable to read modification time of cached run: " + path, e);
+            return FileTime.fromMillis(0);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import pl.edu.icm.pl.mxrdr.extension.workflow.XdsAnalysisScheduler;
+import pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputDocument;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+
+/**
+ * Plans how many processors XDS analysis of given dataset version may use, sharing processors
+ * available on the node equally between analyses that may run at the same time, that is
+ * the capacity of {@link XdsAnalysisScheduler}, or more if more analyses are actually running.
+ * <p>
+ * The share is split into {@value JOBS_KEYWORD} independent jobs of at most given number
+ * of {@value PROCESSORS_KEYWORD} threads each, as threads of a single job scale worse than jobs.
+ * Jobs work on separate batches of {@value DELPHI_KEYWORD} degrees of rotation, so there are
+ * never more jobs than batches of the data set.
+ * <p>
+ * Analyses are counted from the moment their run is planned until they are released,
+ * when their workflow finishes.
+ */
+@ApplicationScoped
+public class XdsParallelismPlanner {
+
+    public static final String PROCESSORS_KEYWORD = "MAXIMUM_NUMBER_OF_PROCESSORS";
+    public static final String JOBS_KEYWORD = "MAXIMUM_NUMBER_OF_JOBS";
+
+    static final String DELPHI_KEYWORD = "DELPHI";
+
+    /**
+     * Default of {@value DELPHI_KEYWORD} used by XDS, in degrees.
+     */
+    static final double DELPHI_DEFAULT = 5.0;
+
+    public static final int DEFAULT_MAX_PROCESSORS_PER_JOB = 16;
+
+    private final IntSupplier availableProcessors;
+    private final int maxProcessorsPerJob;
+    private final IntSupplier analysisSlots;
+
+    private final Set<Long> runningAnalyses = ConcurrentHashMap.newKeySet();
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    public XdsParallelismPlanner() {
+        this(Runtime.getRuntime()::availableProcessors, DEFAULT_MAX_PROCESSORS_PER_JOB);
+    }
+
+    @Inject
+    public XdsParallelismPlanner(XdsAnalysisScheduler analysisScheduler) {
+        this(Runtime.getRuntime()::availableProcessors, DEFAULT_MAX_PROCESSORS_PER_JOB, analysisScheduler::capacity);
+    }
+
+    public XdsParallelismPlanner(IntSupplier availableProcessors, int maxProcessorsPerJob) {
+        this(availableProcessors, maxProcessorsPerJob, () -> 1);
+    }
+
+    /**
+     * @param analysisSlots number of analyses that may run at the same time.
+     */
+    public XdsParallelismPlanner(IntSupplier availableProcessors, int maxProcessorsPerJob, IntSupplier analysisSlots) {
+        this.availableProcessors = availableProcessors;
+        this.maxProcessorsPerJob = maxProcessorsPerJob;
+        this.analysisSlots = analysisSlots;
+    }
+
+    // -------------------- LOGIC --------------------
+
+    /**
+     * Counts analysis of given dataset version as running and plans its XDS run
+     * for the data set described by given XDS input.
+     * @return values of XDS input parameters by their keywords.
+     */
+    public Map<String, String> plan(long datasetVersionId, XdsInputDocument document) {
+        runningAnalyses.add(datasetVersionId);
+        int sharing = Math.max(analysisSlots.getAsInt(), runningAnalyses.size());
+        int share = Math.max(1, availableProcessors.getAsInt() / Math.max(1, sharing));
+        int jobs = Math.min((share + maxProcessorsPerJob - 1) / maxProcessorsPerJob, batches(document));
+        int processors = share / jobs;
+
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put(PROCESSORS_KEYWORD, String.valueOf(processors));
+        values.put(JOBS_KEYWORD, String.valueOf(jobs));
+        return values;
+    }
+
+    /**
+     * Stops counting analysis of given dataset version as running.
+     */
+    public void release(long datasetVersionId) {
+        runningAnalyses.remove(datasetVersionId);
+    }
+
+    public int runningAnalyses() {
+        return runningAnalyses.size();
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    /**
+     * @return number of batches the data set is integrated in, or {@link Integer#MAX_VALUE}
+     * if data range or oscillation range is not known yet.
+     */
+    private int batches(XdsInputDocument document) {
+        List<Double> dataRange = document.getNumbers("DATA_RANGE");
+        double oscillationRange = document.getNumber("OSCILLATION_RANGE").orElse(0.0);
+        if (dataRange.size() != 2 || oscillationRange <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        double rotation = (dataRange.get(1) - dataRange.get(0) + 1) * oscillationRange;
+        double delphi = document.getNumber(DELPHI_KEYWORD)
+                .filter(value -> value > 0)
+                .orElse(DELPHI_DEFAULT);
+        return Math.max(1, (int) Math.ceil(rotation / delphi - 1e-9));
+    }
+}
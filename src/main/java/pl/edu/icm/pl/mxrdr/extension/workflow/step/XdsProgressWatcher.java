@@ -0,0 +1,213 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.edu.icm.pl.mxrdr.extension.workflow.XdsProgress;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Follows outputs of XDS stages processing images (COLSPOT.LP and INTEGRATE.LP) while XDS runs, reporting
+ * {@link XdsProgress} whenever a batch of images is done. Each change of an output is read from where
+ * the previous read stopped, so output files are read only once however long they grow.
+ * <p>
+ * XDS prints the header of a batch when it starts processing it, so a batch is done when the next one
+ * starts, and the last one when the stage writes its result (SPOT.XDS or INTEGRATE.HKL) or XDS exits.
+ * Batches processed by separate jobs (when MAXIMUM_NUMBER_OF_JOBS is greater than 1) reach the output
+ * only when the jobs are merged, so there is no progress to report before.
+ */
+class XdsProgressWatcher implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(XdsProgressWatcher.class);
+
+    static final String[] STAGES = { "COLSPOT", "INTEGRATE" };
+
+    /**
+     * Files written by each of {@link #STAGES} once it's done.
+     */
+    private static final String[] STAGE_RESULT_FILES = { "SPOT.XDS", "INTEGRATE.HKL" };
+
+    private static final String OUTPUT_FILE_SUFFIX = ".LP";
+    private static final Charset OUTPUT_FILE_CHARSET = Charset.forName("windows-1252");
+
+    /**
+     * Line starting output of each batch of images, e.g. <code>PROCESSING OF IMAGES       11 ...      20</code>.
+     */
+    private static final Pattern PROCESSED_BATCH = Pattern.compile("PROCESSING OF IMAGES\\s+(\\d+)\\s*\\.\\.\\.\\s*(\\d+)");
+
+    private final WatchService watchService;
+    private final Map<String, OutputTail> tails = new LinkedHashMap<>();
+    private final Map<String, OutputTail> stageResults = new LinkedHashMap<>();
+    private final Clock clock;
+    private final Consumer<XdsProgress> listener;
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    /**
+     * @param totalImages number of images to process by each stage, by stage names.
+     */
+    XdsProgressWatcher(Path workDir, Map<String, Integer> totalImages, Clock clock,
+                       Consumer<XdsProgress> listener) throws IOException {
+        this.watchService = workDir.getFileSystem().newWatchService();
+        this.clock = clock;
+        this.listener = listener;
+        for (int i = 0; i < STAGES.length; i++) {
+            String fileName = STAGES[i] + OUTPUT_FILE_SUFFIX;
+            OutputTail tail = new OutputTail(workDir.resolve(fileName), STAGES[i], totalImages.getOrDefault(STAGES[i], 0));
+            tails.put(fileName, tail);
+            stageResults.put(STAGE_RESULT_FILES[i], tail);
+        }
+        workDir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+    }
+
+    // -------------------- LOGIC --------------------
+
+    /**
+     * Waits up to given time for changes of followed outputs and reads them, if there are any.
+     */
+    void awaitChanges(long timeout, TimeUnit unit) throws InterruptedException {
+        WatchKey key = watchService.poll(timeout, unit);
+        if (key == null) {
+            return;
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                tails.values().forEach(OutputTail::read);
+            } else {
+                String fileName = event.context().toString();
+                if (tails.containsKey(fileName)) {
+                    tails.get(fileName).read();
+                } else if (stageResults.containsKey(fileName)) {
+                    stageResults.get(fileName).finish();
+                }
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * Reads what is left of followed outputs and counts their last batches as done.
+     * Should be called once XDS exits.
+     */
+    void finish() {
+        tails.values().forEach(OutputTail::finish);
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    // -------------------- INNER CLASSES --------------------
+
+    private class OutputTail {
+
+        private final Path file;
+        private final String stage;
+        private final int totalImages;
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private final StringBuilder partialLine = new StringBuilder();
+        private long offset = 0;
+        private long startMillis = -1;
+        private int processedImages = 0;
+        private int startedBatchImages = 0;
+
+        OutputTail(Path file, String stage, int totalImages) {
+            this.file = file;
+            this.stage = stage;
+            this.totalImages = totalImages;
+        }
+
+        void read() {
+            if (!Files.exists(file)) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() < offset) {
+                    log.trace("{} was rewritten, following it from the start", file);
+                    offset = 0;
+                    partialLine.setLength(0);
+                    startMillis = -1;
+                    processedImages = 0;
+                    startedBatchImages = 0;
+                }
+                if (startMillis < 0) {
+                    startMillis = clock.millis();
+                }
+                channel.position(offset);
+                while (channel.read(buffer) > 0) {
+                    buffer.flip();
+                    accept(OUTPUT_FILE_CHARSET.decode(buffer));
+                    buffer.clear();
+                }
+                offset = channel.position();
+            } catch (IOException e) {
+                log.warn("Unable to follow progress in " + file, e);
+            }
+        }
+
+        /**
+         * Reads what is left of the output and counts the batch started last as done.
+         */
+        void finish() {
+            read();
+            countStartedBatch();
+        }
+
+        private void accept(CharSequence chars) {
+            for (int i = 0; i < chars.length(); i++) {
+                char c = chars.charAt(i);
+                if (c == '\n') {
+                    acceptLine(partialLine);
+                    partialLine.setLength(0);
+                } else {
+                    partialLine.append(c);
+                }
+            }
+        }
+
+        private void acceptLine(CharSequence line) {
+            Matcher matcher = PROCESSED_BATCH.matcher(line);
+            if (!matcher.find()) {
+                return;
+            }
+            countStartedBatch();
+            startedBatchImages = Integer.parseInt(matcher.group(2)) - Integer.parseInt(matcher.group(1)) + 1;
+        }
+
+        private void countStartedBatch() {
+            if (startedBatchImages <= 0) {
+                return;
+            }
+            processedImages += startedBatchImages;
+            startedBatchImages = 0;
+            long elapsedMillis = clock.millis() - startMillis;
+            long remainingMillis = totalImages > processedImages && processedImages > 0
+                    ? elapsedMillis * (totalImages - processedImages) / processedImages
+                    : 0;
+            listener.accept(new XdsProgress(stage, processedImages, totalImages, TimeUnit.MILLISECONDS.toMinutes(remainingMillis)));
+        }
+    }
+}
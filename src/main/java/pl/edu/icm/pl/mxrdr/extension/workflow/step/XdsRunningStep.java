@@ -0,0 +1,460 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import edu.harvard.iq.dataverse.dataset.datasetversion.DatasetVersionServiceBean;
+import edu.harvard.iq.dataverse.persistence.dataset.DatasetVersion;
+import edu.harvard.iq.dataverse.workflow.execution.WorkflowExecutionStepContext;
+import edu.harvard.iq.dataverse.workflow.step.Failure;
+import edu.harvard.iq.dataverse.workflow.step.FilesystemAccessingWorkflowStep;
+import edu.harvard.iq.dataverse.workflow.step.WorkflowStepParams;
+import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.edu.icm.pl.mxrdr.extension.workflow.XdsProgress;
+import pl.edu.icm.pl.mxrdr.extension.workflow.XdsProgressTracker;
+import pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputDocument;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static edu.harvard.iq.dataverse.workflow.step.Success.successWith;
+import static java.util.stream.Collectors.toList;
+import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsParallelismPlanner.JOBS_KEYWORD;
+import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsParallelismPlanner.PROCESSORS_KEYWORD;
+import static pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputFileProcessor.XDS_INPUT_FILE_CHARSET;
+import static pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputFileProcessor.XDS_INPUT_FILE_NAME;
+
+/**
+ * Runs XDS (or other command reading XDS.INP) in the working directory. With {@link XdsOutputsCache}
+ * enabled, the run is skipped if it had exactly the same input before, and its outputs are restored
+ * from the cache instead. The input is identified by digest of the command, its executable (path,
+ * size and modification time, so upgrades of XDS are noticed), {@link ImagesManifest}, XDS.INP
+ * (including JOB, but not parallelism, that does not change results) and other files of the working directory. Outputs of preceding runs, which are most of them and can be large, are
+ * not read for that: each of them is identified by digest of the run that produced it, as recorded
+ * in {@value OUTPUTS_RECORD_FILE_NAME}, unless it was changed since.
+ * While the command runs, progress of processing images is followed by {@link XdsProgressWatcher}
+ * and published in {@link XdsProgressTracker}.
+ */
+public class XdsRunningStep extends FilesystemAccessingWorkflowStep {
+
+    private static final Logger log = LoggerFactory.getLogger(XdsRunningStep.class);
+
+    public static final String STEP_ID = "xds-run";
+
+    /**
+     * Input parameter containing the command to run. Defaults to {@value COMMAND_PARAM_DEFAULT}.
+     */
+    static final String COMMAND_PARAM_NAME = "command";
+
+    static final String COMMAND_PARAM_DEFAULT = "xds_par";
+
+    /**
+     * Input parameter containing maximal total size (in megabytes) of {@link XdsOutputsCache}, shared by all runs.
+     * Defaults to {@value OUTPUTS_CACHE_SIZE_PARAM_DEFAULT}, that is outputs are not cached.
+     */
+    static final String OUTPUTS_CACHE_SIZE_PARAM_NAME = "outputsCacheSize";
+
+    static final String OUTPUTS_CACHE_SIZE_PARAM_DEFAULT = "0";
+
+    /**
+     * Input parameter containing the directory of {@link XdsOutputsCache}.
+     * Defaults to {@value OUTPUTS_CACHE_DIR_PARAM_DEFAULT} directory within base working directory.
+     */
+    static final String OUTPUTS_CACHE_DIR_PARAM_NAME = "outputsCacheDir";
+
+    static final String OUTPUTS_CACHE_DIR_PARAM_DEFAULT = "xds-outputs-cache";
+
+    /**
+     * Output parameter telling whether outputs were restored from cache instead of running the command.
+     */
+    static final String OUTPUTS_RESTORED_PARAM_NAME = "xdsOutputsRestored";
+
+    /**
+     * File of the working directory recording digests of runs that produced its files.
+     */
+    static final String OUTPUTS_RECORD_FILE_NAME = "xds-outputs.digests";
+
+    private static final String LOG_FILE_SUFFIX = ".log";
+
+    private static final long PROGRESS_POLL_SECONDS = 1;
+
+    private final List<String> command;
+    private final XdsOutputsCache outputsCache;
+    private final DatasetVersionServiceBean versionsService;
+    private final XdsProgressTracker progressTracker;
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    public XdsRunningStep(WorkflowStepParams inputParams) {
+        this(inputParams, null, new XdsProgressTracker());
+    }
+
+    public XdsRunningStep(WorkflowStepParams inputParams, DatasetVersionServiceBean versionsService,
+                          XdsProgressTracker progressTracker) {
+        super(inputParams);
+        this.versionsService = versionsService;
+        this.progressTracker = progressTracker;
+        this.command = Arrays.asList(inputParams.getOrDefault(COMMAND_PARAM_NAME, COMMAND_PARAM_DEFAULT).trim().split("\\s+"));
+        this.outputsCache = outputsCacheOf(inputParams);
+    }
+
+    // -------------------- LOGIC --------------------
+
+    @Override
+    protected WorkflowStepResult.Source runInternal(WorkflowExecutionStepContext context, Path workDir) throws Exception {
+        String logFileName = Paths.get(command.get(0)).getFileName() + LOG_FILE_SUFFIX;
+        addFailureArtifacts(logFileName);
+        String digest = outputsCache != null ? cachedInputDigest(workDir) : null;
+        if (digest != null) {
+            Optional<List<String>> restored = restoreOutputs(digest, workDir);
+            if (restored.isPresent()) {
+                recordOutputs(workDir, digest, restored.get());
+                return successWith(data -> data.put(OUTPUTS_RESTORED_PARAM_NAME, "true"));
+            }
+        }
+
+        Map<String, FileState> before = filesOf(workDir);
+        Optional<Long> datasetVersionId = versionsService != null
+                ? versionsService.withDatasetVersion(context, DatasetVersion::getId)
+                : Optional.empty();
+        int exitCode;
+        try {
+            exitCode = run(workDir, workDir.resolve(logFileName), progress -> {
+                log.trace("Progress of {} in {}: {}", command, workDir, progress);
+                datasetVersionId.ifPresent(id -> progressTracker.update(id, progress));
+            });
+        } finally {
+            datasetVersionId.ifPresent(progressTracker::clear);
+        }
+        if (exitCode != 0) {
+            throw new IllegalStateException(String.join(" ", command) + " exited with code " + exitCode);
+        }
+
+        if (digest != null) {
+            Map<String, FileState> after = filesOf(workDir);
+            List<String> outputs = after.keySet().stream()
+                    .filter(name -> !after.get(name).equals(before.get(name)))
+                    .collect(toList());
+            recordOutputs(workDir, digest, outputs);
+            storeOutputs(digest, workDir, outputs);
+        }
+        return successWith(data -> data.put(OUTPUTS_RESTORED_PARAM_NAME, "false"));
+    }
+
+    @Override
+    public WorkflowStepResult resume(WorkflowExecutionStepContext context, Map<String, String> internalData, String externalData) {
+        throw new UnsupportedOperationException("This step does not pause");
+    }
+
+    @Override
+    public void rollback(WorkflowExecutionStepContext context, Failure reason) {
+    }
+
+    /**
+     * @return hex encoded MD5 digest of the input of the command in given directory, or empty if
+     * there is no {@link ImagesManifest}, so images are unknown, or executable of the command is not found.
+     */
+    Optional<String> inputDigest(Path workDir) throws IOException {
+        Map<String, FileState> files = filesOf(workDir);
+        if (!files.containsKey(ImagesManifest.MANIFEST_FILE_NAME)) {
+            log.trace("No images manifest in {}, not caching outputs", workDir);
+            return Optional.empty();
+        }
+        Optional<String> program = programOf(workDir);
+        if (!program.isPresent()) {
+            log.trace("Executable of {} not found, not caching outputs", command);
+            return Optional.empty();
+        }
+        Map<String, ProducedFile> producedFiles = readOutputsRecord(workDir);
+        MessageDigest digest = DigestUtils.getMd5Digest();
+        update(digest, String.join(" ", command));
+        update(digest, program.get());
+        for (Map.Entry<String, FileState> file : files.entrySet()) {
+            String name = file.getKey();
+            ProducedFile produced = producedFiles.get(name);
+            update(digest, name);
+            if (name.equals(XDS_INPUT_FILE_NAME)) {
+                update(digest, normalizedInput(workDir.resolve(name)));
+            } else if (produced != null && produced.state.equals(file.getValue())) {
+                update(digest, produced.runDigest);
+            } else {
+                try (InputStream input = Files.newInputStream(workDir.resolve(name))) {
+                    DigestUtils.updateDigest(digest, input);
+                }
+            }
+        }
+        return Optional.of(Hex.encodeHexString(digest.digest()));
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    /**
+     * @return digest of the input, or <code>null</code> if outputs should not be cached.
+     */
+    private String cachedInputDigest(Path workDir) {
+        try {
+            return inputDigest(workDir).orElse(null);
+        } catch (IOException e) {
+            log.warn("Unable to compute digest of input in " + workDir + ", not caching outputs", e);
+            return null;
+        }
+    }
+
+    /**
+     * Restores cached outputs of the run of given digest. Failure of the cache is a cache miss,
+     * the command runs then, replacing any outputs restored partially.
+     * @return names of restored outputs, or empty if they were not restored.
+     */
+    private Optional<List<String>> restoreOutputs(String digest, Path workDir) {
+        try {
+            Optional<List<String>> restored = outputsCache.restore(digest, workDir);
+            restored.ifPresent(names -> log.debug("Restored {} cached outputs of {} into {}", names.size(), command, workDir));
+            return restored;
+        } catch (IOException e) {
+            log.warn("Unable to restore cached outputs of " + digest + " into " + workDir + ", running " + command, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Records given files of the working directory as produced by the run of given digest.
+     * Without the record, following runs read the files to compute their digests.
+     */
+    private static void recordOutputs(Path workDir, String runDigest, List<String> outputs) {
+        try {
+            Map<String, ProducedFile> producedFiles = readOutputsRecord(workDir);
+            Map<String, FileState> files = filesOf(workDir);
+            for (String name : outputs) {
+                if (files.containsKey(name)) {
+                    producedFiles.put(name, new ProducedFile(runDigest, files.get(name)));
+                }
+            }
+            List<String> lines = producedFiles.entrySet().stream()
+                    .map(file -> file.getValue().format(file.getKey()))
+                    .collect(toList());
+            Files.write(workDir.resolve(OUTPUTS_RECORD_FILE_NAME), lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.warn("Unable to record outputs of run " + runDigest + " in " + workDir, e);
+        }
+    }
+
+    /**
+     * @return files recorded as produced by preceding runs, by their names.
+     */
+    private static Map<String, ProducedFile> readOutputsRecord(Path workDir) throws IOException {
+        Map<String, ProducedFile> producedFiles = new TreeMap<>();
+        Path record = workDir.resolve(OUTPUTS_RECORD_FILE_NAME);
+        if (!Files.exists(record)) {
+            return producedFiles;
+        }
+        for (String line : Files.readAllLines(record, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(" ", 4);
+            try {
+                producedFiles.put(fields[3], new ProducedFile(fields[0],
+                        new FileState(Long.parseLong(fields[1]), Long.parseLong(fields[2]))));
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                log.warn("Skipping malformed line of {}: {}", record, line);
+            }
+        }
+        return producedFiles;
+    }
+
+    /**
+     * Stores given outputs in the cache. Failure of the cache does not fail the run, which succeeded.
+     */
+    private void storeOutputs(String digest, Path workDir, List<String> outputs) {
+        try {
+            outputsCache.store(digest, workDir, outputs);
+            log.trace("Cached {} outputs of {} as {}", outputs.size(), command, digest);
+        } catch (IOException e) {
+            log.warn("Unable to cache outputs of " + command + " in " + workDir, e);
+        }
+        try {
+            outputsCache.evict();
+        } catch (IOException e) {
+            log.warn("Unable to evict runs from XDS outputs cache", e);
+        }
+    }
+
+    private static XdsOutputsCache outputsCacheOf(WorkflowStepParams inputParams) {
+        long maxSize = Long.parseLong(inputParams.getOrDefault(OUTPUTS_CACHE_SIZE_PARAM_NAME, OUTPUTS_CACHE_SIZE_PARAM_DEFAULT));
+        if (maxSize <= 0) {
+            return null;
+        }
+        Path baseWorkDir = Paths.get(inputParams.getOrDefault(BASE_WORK_DIR_PARAM_NAME, System.getProperty("java.io.tmpdir")));
+        Path cacheDir = baseWorkDir.resolve(inputParams.getOrDefault(OUTPUTS_CACHE_DIR_PARAM_NAME, OUTPUTS_CACHE_DIR_PARAM_DEFAULT));
+        return new XdsOutputsCache(cacheDir, maxSize * 1024 * 1024);
+    }
+
+    private int run(Path workDir, Path logFile, Consumer<XdsProgress> progressListener) throws IOException, InterruptedException {
+        log.trace("Running {} in {}", command, workDir);
+        try (XdsProgressWatcher watcher = new XdsProgressWatcher(workDir, totalImages(workDir), Clock.systemUTC(), progressListener)) {
+            Process process = new ProcessBuilder(command)
+                    .directory(workDir.toFile())
+                    .redirectErrorStream(true)
+                    .redirectOutput(logFile.toFile())
+                    .start();
+            try {
+                while (process.isAlive()) {
+                    watcher.awaitChanges(PROGRESS_POLL_SECONDS, TimeUnit.SECONDS);
+                }
+                watcher.finish();
+                return process.waitFor();
+            } finally {
+                process.destroy();
+            }
+        }
+    }
+
+    /**
+     * @return number of images processed by each stage followed by {@link XdsProgressWatcher},
+     * as given by DATA_RANGE and SPOT_RANGE of XDS.INP.
+     */
+    private static Map<String, Integer> totalImages(Path workDir) throws IOException {
+        Map<String, Integer> totalImages = new HashMap<>();
+        Path inputFile = workDir.resolve(XDS_INPUT_FILE_NAME);
+        if (!Files.exists(inputFile)) {
+            return totalImages;
+        }
+        XdsInputDocument document = XdsInputDocument.read(inputFile, XDS_INPUT_FILE_CHARSET);
+        int dataImages = imagesIn(document.getValue("DATA_RANGE").orElse(""));
+        int spotImages = document.getValues("SPOT_RANGE").stream()
+                .mapToInt(XdsRunningStep::imagesIn)
+                .sum();
+        totalImages.put("INTEGRATE", dataImages);
+        totalImages.put("COLSPOT", spotImages > 0 ? spotImages : dataImages);
+        return totalImages;
+    }
+
+    /**
+     * @return number of images in range given as first and last image number, or 0 if it's not a range.
+     */
+    private static int imagesIn(String range) {
+        String[] bounds = range.trim().split("\\s+");
+        try {
+            return bounds.length == 2 ? Math.max(0, Integer.parseInt(bounds[1]) - Integer.parseInt(bounds[0]) + 1) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return real path of the executable of the command, found the same way as when running it,
+     * with its size and modification time, or empty if it's not found.
+     */
+    private Optional<String> programOf(Path workDir) throws IOException {
+        String program = command.get(0);
+        Stream<Path> candidates = program.contains(File.separator)
+                ? Stream.of(workDir.resolve(program))
+                : Stream.of(System.getenv().getOrDefault("PATH", "").split(File.pathSeparator))
+                        .filter(dir -> !dir.isEmpty())
+                        .map(dir -> Paths.get(dir, program));
+        Optional<Path> executable = candidates
+                .filter(path -> Files.isRegularFile(path) && Files.isExecutable(path))
+                .findFirst();
+        if (!executable.isPresent()) {
+            return Optional.empty();
+        }
+        Path realPath = executable.get().toRealPath();
+        return Optional.of(realPath + " " + Files.size(realPath) + " " + Files.getLastModifiedTime(realPath).toMillis());
+    }
+
+    /**
+     * @return states of regular files of given directory (but not its subdirectories) by their names,
+     * skipping files not affecting the command: logs, backups of XDS.INP and record of outputs.
+     */
+    private static Map<String, FileState> filesOf(Path workDir) throws IOException {
+        Map<String, FileState> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.list(workDir)) {
+            for (Path path : paths.filter(Files::isRegularFile).collect(toList())) {
+                String name = path.getFileName().toString();
+                if (!name.endsWith(LOG_FILE_SUFFIX) && !name.startsWith(XDS_INPUT_FILE_NAME + ".")
+                        && !name.equals(OUTPUTS_RECORD_FILE_NAME)) {
+                    files.put(name, new FileState(Files.size(path), Files.getLastModifiedTime(path).toMillis()));
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @return contents of XDS.INP without values of parameters planned for the node by {@link XdsParallelismPlanner}.
+     */
+    private static String normalizedInput(Path inputFile) throws IOException {
+        XdsInputDocument document = XdsInputDocument.read(inputFile, XDS_INPUT_FILE_CHARSET);
+        document.replaceValue(PROCESSORS_KEYWORD, "");
+        document.replaceValue(JOBS_KEYWORD, "");
+        return document.format();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    // -------------------- INNER CLASSES --------------------
+
+    private static class FileState {
+
+        private final long size;
+        private final long lastModified;
+
+        FileState(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof FileState)) {
+                return false;
+            }
+            FileState that = (FileState) other;
+            return size == that.size && lastModified == that.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified);
+        }
+    }
+
+    /**
+     * File produced by a run, in the state it had just after the run.
+     */
+    private static class ProducedFile {
+
+        private final String runDigest;
+        private final FileState state;
+
+        ProducedFile(String runDigest, FileState state) {
+            this.runDigest = runDigest;
+            this.state = state;
+        }
+
+        String format(String name) {
+            return runDigest + " " + state.size + " " + state.lastModified + " " + name;
+        }
+    }
+}
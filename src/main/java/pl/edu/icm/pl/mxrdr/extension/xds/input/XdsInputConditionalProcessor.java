@@ -1,6 +1,8 @@
 package pl.edu.icm.pl.mxrdr.extension.xds.input;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 import java.util.function.Supplier;
 
 /**
@@ -33,4 +35,13 @@ public class XdsInputConditionalProcessor implements XdsInputLineProcessor {
             return line;
         }
     }
+
+    /**
+     * @return keywords of the delegate if the condition holds, otherwise none, so the condition
+     * is checked again for each line.
+     */
+    @Override
+    public Set<String> keywords() {
+        return Boolean.TRUE.equals(condition.get()) ? delegate.get().keywords() : Collections.emptySet();
+    }
 }
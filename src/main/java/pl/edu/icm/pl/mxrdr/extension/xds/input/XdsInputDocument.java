@@ -0,0 +1,411 @@
+package pl.edu.icm.pl.mxrdr.extension.xds.input;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Parsed contents of XDS input file {@value XdsInputFileProcessor#XDS_INPUT_FILE_NAME}, allowing to read
+ * and change values of its parameters. Each line may hold any number of <code>KEYWORD=VALUE</code>
+ * pairs, followed by a comment starting with <code>!</code>. The value of a parameter spans up to
+ * the next keyword, comment or end of line.
+ * <p>
+ * The document is kept as lines of text, so comments, whitespace and line endings are written back
+ * exactly as they were read, except for values changed.
+ */
+public class XdsInputDocument {
+
+    static final String UNDEFINED_VALUE = "XXX";
+
+    private static final char VALUE_SEPARATOR = '=';
+    private static final char COMMENT_START = '!';
+
+    private final List<Line> lines;
+    private final String lineSeparator;
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    private XdsInputDocument(List<Line> lines, String lineSeparator) {
+        this.lines = lines;
+        this.lineSeparator = lineSeparator;
+    }
+
+    public static XdsInputDocument read(Path file, Charset charset) throws IOException {
+        return parse(new String(Files.readAllBytes(file), charset));
+    }
+
+    public static XdsInputDocument parse(String text) {
+        List<Line> lines = new ArrayList<>();
+        String lineSeparator = null;
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                lines.add(Line.parsed(text.substring(start), ""));
+                break;
+            }
+            int textEnd = end > start && text.charAt(end - 1) == '\r' ? end - 1 : end;
+            Line line = Line.parsed(text.substring(start, textEnd), text.substring(textEnd, end + 1));
+            if (lineSeparator == null) {
+                lineSeparator = line.ending;
+            }
+            lines.add(line);
+            start = end + 1;
+        }
+        return new XdsInputDocument(lines, lineSeparator != null ? lineSeparator : System.lineSeparator());
+    }
+
+    // -------------------- GETTERS --------------------
+
+    /**
+     * @return lines of the document, without line endings.
+     */
+    public List<String> getLines() {
+        List<String> texts = new ArrayList<>(lines.size());
+        for (Line line : lines) {
+            texts.add(line.text);
+        }
+        return texts;
+    }
+
+    /**
+     * @return keywords of all parameters in order of appearance, including repeated ones.
+     */
+    public List<String> getKeywords() {
+        List<String> keywords = new ArrayList<>();
+        for (Line line : lines) {
+            for (Parameter parameter : line.parameters) {
+                keywords.add(parameter.keyword);
+            }
+        }
+        return keywords;
+    }
+
+    // -------------------- LOGIC --------------------
+
+    /**
+     * @return trimmed value of the first parameter of given keyword, if present.
+     */
+    public Optional<String> getValue(String keyword) {
+        List<String> values = getValues(keyword);
+        return values.isEmpty() ? Optional.empty() : Optional.of(values.get(0));
+    }
+
+    /**
+     * @return trimmed values of all parameters of given keyword, as some may be repeated
+     * (e.g. <code>EXCLUDE_RESOLUTION_RANGE</code>).
+     */
+    public List<String> getValues(String keyword) {
+        List<String> values = new ArrayList<>();
+        for (Line line : lines) {
+            for (Parameter parameter : line.parameters) {
+                if (parameter.keyword.equals(keyword)) {
+                    values.add(line.valueOf(parameter));
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return numbers of the first parameter of given keyword, or empty list if it's missing,
+     * undefined or not numeric.
+     */
+    public List<Double> getNumbers(String keyword) {
+        String value = getValue(keyword).orElse("");
+        if (value.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Double> numbers = new ArrayList<>();
+        try {
+            for (String token : value.split("\\s+")) {
+                numbers.add(Double.valueOf(token));
+            }
+        } catch (NumberFormatException e) {
+            return Collections.emptyList();
+        }
+        return numbers;
+    }
+
+    /**
+     * @return the single number of the first parameter of given keyword, if it has one.
+     */
+    public Optional<Double> getNumber(String keyword) {
+        List<Double> numbers = getNumbers(keyword);
+        return numbers.size() == 1 ? Optional.of(numbers.get(0)) : Optional.empty();
+    }
+
+    /**
+     * @return the single integer of the first parameter of given keyword, if it has one.
+     */
+    public Optional<Integer> getInteger(String keyword) {
+        return getNumber(keyword)
+                .filter(number -> number == Math.rint(number))
+                .map(Double::intValue);
+    }
+
+    /**
+     * @return true if the first parameter of given keyword has value {@value UNDEFINED_VALUE},
+     * meaning it's to be filled in.
+     */
+    public boolean isUndefined(String keyword) {
+        return getValue(keyword)
+                .filter(UNDEFINED_VALUE::equals)
+                .isPresent();
+    }
+
+    /**
+     * Replaces values of all parameters of given keyword.
+     * @return true if there were any parameters of given keyword.
+     */
+    public boolean replaceValue(String keyword, String value) {
+        return replaceValue(keyword, value, false);
+    }
+
+    /**
+     * Replaces values of all parameters of given keyword, having value {@value UNDEFINED_VALUE}.
+     * @return true if any value was replaced.
+     */
+    public boolean fillUndefinedValue(String keyword, String value) {
+        return replaceValue(keyword, value, true);
+    }
+
+    /**
+     * Replaces values of all parameters of given keyword, or appends the parameter if there is none.
+     */
+    public void setValue(String keyword, String value) {
+        if (!replaceValue(keyword, value)) {
+            addParameter(keyword, value);
+        }
+    }
+
+    /**
+     * Appends parameter in a new line at the end of the document.
+     */
+    public void addParameter(String keyword, String value) {
+        if (!lines.isEmpty() && lines.get(lines.size() - 1).ending.isEmpty()) {
+            lines.get(lines.size() - 1).ending = lineSeparator;
+        }
+        lines.add(new Line(keyword + VALUE_SEPARATOR + value, lineSeparator, null));
+    }
+
+    /**
+     * Passes each line of the document to given rewriter, replacing it with the result.
+     */
+    public void rewriteLines(XdsInputRewriter rewriter) throws IOException {
+        for (Line line : lines) {
+            String text = rewriter.rewrite(line.text);
+            if (!text.equals(line.text)) {
+                line.setText(text);
+            }
+        }
+    }
+
+    /**
+     * @return the document as text, the same as parsed one if no value was changed.
+     */
+    public String format() {
+        StringBuilder text = new StringBuilder();
+        for (Line line : lines) {
+            text.append(line.text).append(line.ending);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Gives changes made since the document was parsed, in unified diff like format:
+     * <pre>
+     * {@literal @@ 2 @@}
+     * -JOB= XYCORR INIT COLSPOT IDXREF
+     * +JOB=CORRECT
+     * </pre>
+     * for each changed or added (having no <code>-</code> line) line of given number.
+     * @return lines of the diff, empty if nothing changed.
+     */
+    public List<String> diff() {
+        List<String> diff = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            Line line = lines.get(i);
+            if (!line.text.equals(line.parsedText)) {
+                diff.add("@@ " + (i + 1) + " @@");
+                if (line.parsedText != null) {
+                    diff.add("-" + line.parsedText);
+                }
+                diff.add("+" + line.text);
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Writes the document into given file. The document is written into a temporary file
+     * and synced to the disk first, then moved in place of the file, so the file is never seen
+     * partially written, even after a crash.
+     */
+    public void write(Path file, Charset charset) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path tempFile = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(format().getBytes(charset));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(dir);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * @return parameter name preceding the value separator at given position, that is all
+     * characters back to a whitespace, comment start or another separator.
+     */
+    static String keywordBefore(String line, int separator) {
+        return line.substring(keywordStart(line, separator), keywordEnd(line, separator));
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private boolean replaceValue(String keyword, String value, boolean undefinedOnly) {
+        boolean replaced = false;
+        for (Line line : lines) {
+            for (int i = 0; i < line.parameters.size(); i++) {
+                Parameter parameter = line.parameters.get(i);
+                if (parameter.keyword.equals(keyword)
+                        && (!undefinedOnly || UNDEFINED_VALUE.equals(line.valueOf(parameter)))) {
+                    line.replaceValue(parameter, value);
+                    replaced = true;
+                }
+            }
+        }
+        return replaced;
+    }
+
+    /**
+     * Syncs the directory, so the renamed file is durable. Not all platforms allow opening
+     * directories, the rename is still atomic there.
+     */
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories can't be synced on this platform
+        }
+    }
+
+    private static int keywordEnd(String line, int separator) {
+        int end = separator;
+        while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static int keywordStart(String line, int separator) {
+        int start = keywordEnd(line, separator);
+        while (start > 0 && isKeywordCharacter(line.charAt(start - 1))) {
+            start--;
+        }
+        return start;
+    }
+
+    private static boolean isKeywordCharacter(char character) {
+        return !Character.isWhitespace(character) && character != VALUE_SEPARATOR && character != COMMENT_START;
+    }
+
+    // -------------------- INNER CLASSES --------------------
+
+    /**
+     * Single line of the document with its parameters.
+     */
+    private static class Line {
+
+        private final String parsedText;
+        private String text;
+        private String ending;
+        private List<Parameter> parameters;
+
+        Line(String text, String ending, String parsedText) {
+            this.parsedText = parsedText;
+            this.ending = ending;
+            setText(text);
+        }
+
+        static Line parsed(String text, String ending) {
+            return new Line(text, ending, text);
+        }
+
+        void setText(String text) {
+            this.text = text;
+            this.parameters = parametersOf(text);
+        }
+
+        String valueOf(Parameter parameter) {
+            return text.substring(parameter.valueStart, parameter.valueEnd).trim();
+        }
+
+        /**
+         * Replaces the keyword with its value, keeping whatever follows the value.
+         */
+        void replaceValue(Parameter parameter, String value) {
+            int valueEnd = parameter.valueEnd;
+            while (valueEnd > parameter.valueStart && Character.isWhitespace(text.charAt(valueEnd - 1))) {
+                valueEnd--;
+            }
+            String rest = text.substring(valueEnd);
+            boolean separated = rest.isEmpty() || Character.isWhitespace(rest.charAt(0));
+            setText(text.substring(0, parameter.keywordStart) + parameter.keyword + VALUE_SEPARATOR + value
+                    + (separated ? "" : " ") + rest);
+        }
+
+        private static List<Parameter> parametersOf(String text) {
+            int commentStart = text.indexOf(COMMENT_START);
+            int end = commentStart >= 0 ? commentStart : text.length();
+            List<Parameter> parameters = new ArrayList<>();
+            int separator = text.indexOf(VALUE_SEPARATOR);
+            while (separator >= 0 && separator < end) {
+                int keywordStart = keywordStart(text, separator);
+                int keywordEnd = keywordEnd(text, separator);
+                if (keywordStart < keywordEnd) {
+                    if (!parameters.isEmpty()) {
+                        parameters.get(parameters.size() - 1).valueEnd = keywordStart;
+                    }
+                    parameters.add(new Parameter(text.substring(keywordStart, keywordEnd), keywordStart, separator + 1, end));
+                }
+                separator = text.indexOf(VALUE_SEPARATOR, separator + 1);
+            }
+            return parameters;
+        }
+    }
+
+    /**
+     * Position of a single parameter within its line.
+     */
+    private static class Parameter {
+
+        private final String keyword;
+        private final int keywordStart;
+        private final int valueStart;
+        private int valueEnd;
+
+        Parameter(String keyword, int keywordStart, int valueStart, int valueEnd) {
+            this.keyword = keyword;
+            this.keywordStart = keywordStart;
+            this.valueStart = valueStart;
+            this.valueEnd = valueEnd;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package pl.edu.icm.pl.mxrdr.extension.xds.input;
+
+import java.io.IOException;
+
+/**
+ * Defines XDS input file {@value XdsInputFileProcessor#XDS_INPUT_FILE_NAME}
+ * processor interface allowing to change parameters of the parsed {@link XdsInputDocument}.
+ */
+@FunctionalInterface
+public interface XdsInputDocumentProcessor {
+
+    /**
+     * Perform necessary changes to parameters of XDS input file, if needed.
+     * @param document parsed XDS input file.
+     * @throws IOException in case of I/O issues.
+     */
+    void process(XdsInputDocument document) throws IOException;
+}
@@ -1,24 +1,26 @@
 package pl.edu.icm.pl.mxrdr.extension.xds.input;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Clock;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
-import static java.nio.file.Files.newBufferedReader;
-import static java.nio.file.Files.newBufferedWriter;
+import static java.util.stream.Collectors.toList;
 
 /**
  * Allows to adjust values in XDS input file {@value XDS_INPUT_FILE_NAME} with given line processors.
- * Will pass each line of input file to each processor oen by one.
+ * Will pass each line of input file to processors of parameters present in the line, one by one
+ * (see {@link XdsInputRewriter}), then the parsed {@link XdsInputDocument} to document processors.
+ * The file is parsed once and replaced at once, keeping copies of the original one named
+ * <code>XDS.INP.&lt;millis&gt;</code>, up to given number of most recent ones.
  */
 public class XdsInputFileProcessor {
 
@@ -26,12 +28,21 @@ public class XdsInputFileProcessor {
 
     public static final Charset XDS_INPUT_FILE_CHARSET = Charset.forName("windows-1252");
 
+    /**
+     * Number of kept copies of the original file meaning all of them are kept.
+     */
+    public static final int ALL_BACKUPS = -1;
+
+    private static final Pattern BACKUP_FILE_NAME = Pattern.compile(Pattern.quote(XDS_INPUT_FILE_NAME + ".") + "\\d+");
+
     private final Path workDir;
     private final Charset charset;
     private final Clock clock;
 
     private final List<XdsInputLineProcessor> lineProcessors = new ArrayList<>();
-    private final Map<String, String> newParameters = new HashMap<>();
+    private final List<XdsInputDocumentProcessor> documentProcessors = new ArrayList<>();
+    private final Map<String, String> newParameters = new LinkedHashMap<>();
+    private int maxBackups = ALL_BACKUPS;
 
     // -------------------- CONSTRUCTORS --------------------
 
@@ -61,39 +72,73 @@ public class XdsInputFileProcessor {
         return this;
     }
 
+    public XdsInputFileProcessor withDocumentProcessor(XdsInputDocumentProcessor action) {
+        documentProcessors.add(action);
+        return this;
+    }
+
     public XdsInputFileProcessor withNewParam(String paramName, String paramValue) {
         newParameters.put(paramName, paramValue);
         return this;
     }
-    
+
+    /**
+     * Limits copies of the original file kept, removing the oldest ones.
+     * @param maxBackups number of kept copies, 0 for none or {@value ALL_BACKUPS} for all.
+     */
+    public XdsInputFileProcessor withBackups(int maxBackups) {
+        this.maxBackups = maxBackups;
+        return this;
+    }
+
     public void process() throws IOException {
         Path source = workDir.resolve(XDS_INPUT_FILE_NAME);
-        Path copy = workDir.resolve(XDS_INPUT_FILE_NAME +  "." + clock.millis());
-        Files.move(source, copy);
-        try (BufferedReader reader = newBufferedReader(copy, charset);
-             BufferedWriter writer = newBufferedWriter(source, charset)) {
-            processLines(reader, writer);
-            processNewParams(writer);
+        XdsInputDocument document = processedDocument(source);
+        if (maxBackups != 0) {
+            Path copy = workDir.resolve(XDS_INPUT_FILE_NAME +  "." + clock.millis());
+            Files.copy(source, copy);
+            removeOldBackups();
         }
+        document.write(source, charset);
+    }
+
+    /**
+     * Processes the file without changing it.
+     * @return changes that {@link #process()} would make (see {@link XdsInputDocument#diff()}).
+     */
+    public List<String> dryRun() throws IOException {
+        return processedDocument(workDir.resolve(XDS_INPUT_FILE_NAME)).diff();
     }
 
     // -------------------- PRIVATE --------------------
 
-    private void processLines(BufferedReader reader, BufferedWriter writer) throws IOException {
-        String line;
-        while ((line = reader.readLine()) != null) {
-            for (XdsInputLineProcessor processor : lineProcessors) {
-                line = processor.process(line);
-            }
-            writer.write(line);
-            writer.newLine();
+    private XdsInputDocument processedDocument(Path source) throws IOException {
+        XdsInputDocument document = XdsInputDocument.read(source, charset);
+        document.rewriteLines(new XdsInputRewriter(lineProcessors));
+        for (XdsInputDocumentProcessor processor : documentProcessors) {
+            processor.process(document);
         }
+        newParameters.forEach(document::addParameter);
+        return document;
     }
 
-    private void processNewParams(BufferedWriter writer) throws IOException {
-        for (Entry<String, String> param: newParameters.entrySet()) {
-            writer.write(param.getKey() + "=" + param.getValue());
-            writer.newLine();
+    private void removeOldBackups() throws IOException {
+        if (maxBackups < 0) {
+            return;
+        }
+        List<Path> backups;
+        try (Stream<Path> files = Files.list(workDir)) {
+            backups = files
+                    .filter(file -> BACKUP_FILE_NAME.matcher(file.getFileName().toString()).matches())
+                    .sorted(Comparator.comparing(XdsInputFileProcessor::backupMillis))
+                    .collect(toList());
         }
+        for (Path backup : backups.subList(0, Math.max(0, backups.size() - maxBackups))) {
+            Files.deleteIfExists(backup);
+        }
+    }
+
+    private static long backupMillis(Path backup) {
+        return Long.parseLong(backup.getFileName().toString().substring(XDS_INPUT_FILE_NAME.length() + 1));
     }
 }
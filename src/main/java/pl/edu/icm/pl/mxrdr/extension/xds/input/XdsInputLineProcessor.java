@@ -1,6 +1,8 @@
 package pl.edu.icm.pl.mxrdr.extension.xds.input;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 
 /**
  * Defines XDS input file {@value XdsInputFileProcessor#XDS_INPUT_FILE_NAME}
@@ -16,4 +18,14 @@ public interface XdsInputLineProcessor {
      * @throws IOException in case of I/O issues.
      */
     String process(String line) throws IOException;
+
+    /**
+     * Gives names of parameters this processor may change, so lines without any of them are not
+     * passed to it by {@link XdsInputRewriter}. It's a hint only, processors still have to leave
+     * other lines unchanged.
+     * @return names of parameters, or empty set if the processor may change any line.
+     */
+    default Set<String> keywords() {
+        return Collections.emptySet();
+    }
 }
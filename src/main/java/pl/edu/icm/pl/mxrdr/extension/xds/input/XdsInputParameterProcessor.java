@@ -5,9 +5,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Implementation of XDS input processor that allows changing values of XDS input parameters.
+ * Replacement value is supplied only for lines matching the pattern.
  */
 public class XdsInputParameterProcessor implements XdsInputLineProcessor {
 
@@ -16,10 +21,15 @@ public class XdsInputParameterProcessor implements XdsInputLineProcessor {
     public final String pattern;
     public final InputSupplier<String> replacement;
 
+    private final String paramName;
+    private final Pattern compiledPattern;
+
     // -------------------- CONSTRUCTORS --------------------
 
-    private XdsInputParameterProcessor(String pattern, InputSupplier<String> replacement) {
+    private XdsInputParameterProcessor(String paramName, String pattern, InputSupplier<String> replacement) {
+        this.paramName = paramName;
         this.pattern = pattern;
+        this.compiledPattern = Pattern.compile(pattern);
         this.replacement = replacement;
     }
 
@@ -30,7 +40,7 @@ public class XdsInputParameterProcessor implements XdsInputLineProcessor {
      * @return line processor for given XDS input parameter.
      */
     public static XdsInputParameterProcessor replaceAnyValue(String paramName, InputSupplier<String> paramValue) {
-        return new XdsInputParameterProcessor(anyValueOf(paramName), valueReplacementOf(paramName, paramValue));
+        return new XdsInputParameterProcessor(paramName, anyValueOf(paramName), valueReplacementOf(paramName, paramValue));
     }
 
     /**
@@ -40,7 +50,7 @@ public class XdsInputParameterProcessor implements XdsInputLineProcessor {
      * @return line processor for given XDS input parameter.
      */
     public static XdsInputParameterProcessor replaceUndefinedValue(String paramName, InputSupplier<String> paramValue) {
-        return new XdsInputParameterProcessor(undefinedValueOf(paramName), valueReplacementOf(paramName, paramValue));
+        return new XdsInputParameterProcessor(paramName, undefinedValueOf(paramName), valueReplacementOf(paramName, paramValue));
     }
 
     // -------------------- LOGIC --------------------
@@ -50,7 +60,7 @@ public class XdsInputParameterProcessor implements XdsInputLineProcessor {
      * @return processor with matching pattern extended.
      */
     public XdsInputParameterProcessor matchingWholeLine() {
-        return new XdsInputParameterProcessor("^" + pattern + "$", replacement);
+        return new XdsInputParameterProcessor(paramName, "^" + pattern + "$", replacement);
     }
 
     /**
@@ -70,9 +80,18 @@ public class XdsInputParameterProcessor implements XdsInputLineProcessor {
      */
     @Override
     public String process(String line) throws IOException {
+        Matcher matcher = compiledPattern.matcher(line);
+        if (!matcher.find()) {
+            return line;
+        }
         String newValue = replacement.getInput();
         log.trace("Set XDS input param {}", newValue);
-        return line.replaceAll(pattern, newValue);
+        return matcher.replaceAll(newValue);
+    }
+
+    @Override
+    public Set<String> keywords() {
+        return Collections.singleton(paramName);
     }
 
     // -------------------- PRIVATE --------------------
@@ -0,0 +1,68 @@
+package pl.edu.icm.pl.mxrdr.extension.xds.input;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies line processors to lines of XDS input file, in the order of processors. Processors
+ * are indexed by their {@link XdsInputLineProcessor#keywords()} once, so each line is split into
+ * parameter names and passed only to processors of these names (and to processors of any line).
+ */
+public class XdsInputRewriter {
+
+    private static final char VALUE_SEPARATOR = '=';
+
+    private final List<XdsInputLineProcessor> processors;
+    private final Map<String, BitSet> processorsByKeyword = new HashMap<>();
+    private final BitSet anyLineProcessors = new BitSet();
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    public XdsInputRewriter(List<XdsInputLineProcessor> processors) {
+        this.processors = new ArrayList<>(processors);
+        for (int i = 0; i < this.processors.size(); i++) {
+            XdsInputLineProcessor processor = this.processors.get(i);
+            if (processor.keywords().isEmpty()) {
+                anyLineProcessors.set(i);
+            }
+            for (String keyword : processor.keywords()) {
+                processorsByKeyword.computeIfAbsent(keyword, k -> new BitSet()).set(i);
+            }
+        }
+    }
+
+    // -------------------- LOGIC --------------------
+
+    /**
+     * @return given line changed by all processors of parameters present in it.
+     */
+    public String rewrite(String line) throws IOException {
+        BitSet lineProcessors = processorsOf(line);
+        for (int i = lineProcessors.nextSetBit(0); i >= 0; i = lineProcessors.nextSetBit(i + 1)) {
+            line = processors.get(i).process(line);
+        }
+        return line;
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private BitSet processorsOf(String line) {
+        BitSet lineProcessors = null;
+        int separator = line.indexOf(VALUE_SEPARATOR);
+        while (separator >= 0 && !processorsByKeyword.isEmpty()) {
+            BitSet keywordProcessors = processorsByKeyword.get(XdsInputDocument.keywordBefore(line, separator));
+            if (keywordProcessors != null) {
+                if (lineProcessors == null) {
+                    lineProcessors = (BitSet) anyLineProcessors.clone();
+                }
+                lineProcessors.or(keywordProcessors);
+            }
+            separator = line.indexOf(VALUE_SEPARATOR, separator + 1);
+        }
+        return lineProcessors != null ? lineProcessors : anyLineProcessors;
+    }
+}
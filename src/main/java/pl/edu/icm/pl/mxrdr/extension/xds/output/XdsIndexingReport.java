@@ -0,0 +1,104 @@
+package pl.edu.icm.pl.mxrdr.extension.xds.output;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Indexing quality read from XDS output file {@value INDEXING_OUTPUT_FILE_NAME}: number of spots
+ * indexed in the last indexing pass, lattices compatible with them and errors reported by XDS.
+ * The file is streamed line by line, so its size does not affect memory usage.
+ */
+public class XdsIndexingReport {
+
+    public static final String INDEXING_OUTPUT_FILE_NAME = "IDXREF.LP";
+
+    private static final Charset INDEXING_OUTPUT_FILE_CHARSET = XdsOutputFileParser.XDS_OUTPUT_FILE_CHARSET;
+
+    private static final String ERROR_INDICATOR = "!!! ERROR !!!";
+    private static final String LATTICE_SECTION_INDICATOR = "DETERMINATION OF LATTICE CHARACTER AND BRAVAIS LATTICE";
+
+    private static final Pattern INDEXED_SPOTS = Pattern.compile("^\\s*(\\d+) OUT OF\\s+(\\d+) SPOTS INDEXED\\.");
+    private static final Pattern COMPATIBLE_LATTICE = Pattern.compile("^\\s*\\*\\s+\\d+\\s+([a-z][A-Z])\\s+\\d");
+
+    private final long indexedSpots;
+    private final long totalSpots;
+    private final List<String> compatibleLattices;
+    private final List<String> errors;
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    public XdsIndexingReport(long indexedSpots, long totalSpots, List<String> compatibleLattices, List<String> errors) {
+        this.indexedSpots = indexedSpots;
+        this.totalSpots = totalSpots;
+        this.compatibleLattices = Collections.unmodifiableList(compatibleLattices);
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    // -------------------- GETTERS --------------------
+
+    public long getIndexedSpots() {
+        return indexedSpots;
+    }
+
+    public long getTotalSpots() {
+        return totalSpots;
+    }
+
+    /**
+     * @return Bravais lattices (e.g. <code>oP</code>) marked by XDS as compatible with indexed spots,
+     * in order listed by XDS.
+     */
+    public List<String> getCompatibleLattices() {
+        return compatibleLattices;
+    }
+
+    /**
+     * @return lines of errors reported by XDS, without the error indicator.
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    // -------------------- LOGIC --------------------
+
+    /**
+     * @return fraction of spots indexed in the last indexing pass, 0 if there was none.
+     */
+    public double getIndexedFraction() {
+        return totalSpots > 0 ? (double) indexedSpots / totalSpots : 0;
+    }
+
+    public static XdsIndexingReport read(Path file) throws IOException {
+        long indexedSpots = 0;
+        long totalSpots = 0;
+        List<String> compatibleLattices = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        boolean latticeSection = false;
+        try (BufferedReader reader = Files.newBufferedReader(file, INDEXING_OUTPUT_FILE_CHARSET)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher matcher;
+                if (line.contains(ERROR_INDICATOR)) {
+                    errors.add(line.substring(line.indexOf(ERROR_INDICATOR) + ERROR_INDICATOR.length()).trim());
+                } else if (line.contains(LATTICE_SECTION_INDICATOR)) {
+                    latticeSection = true;
+                    compatibleLattices.clear();
+                } else if ((matcher = INDEXED_SPOTS.matcher(line)).find()) {
+                    indexedSpots = Long.parseLong(matcher.group(1));
+                    totalSpots = Long.parseLong(matcher.group(2));
+                } else if (latticeSection && (matcher = COMPATIBLE_LATTICE.matcher(line)).find()) {
+                    compatibleLattices.add(matcher.group(1));
+                }
+            }
+        }
+        return new XdsIndexingReport(indexedSpots, totalSpots, compatibleLattices, errors);
+    }
+}
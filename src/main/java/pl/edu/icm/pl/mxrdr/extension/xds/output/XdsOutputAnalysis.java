@@ -0,0 +1,39 @@
+package pl.edu.icm.pl.mxrdr.extension.xds.output;
+
+import edu.harvard.iq.dataverse.importer.metadata.ResultField;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything read from a single pass over XDS output file {@value XdsOutputFileParser#XDS_OUTPUT_FILE_NAME}:
+ * metadata fields and the high resolution limit to use in the next run of XDS.
+ */
+public class XdsOutputAnalysis {
+
+    private final List<ResultField> resultFields;
+    private final String resolutionCutOff;
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    public XdsOutputAnalysis(List<ResultField> resultFields, String resolutionCutOff) {
+        this.resultFields = Collections.unmodifiableList(resultFields);
+        this.resolutionCutOff = resolutionCutOff;
+    }
+
+    // -------------------- GETTERS --------------------
+
+    public List<ResultField> getResultFields() {
+        return resultFields;
+    }
+
+    /**
+     * Resolution of the last statistics row that has resolution between 0.3 and 5, signal to noise
+     * ratio between 1.2 and 100 and correlation of at least 50, as given by:
+     * {@code awk '{ if ($1>=0.3 && $1<=5 && $9>=1.2 && $9<=100 && $11>=50 && $5~"%" && $6~"%" && $7~"%") { print $1 } }' CORRECT.LP | tail -n 1}
+     * @return the resolution or empty string if there is no such row.
+     */
+    public String getResolutionCutOff() {
+        return resolutionCutOff;
+    }
+}
@@ -0,0 +1,83 @@
+package pl.edu.icm.pl.mxrdr.extension.xds.output;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps analyses of XDS output files, so steps reading the same file after the same run of XDS
+ * parse it only once. An analysis is reused as long as the file has the same path, modification
+ * time and size, otherwise the file is parsed again. Only the given number of most recently
+ * used files are kept.
+ */
+public class XdsOutputAnalysisCache {
+
+    public static final int DEFAULT_MAX_FILES = 16;
+
+    private final Map<Path, CachedAnalysis> analyses;
+
+    // -------------------- CONSTRUCTORS --------------------
+
+    public XdsOutputAnalysisCache() {
+        this(DEFAULT_MAX_FILES);
+    }
+
+    public XdsOutputAnalysisCache(int maxFiles) {
+        this.analyses = new LinkedHashMap<Path, CachedAnalysis>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, CachedAnalysis> eldest) {
+                return size() > maxFiles;
+            }
+        };
+    }
+
+    // -------------------- LOGIC --------------------
+
+    /**
+     * @return analysis of given file, parsed now if the file has changed since it was last parsed.
+     */
+    public XdsOutputAnalysis analysisOf(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        CachedAnalysis cached = cached(key);
+        if (cached != null && cached.isOf(attributes)) {
+            return cached.analysis;
+        }
+        XdsOutputAnalysis analysis = new XdsOutputFileParser(key.toFile()).analyse();
+        store(key, new CachedAnalysis(attributes, analysis));
+        return analysis;
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private synchronized CachedAnalysis cached(Path key) {
+        return analyses.get(key);
+    }
+
+    private synchronized void store(Path key, CachedAnalysis cached) {
+        analyses.put(key, cached);
+    }
+
+    // -------------------- INNER CLASSES --------------------
+
+    private static class CachedAnalysis {
+
+        private final FileTime lastModifiedTime;
+        private final long size;
+        private final XdsOutputAnalysis analysis;
+
+        CachedAnalysis(BasicFileAttributes attributes, XdsOutputAnalysis analysis) {
+            this.lastModifiedTime = attributes.lastModifiedTime();
+            this.size = attributes.size();
+            this.analysis = analysis;
+        }
+
+        boolean isOf(BasicFileAttributes attributes) {
+            return lastModifiedTime.equals(attributes.lastModifiedTime()) && size == attributes.size();
+        }
+    }
+}
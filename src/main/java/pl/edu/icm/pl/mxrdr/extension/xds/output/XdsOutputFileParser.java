@@ -2,35 +2,40 @@ package pl.edu.icm.pl.mxrdr.extension.xds.output;
 
 import com.google.common.io.InputSupplier;
 import edu.harvard.iq.dataverse.importer.metadata.ResultField;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import pl.edu.icm.pl.mxrdr.extension.importer.MxrdrMetadataField;
 import pl.edu.icm.pl.mxrdr.extension.importer.SymmetryStructureMapper;
 
-import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 /**
  * Extracts metadataFields from String lines taken from XDS output file (usually {@value XDS_OUTPUT_FILE_NAME}).
+ * The file is streamed line by line, so its size does not affect memory usage.
  */
 public class XdsOutputFileParser {
 
-    private static final Logger log = LoggerFactory.getLogger(XdsOutputFileParser.class);
-
     public static final String XDS_OUTPUT_FILE_NAME = "CORRECT.LP";
 
     public static final Charset XDS_OUTPUT_FILE_CHARSET = Charset.forName("windows-1252");
 
     private static final String OVERALL_RESOLUTION_INDICATOR = "STANDARD ERROR OF REFLECTION INTENSITIES AS FUNCTION OF RESOLUTION";
 
+    private static final Pattern ASSIGNMENT_SPACES = Pattern.compile("\\s*=\\s*");
+    private static final Pattern NON_DIGITS = Pattern.compile("[^\\d.+-]");
+    private static final Pattern RESOLUTION_VALUE = Pattern.compile("[\\d.]*");
+
     private final InputSupplier<InputStream> dataSupplier;
     private final Charset dataCharset;
 
@@ -52,155 +57,26 @@ public class XdsOutputFileParser {
     // -------------------- LOGIC --------------------
 
     public List<ResultField> asResultFields() {
-
-        List<ResultField> results = new ArrayList<>();
-        List<ResultField> dataCollectionChildren = new ArrayList<>();
-        List<String> collectedFields = new ArrayList<String>();
-
-        String overallCandidateDataLine = "";
-        String spaceGroupNumber = "";
-        String unitCellConstantsCandidateDataLine = "";
-
-        String hrsDataLine = "";
-        String hrsAdditionalDataLine = "";
-
-        String previousDataline = "";
-
-        boolean resolveOverallResolutionRangeLow = false;
-
-        String overallDataResolutionRangeLow = "";
-
-        for (String dataLine : readDataLines()) {
-
-            addExtractedValue(MxrdrMetadataField.DATA_COLLECTION_DETECTOR_DISTANCE, "DETECTOR_DISTANCE", dataLine,
-                    dataCollectionChildren, collectedFields);
-
-            addExtractedValue(MxrdrMetadataField.DATA_COLLECTION_OSCILLATION_STEP_SIZE, "OSCILLATION_RANGE", dataLine,
-                    dataCollectionChildren, collectedFields);
-            addExtractedValue(MxrdrMetadataField.DATA_COLLECTION_WAVELENGTH, "X-RAY_WAVELENGTH", dataLine,
-                    dataCollectionChildren, collectedFields);
-            addExtractedValue(MxrdrMetadataField.DATA_COLLECTION_NUMBER_OF_FRAMES, "DATA_RANGE", 1, dataLine,
-                    dataCollectionChildren, collectedFields);
-            addExtractedValue(MxrdrMetadataField.DATA_COLLECTION_DETECTOR_OVERLOAD, "OVERLOAD", dataLine,
-                    dataCollectionChildren, collectedFields);
-            addExtractedValue(MxrdrMetadataField.DATA_COLLECTION_ORG_X, "ORGX", dataLine, dataCollectionChildren,
-                    collectedFields);
-            addExtractedValue(MxrdrMetadataField.DATA_COLLECTION_ORG_Y, "ORGY", dataLine, dataCollectionChildren,
-                    collectedFields);
-            addExtractedValue(MxrdrMetadataField.DATA_COLLECTION_DETECTOR_THICKNESS, "SENSOR_THICKNESS", dataLine,
-                    dataCollectionChildren, collectedFields);
-            addExtractedValue(MxrdrMetadataField.DATA_COLLECTION_STARTING_ANGLE, "STARTING_ANGLE", dataLine,
-                    dataCollectionChildren, collectedFields);
-            if (containsOverall(dataLine)) {
-                overallCandidateDataLine = dataLine;
-            }
-            if (resolveOverallResolutionRangeLow) {
-                overallDataResolutionRangeLow = parseOverallDataResolutionRangeLow(dataLine);
-                if (StringUtils.isNotEmpty(overallDataResolutionRangeLow)) {
-                    resolveOverallResolutionRangeLow = false;
-                }
-
-            }
-            if (containsUnitCellConstants(dataLine)) {
-                unitCellConstantsCandidateDataLine = dataLine;
-            }
-            String spaceGroupNumberCandidate = extractSpaceGroupNumber(dataLine);
-            if (!StringUtils.isEmpty(spaceGroupNumberCandidate)) {
-                spaceGroupNumber = spaceGroupNumberCandidate;
-            }
-
-            if (containsHrs(dataLine)) {
-                hrsAdditionalDataLine = previousDataline;
-                hrsDataLine = dataLine;
-            }
-            previousDataline = dataLine;
-            if (dataLine.contains(OVERALL_RESOLUTION_INDICATOR)) {
-                resolveOverallResolutionRangeLow = true;
-            }
-
-        }
-
-        results.addAll(addUnitCellConstants(unitCellConstantsCandidateDataLine));
-        if (!dataCollectionChildren.isEmpty()) {
-            results.add(ResultField.of(MxrdrMetadataField.DATA_COLLECTION.getValue(),
-                    dataCollectionChildren.toArray(new ResultField[0])));
-        }
-        List<ResultField> hrsFields = addHrsValues(hrsDataLine, hrsAdditionalDataLine);
-        results.addAll(addOverallValues(overallCandidateDataLine, overallDataResolutionRangeLow, hrsFields));
-        results.addAll(hrsFields);
-
-        results.add(ResultField.of(MxrdrMetadataField.SPACE_GROUP.getValue(),
-                ResultField.ofValue(SymmetryStructureMapper.mapSpaceGroupNumber(spaceGroupNumber))));
-        results.add(ResultField.of(MxrdrMetadataField.PROCESSING_SOFTWARE.getValue(), ResultField.ofValue("XDS")));
-
-        return results;
+        return analyse().getResultFields();
     }
 
-    // -------------------- PRIVATE --------------------
-
-    private String parseOverallDataResolutionRangeLow(String dataLine) {
-        String[] values = splitSpacesDelimited(dataLine);
-        if (values.length == 9 && values[0].matches("[\\d.]*")) {
-            return values[0];
-        }
-        return null;
-    }
-
-    private boolean containsOverall(String dataLine) {
-        if (!dataLine.trim().startsWith("total")) {
-            return false;
-        }
-        String[] values = splitSpacesDelimited(dataLine);
-        return values.length == 14;
-
-    }
-
-    private boolean containsUnitCellConstants(String dataLine) {
-        if (!dataLine.trim().startsWith("UNIT_CELL_CONSTANTS")) {
-            return false;
-        }
-        String[] values = splitSpacesDelimited(dataLine);
-        return !(values.length < 6);
-    }
-
-    private String extractSpaceGroupNumber(String dataLine) {
-        if (!dataLine.trim().startsWith("SPACE_GROUP_NUMBER")) {
-            return "";
-        }
-        String[] values = normalizeDataLine(dataLine).split(" ");
-        if (values.length > 0) {
-            String[] spaceGroupNameValue = values[0].split("=");
-            return spaceGroupNameValue.length > 0 ? spaceGroupNameValue[1] : "";
-        }
-        return "";
-    }
-
-    private boolean containsHrs(String dataLine) {
-        String[] values = splitSpacesDelimited(dataLine);
-        if (values.length == 14) {
-            double resolution = 0.0;
-            double sigma = 0.0;
-            double cc = 0.0;
-
-            try {
-                resolution = Float.valueOf(clearNonDigits(values[0]));
-                sigma = Float.valueOf(clearNonDigits(values[8]));
-                cc = Float.valueOf(clearNonDigits(values[10]));
-            } catch (NumberFormatException e) {
-                log.info(e.getMessage());
-            }
-
-            if (resolution > 0.3 && resolution < 5.0 && sigma > 1.19 && sigma <= 100 && cc > 50.0
-                    && values[4].endsWith("%") && values[5].endsWith("%") && values[6].endsWith("%")) {
-                return true;
+    /**
+     * Reads both the metadata fields and the resolution cut-off in a single pass over the file.
+     */
+    public XdsOutputAnalysis analyse() {
+        CorrectLpScanner scanner = new CorrectLpScanner();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(dataSupplier.getInput(), dataCharset))) {
+            String dataLine;
+            while ((dataLine = reader.readLine()) != null) {
+                scanner.accept(dataLine);
             }
+        } catch (IOException e) {
+            throw new IllegalStateException("There was a problem with reading XDS input", e);
         }
-        return false;
+        return new XdsOutputAnalysis(scanner.toResultFields(), scanner.resolutionCutOff);
     }
 
-    private String[] splitSpacesDelimited(String dataLine) {
-        return StringUtils.normalizeSpace(dataLine).split(" ");
-    }
+    // -------------------- PRIVATE --------------------
 
     private List<ResultField> addHrsValues(String dataLine, String additionalDataLine) {
 
@@ -313,7 +189,7 @@ public class XdsOutputFileParser {
         return results;
     }
 
-    private String extractField(String normalizedLine, String filteredField, int fieldPosition) {
+    private static String extractField(String normalizedLine, String filteredField, int fieldPosition) {
         if (normalizedLine.contains(filteredField)) {
 
             int startIndex = normalizedLine.indexOf(filteredField + "=") + filteredField.length() + 1;
@@ -331,37 +207,211 @@ public class XdsOutputFileParser {
         return "";
     }
 
-    public void addExtractedValue(MxrdrMetadataField field, String sourceName, String dataline,
-            List<ResultField> results, List<String> collected) {
-        addExtractedValue(field, sourceName, 0, dataline, results, collected);
+    /**
+     * Joins <code>KEY = VALUE</code> into <code>KEY=VALUE</code>, given line with already normalized spaces.
+     */
+    private static String joinAssignments(String normalizedLine) {
+        return normalizedLine.indexOf('=') < 0
+                ? normalizedLine
+                : ASSIGNMENT_SPACES.matcher(normalizedLine).replaceAll("=");
     }
 
-    public void addExtractedValue(MxrdrMetadataField field, String sourceName, int sourcePosition, String dataline,
-            List<ResultField> results, List<String> collected) {
-        if (!collected.contains(field.getValue())) {
-            String extractedValue = extractField(normalizeDataLine(dataline), sourceName, sourcePosition);
-            if (!extractedValue.isEmpty()) {
-                results.add(ResultField.of(field.getValue(), extractedValue));
-                collected.add(field.getValue());
+    /**
+     * @return number of tokens of line with already normalized spaces, same as length of its split on single space.
+     */
+    private static int countTokens(String normalizedLine) {
+        int tokens = 1;
+        for (int i = 0; i < normalizedLine.length(); i++) {
+            if (normalizedLine.charAt(i) == ' ') {
+                tokens++;
             }
         }
+        return tokens;
     }
 
-    private String normalizeDataLine(String input) {
-        String normalizedSpaces = StringUtils.normalizeSpace(input);
-        String output = normalizedSpaces.replaceAll("\\s*=\\s*", "=");
-        return output;
+    private String[] splitSpacesDelimited(String dataLine) {
+        return StringUtils.normalizeSpace(dataLine).split(" ");
     }
 
-    private String clearNonDigits(String value) {
-        return value.replaceAll("[^\\d.+-]", "");
+    private static String clearNonDigits(String value) {
+        return NON_DIGITS.matcher(value).replaceAll("");
     }
 
-    private List<String> readDataLines() {
-        try (InputStream in = new BufferedInputStream(dataSupplier.getInput())) {
-            return IOUtils.readLines(in, dataCharset);
-        } catch (IOException e) {
-            throw new IllegalStateException("There was a problem with reading XDS input", e);
+    // -------------------- INNER CLASSES --------------------
+
+    /**
+     * Input parameters echoed in the header of the file, in the order they are checked on each line.
+     */
+    private enum HeaderParameter {
+        DETECTOR_DISTANCE(MxrdrMetadataField.DATA_COLLECTION_DETECTOR_DISTANCE, "DETECTOR_DISTANCE"),
+        OSCILLATION_RANGE(MxrdrMetadataField.DATA_COLLECTION_OSCILLATION_STEP_SIZE, "OSCILLATION_RANGE"),
+        X_RAY_WAVELENGTH(MxrdrMetadataField.DATA_COLLECTION_WAVELENGTH, "X-RAY_WAVELENGTH"),
+        DATA_RANGE(MxrdrMetadataField.DATA_COLLECTION_NUMBER_OF_FRAMES, "DATA_RANGE", 1),
+        OVERLOAD(MxrdrMetadataField.DATA_COLLECTION_DETECTOR_OVERLOAD, "OVERLOAD"),
+        ORGX(MxrdrMetadataField.DATA_COLLECTION_ORG_X, "ORGX"),
+        ORGY(MxrdrMetadataField.DATA_COLLECTION_ORG_Y, "ORGY"),
+        SENSOR_THICKNESS(MxrdrMetadataField.DATA_COLLECTION_DETECTOR_THICKNESS, "SENSOR_THICKNESS"),
+        STARTING_ANGLE(MxrdrMetadataField.DATA_COLLECTION_STARTING_ANGLE, "STARTING_ANGLE");
+
+        private final MxrdrMetadataField field;
+        private final String sourceName;
+        private final int sourcePosition;
+
+        HeaderParameter(MxrdrMetadataField field, String sourceName) {
+            this(field, sourceName, 0);
+        }
+
+        HeaderParameter(MxrdrMetadataField field, String sourceName, int sourcePosition) {
+            this.field = field;
+            this.sourceName = sourceName;
+            this.sourcePosition = sourcePosition;
+        }
+    }
+
+    /**
+     * Single pass, line by line scanner of the file. Every line is normalized once and then
+     * goes through the stages it may still be relevant for:
+     * <ul>
+     *     <li>header parameters, until all of them are collected,</li>
+     *     <li>statistics tables, where only the 14 column rows are scanned,</li>
+     *     <li>resolution shells, entered after {@value OVERALL_RESOLUTION_INDICATOR}
+     *     and left with the first shell found.</li>
+     * </ul>
+     * The statistics rows are also checked for the resolution cut-off (see {@link XdsOutputAnalysis#getResolutionCutOff()}).
+     * Only the lines needed to build the fields are retained.
+     */
+    private class CorrectLpScanner {
+
+        private final Set<HeaderParameter> pendingParameters = EnumSet.allOf(HeaderParameter.class);
+        private final List<ResultField> dataCollectionChildren = new ArrayList<>();
+        private final XdsStatisticsRow statisticsRow = new XdsStatisticsRow();
+
+        private String overallCandidateDataLine = "";
+        private String spaceGroupNumber = "";
+        private String unitCellConstantsCandidateDataLine = "";
+
+        private String hrsDataLine = "";
+        private String hrsAdditionalDataLine = "";
+
+        private String previousDataLine = "";
+        private String resolutionCutOff = "";
+
+        private boolean inResolutionShells = false;
+        private String overallDataResolutionRangeLow = "";
+
+        void accept(String dataLine) {
+            String normalizedLine = StringUtils.normalizeSpace(dataLine);
+
+            if (!pendingParameters.isEmpty()) {
+                collectHeaderParameters(joinAssignments(normalizedLine));
+            }
+
+            int tokenCount = countTokens(normalizedLine);
+            boolean tableRow = tokenCount == XdsStatisticsRow.COLUMNS && statisticsRow.scan(normalizedLine);
+
+            if (tableRow && normalizedLine.startsWith("total")) {
+                overallCandidateDataLine = dataLine;
+            }
+            if (inResolutionShells) {
+                overallDataResolutionRangeLow = parseOverallDataResolutionRangeLow(normalizedLine, tokenCount);
+                if (StringUtils.isNotEmpty(overallDataResolutionRangeLow)) {
+                    inResolutionShells = false;
+                }
+            }
+            if (tokenCount >= 6 && normalizedLine.startsWith("UNIT_CELL_CONSTANTS")) {
+                unitCellConstantsCandidateDataLine = dataLine;
+            }
+            if (normalizedLine.startsWith("SPACE_GROUP_NUMBER")) {
+                String spaceGroupNumberCandidate = extractSpaceGroupNumber(normalizedLine);
+                if (!StringUtils.isEmpty(spaceGroupNumberCandidate)) {
+                    spaceGroupNumber = spaceGroupNumberCandidate;
+                }
+            }
+            if (tableRow && isHrs(statisticsRow)) {
+                hrsAdditionalDataLine = previousDataLine;
+                hrsDataLine = dataLine;
+            }
+            if (tableRow && isResolutionCutOff(statisticsRow)) {
+                resolutionCutOff = Double.toString(statisticsRow.value(0));
+            }
+            previousDataLine = dataLine;
+            if (dataLine.contains(OVERALL_RESOLUTION_INDICATOR)) {
+                inResolutionShells = true;
+            }
+        }
+
+        List<ResultField> toResultFields() {
+            List<ResultField> results = new ArrayList<>(addUnitCellConstants(unitCellConstantsCandidateDataLine));
+            if (!dataCollectionChildren.isEmpty()) {
+                results.add(ResultField.of(MxrdrMetadataField.DATA_COLLECTION.getValue(),
+                        dataCollectionChildren.toArray(new ResultField[0])));
+            }
+            List<ResultField> hrsFields = addHrsValues(hrsDataLine, hrsAdditionalDataLine);
+            results.addAll(addOverallValues(overallCandidateDataLine, overallDataResolutionRangeLow, hrsFields));
+            results.addAll(hrsFields);
+
+            results.add(ResultField.of(MxrdrMetadataField.SPACE_GROUP.getValue(),
+                    ResultField.ofValue(SymmetryStructureMapper.mapSpaceGroupNumber(spaceGroupNumber))));
+            results.add(ResultField.of(MxrdrMetadataField.PROCESSING_SOFTWARE.getValue(), ResultField.ofValue("XDS")));
+
+            return results;
+        }
+
+        // -------------------- PRIVATE --------------------
+
+        private void collectHeaderParameters(String parameterLine) {
+            Iterator<HeaderParameter> pending = pendingParameters.iterator();
+            while (pending.hasNext()) {
+                HeaderParameter parameter = pending.next();
+                String extractedValue = extractField(parameterLine, parameter.sourceName, parameter.sourcePosition);
+                if (!extractedValue.isEmpty()) {
+                    dataCollectionChildren.add(ResultField.of(parameter.field.getValue(), extractedValue));
+                    pending.remove();
+                }
+            }
+        }
+
+        private String parseOverallDataResolutionRangeLow(String normalizedLine, int tokenCount) {
+            if (tokenCount != 9) {
+                return null;
+            }
+            String firstValue = normalizedLine.substring(0, normalizedLine.indexOf(' '));
+            return RESOLUTION_VALUE.matcher(firstValue).matches() ? firstValue : null;
+        }
+
+        private String extractSpaceGroupNumber(String normalizedLine) {
+            String[] values = joinAssignments(normalizedLine).split(" ");
+            String[] spaceGroupNameValue = values[0].split("=");
+            return spaceGroupNameValue.length > 1 ? spaceGroupNameValue[1] : "";
+        }
+
+        /**
+         * High resolution shell is the last row having resolution, signal to noise ratio and
+         * correlation within bounds. Bounds are checked on float values, same as XDS prints them.
+         */
+        private boolean isHrs(XdsStatisticsRow row) {
+            if (!row.isPercentage(4) || !row.isPercentage(5) || !row.isPercentage(6)) {
+                return false;
+            }
+            float resolution = (float) row.value(0);
+            float sigma = (float) row.value(8);
+            float cc = (float) row.value(10);
+
+            return resolution > 0.3 && resolution < 5.0 && sigma > 1.19 && sigma <= 100 && cc > 50.0;
+        }
+
+        /**
+         * Unlike the high resolution shell, bounds of the cut-off are inclusive and checked on double values.
+         */
+        private boolean isResolutionCutOff(XdsStatisticsRow row) {
+            return row.isPercentage(4) && row.isPercentage(5) && row.isPercentage(6)
+                    && isBetween(row.value(0), 0.3, 5.0)
+                    && isBetween(row.value(8), 1.2, 100.0)
+                    && row.value(10) >= 50.0;
+        }
+
+        private boolean isBetween(double checked, double lowerBound, double upperBound) {
+            return checked >= lowerBound && checked <= upperBound;
         }
     }
 }
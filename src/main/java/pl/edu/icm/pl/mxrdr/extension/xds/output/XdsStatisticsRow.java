@@ -0,0 +1,138 @@
+package pl.edu.icm.pl.mxrdr.extension.xds.output;
+
+/**
+ * Reusable scanner of a single row of XDS statistics table, that is a row with {@value COLUMNS}
+ * whitespace separated columns, like:
+ * <pre>
+ *     2.11  87346   19842  20410  97.2%  21.6%  23.8%  87341   4.11  24.2%  95.2*   -1   0.760  19201
+ * </pre>
+ * Column values are parsed directly from the line into a primitive buffer, which is overwritten
+ * by each scanned row. Characters other than digits, dots and signs are ignored when parsing,
+ * so <code>97.2%</code> is read as <code>97.2</code> and <code>95.2*</code> as <code>95.2</code>.
+ */
+class XdsStatisticsRow {
+
+    static final int COLUMNS = 14;
+
+    /**
+     * Longest mantissa that is still exactly representable as double, longer ones are parsed by the JDK.
+     */
+    private static final int MAX_FAST_PATH_DIGITS = 15;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15 };
+
+    private final int[] starts = new int[COLUMNS];
+    private final int[] ends = new int[COLUMNS];
+    private final double[] values = new double[COLUMNS];
+
+    private CharSequence line;
+
+    // -------------------- LOGIC --------------------
+
+    /**
+     * Tokenizes and parses given line.
+     * @return true if the line has exactly {@value COLUMNS} columns, otherwise the row
+     * should not be read.
+     */
+    boolean scan(CharSequence line) {
+        this.line = line;
+        int length = line.length();
+        int position = 0;
+        int columnCount = 0;
+        while (true) {
+            while (position < length && Character.isWhitespace(line.charAt(position))) {
+                position++;
+            }
+            if (position == length) {
+                break;
+            }
+            if (columnCount == COLUMNS) {
+                return false;
+            }
+            starts[columnCount] = position;
+            while (position < length && !Character.isWhitespace(line.charAt(position))) {
+                position++;
+            }
+            ends[columnCount++] = position;
+        }
+        if (columnCount != COLUMNS) {
+            return false;
+        }
+        for (int column = 0; column < COLUMNS; column++) {
+            values[column] = parse(starts[column], ends[column]);
+        }
+        return true;
+    }
+
+    /**
+     * @return numeric value of the given column, or {@link Double#NaN} if it's not a number.
+     */
+    double value(int column) {
+        return values[column];
+    }
+
+    /**
+     * @return true if the value of given column is followed by <code>%</code>.
+     */
+    boolean isPercentage(int column) {
+        return line.charAt(ends[column] - 1) == '%';
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private double parse(int start, int end) {
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        boolean negative = false;
+        boolean signAllowed = true;
+        for (int i = start; i < end; i++) {
+            char current = line.charAt(i);
+            if (current >= '0' && current <= '9') {
+                if (++digits > MAX_FAST_PATH_DIGITS) {
+                    return parseSlowly(start, end);
+                }
+                mantissa = mantissa * 10 + (current - '0');
+                fractionDigits += fractionDigits >= 0 ? 1 : 0;
+                signAllowed = false;
+            } else if (current == '.') {
+                if (fractionDigits >= 0) {
+                    return Double.NaN;
+                }
+                fractionDigits = 0;
+                signAllowed = false;
+            } else if (current == '+' || current == '-') {
+                if (!signAllowed) {
+                    return Double.NaN;
+                }
+                negative = current == '-';
+                signAllowed = false;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private double parseSlowly(int start, int end) {
+        try {
+            return Double.parseDouble(numericText(start, end));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private String numericText(int start, int end) {
+        StringBuilder text = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char current = line.charAt(i);
+            if ((current >= '0' && current <= '9') || current == '.' || current == '+' || current == '-') {
+                text.append(current);
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,68 @@
+package pl.edu.icm.pl.mxrdr.extension.importer.cbf;
+
+import edu.harvard.iq.dataverse.importer.metadata.ResultField;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CbfFileParserTest {
+
+    private final CbfFileParser parser = new CbfFileParser();
+
+    // -------------------- TESTS --------------------
+
+    @Test
+    public void parse_headerLines() {
+        // given
+        List<String> lines = asList(
+                "_array_data.header_convention \"PILATUS_1.2\"",
+                "# Detector: PILATUS 6M-F, S/N 60-0112-F",
+                "# Silicon sensor, thickness 0.000450 m",
+                "# Count_cutoff 152194 counts",
+                "# Wavelength 0.72932 A",
+                "# Detector_distance 0.19050 m",
+                "# Beam_xy (1221.62, 1257.86) pixels",
+                "# Start_angle 303.5800 deg.",
+                "# Angle_increment 0.1000 deg.",
+                "# Detector_2theta 0.0000 deg.");
+
+        // when
+        List<ResultField> resultFields = parser.parse(lines);
+
+        // then
+        assertEquals(2, resultFields.size());
+        assertEquals("detectorType", resultFields.get(0).getName());
+        assertEquals("PILATUS 6M-F", resultFields.get(0).getValue());
+        assertThat(resultFields.get(1).getChildren())
+                .extracting(ResultField::getName, ResultField::getValue)
+                .containsExactly(
+                        tuple("dataCollectionDetectorThickness", "0.45"),
+                        tuple("dataCollectionDetectorOverload", "152194"),
+                        tuple("dataCollectionWavelength", "0.72932"),
+                        tuple("dataCollectionDetectorDistance", "190.5"),
+                        tuple("dataCollectionOrgX", "1221.62"),
+                        tuple("dataCollectionOrgY", "1257.86"),
+                        tuple("dataCollectionStartingAngle", "303.5800"),
+                        tuple("dataCollectionOscillationStepSize", "0.1000"));
+    }
+
+    @Test
+    public void parse_ignoresKeywordsOutsideOfHeaderLines() {
+        // given
+        List<String> lines = asList(
+                "_diffrn_radiation_wavelength.wavelength 0.9795",
+                "# Wavelength",
+                "#Wavelength 0.72932 A");
+
+        // when
+        List<ResultField> resultFields = parser.parse(lines);
+
+        // then
+        assertThat(resultFields).isEmpty();
+    }
+}
@@ -0,0 +1,61 @@
+package pl.edu.icm.pl.mxrdr.extension.importer.cbf;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CbfHeaderReaderTest {
+
+    private Path cbfFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        cbfFile = Files.createTempFile("test", ".cbf");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(cbfFile);
+    }
+
+    // -------------------- TESTS --------------------
+
+    @Test
+    void shouldReadLinesUpToBinarySection() throws IOException {
+        // given
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        content.write("###CBF: VERSION 1.5\r\n\r\n# Wavelength 0.72932 A\r\n# Start_angle 303.5800 deg.\n".getBytes("windows-1252"));
+        content.write("--CIF-BINARY-FORMAT-SECTION--\r\n# Wavelength 1.0 A\r\n".getBytes("windows-1252"));
+        content.write(new byte[] { 0x0C, 0x1A, 0x04, (byte) 0xD5, '\r', '\n', 0x00, (byte) 0xFF });
+        Files.write(cbfFile, content.toByteArray());
+        List<String> lines = new ArrayList<>();
+
+        // when
+        new CbfHeaderReader(cbfFile).readInto(lines::add);
+
+        // then
+        assertThat(lines).containsExactly("###CBF: VERSION 1.5", "", "# Wavelength 0.72932 A", "# Start_angle 303.5800 deg.");
+    }
+
+    @Test
+    void shouldReadLastLineWithoutTerminator() throws IOException {
+        // given
+        Files.write(cbfFile, "# Detector: PILATUS 6M-F, S/N 60-0112-F\n# Wavelength 0.72932 A".getBytes("windows-1252"));
+        List<String> lines = new ArrayList<>();
+
+        // when
+        new CbfHeaderReader(cbfFile).readInto(lines::add);
+
+        // then
+        assertThat(lines).containsExactly("# Detector: PILATUS 6M-F, S/N 60-0112-F", "# Wavelength 0.72932 A");
+    }
+}
@@ -0,0 +1,102 @@
+package pl.edu.icm.pl.mxrdr.extension.importer.cbf;
+
+import edu.harvard.iq.dataverse.importer.metadata.ResultField;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class CbfSweepParserTest {
+
+    private final CbfSweepParser parser = new CbfSweepParser(new CbfFileParser(), 2);
+
+    private Path tmpDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tmpDir = Files.createTempDirectory("cbf-sweep");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tmpDir.toFile());
+    }
+
+    // -------------------- TESTS --------------------
+
+    @Test
+    void shouldConsolidateFramesFromZip() throws IOException {
+        // given
+        Path zip = tmpDir.resolve("sweep.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            addFrame(out, "sweep_00002.cbf", "303.6800", "0.72932", "0.19050");
+            addFrame(out, "sweep_00001.cbf", "303.5800", "0.72932", "0.19050");
+            addFrame(out, "sweep_00003.cbf", "303.7800", "0.72932", "0.19150");
+            out.putNextEntry(new ZipEntry("readme.txt"));
+            out.write("# Wavelength 1.0 A".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        // when
+        List<ResultField> fields = parser.parse(zip.toFile());
+
+        // then
+        assertThat(fields).extracting(ResultField::getName).containsExactly("detectorType", "dataCollection");
+        assertThat(fields.get(1).getChildren())
+                .extracting(ResultField::getName, ResultField::getValue)
+                .containsExactly(
+                        tuple("dataCollectionWavelength", "0.72932"),
+                        tuple("dataCollectionStartingAngle", "303.5800"),
+                        tuple("dataCollectionOscillationStepSize", "0.1000"),
+                        tuple("dataCollectionNumberOfFrames", "3"));
+    }
+
+    @Test
+    void shouldConsolidateFramesFromDirectory() throws IOException {
+        // given
+        Files.write(tmpDir.resolve("sweep_00001.cbf"), frame("10.0", "0.9", "0.2"));
+        Files.write(tmpDir.resolve("sweep_00002.cbf"), frame("10.1", "1.1", "0.2"));
+
+        // when
+        List<ResultField> fields = parser.parse(tmpDir.toFile());
+
+        // then
+        assertThat(fields.get(1).getChildren())
+                .extracting(ResultField::getName, ResultField::getValue)
+                .containsExactly(
+                        tuple("dataCollectionDetectorDistance", "200.0"),
+                        tuple("dataCollectionStartingAngle", "10.0"),
+                        tuple("dataCollectionOscillationStepSize", "0.1000"),
+                        tuple("dataCollectionNumberOfFrames", "2"));
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private void addFrame(ZipOutputStream out, String name, String startAngle, String wavelength, String distance) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(frame(startAngle, wavelength, distance));
+        out.closeEntry();
+    }
+
+    private byte[] frame(String startAngle, String wavelength, String distance) {
+        return ("###CBF: VERSION 1.5\r\n"
+                + "# Detector: PILATUS 6M-F, S/N 60-0112-F\r\n"
+                + "# Wavelength " + wavelength + " A\r\n"
+                + "# Detector_distance " + distance + " m\r\n"
+                + "# Start_angle " + startAngle + " deg.\r\n"
+                + "# Angle_increment 0.1000 deg.\r\n"
+                + "--CIF-BINARY-FORMAT-SECTION--\r\n"
+                + "# Wavelength 9.9 A\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+}
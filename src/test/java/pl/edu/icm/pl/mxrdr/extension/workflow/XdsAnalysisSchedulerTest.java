@@ -0,0 +1,158 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class XdsAnalysisSchedulerTest {
+
+    private final MovingClock clock = new MovingClock();
+    private final List<String> resumed = new ArrayList<>();
+    private final XdsAnalysisScheduler scheduler = new XdsAnalysisScheduler(resumed::add, clock);
+
+    // -------------------- TESTS --------------------
+
+    @Test
+    void shouldAdmitSmallerDatasetsFirst() {
+        // given
+        boolean firstAdmitted = scheduler.admit(1L, 500, "first", () -> 1);
+        boolean largerAdmitted = scheduler.admit(2L, 300, "larger", () -> 1);
+        boolean smallerAdmitted = scheduler.admit(3L, 100, "smaller", () -> 1);
+
+        // when
+        OptionalInt largerPosition = scheduler.queuePosition(2L);
+        OptionalInt smallerPosition = scheduler.queuePosition(3L);
+        scheduler.release(1L);
+
+        // then
+        assertThat(firstAdmitted).isTrue();
+        assertThat(largerAdmitted).isFalse();
+        assertThat(smallerAdmitted).isFalse();
+        assertThat(largerPosition).hasValue(2);
+        assertThat(smallerPosition).hasValue(1);
+        assertThat(resumed).containsExactly("smaller");
+        assertThat(scheduler.queuePosition(2L)).hasValue(1);
+        assertThat(scheduler.runningAnalyses()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldAdmitStarvingDatasetBeforeSmallerOnes() {
+        // given
+        scheduler.admit(1L, 500, "first", () -> 1);
+        scheduler.admit(2L, 300, "starving", () -> 1);
+        clock.advance(XdsAnalysisScheduler.STARVATION_TIMEOUT.toMillis() + 1);
+        scheduler.admit(3L, 100, "smaller", () -> 1);
+
+        // when
+        scheduler.release(1L);
+
+        // then
+        assertThat(resumed).containsExactly("starving");
+    }
+
+    @Test
+    void shouldAdmitWaitingAnalysisWhenLeaseOfRunningOneExpires() {
+        // given
+        scheduler.admit(1L, 500, "first", () -> 1);
+        scheduler.admit(2L, 300, "second", () -> 1);
+        clock.advance(XdsAnalysisScheduler.LEASE_TIMEOUT.toMillis() + 1);
+
+        // when
+        scheduler.admitWaiting();
+
+        // then
+        assertThat(resumed).containsExactly("second");
+        assertThat(scheduler.runningAnalyses()).isEqualTo(1);
+        assertThat(scheduler.queueDepth()).isEqualTo(0);
+    }
+
+    @Test
+    void shouldResumeAgainAfterBackoffAnalysisWhichFailedToResume() {
+        // given
+        List<String> attempts = new ArrayList<>();
+        XdsAnalysisScheduler scheduler = new XdsAnalysisScheduler(invocationId -> {
+            attempts.add(invocationId);
+            if (attempts.size() <= 5) {
+                throw new IllegalStateException("Workflow not paused yet");
+            }
+        }, clock);
+        scheduler.admit(1L, 500, "first", () -> 1);
+        scheduler.admit(2L, 300, "second", () -> 1);
+        scheduler.release(1L);
+
+        // when
+        scheduler.admitWaiting();
+        int attemptsBeforeBackoff = attempts.size();
+        for (int minutes = 1; minutes <= 16; minutes <<= 1) {
+            clock.advance(XdsAnalysisScheduler.RESUME_BACKOFF.toMillis() * minutes);
+            scheduler.admitWaiting();
+        }
+
+        // then
+        assertThat(attemptsBeforeBackoff).isEqualTo(1);
+        assertThat(attempts).containsExactly("second", "second", "second", "second", "second", "second");
+        assertThat(scheduler.queueDepth()).isEqualTo(0);
+        assertThat(scheduler.runningAnalyses()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRebuildQueueOfPausedAnalysesFromQueueFile() throws IOException {
+        // given
+        Path queueFile = Files.createTempDirectory("xds-test-queue").resolve("queue");
+        XdsAnalysisScheduler scheduler = new XdsAnalysisScheduler(invocationId -> { }, clock, queueFile);
+        scheduler.admit(1L, 500, "first", () -> 1);
+        scheduler.admit(2L, 300, "second", () -> 1);
+        scheduler.admit(3L, 100, "third", () -> 1);
+
+        // when
+        XdsAnalysisScheduler restarted = new XdsAnalysisScheduler(resumed::add, clock, queueFile);
+        restarted.admitWaiting();
+
+        // then
+        assertThat(restarted.queuePosition(1L)).isEmpty();
+        assertThat(restarted.queuePosition(2L)).hasValue(1);
+        assertThat(resumed).containsExactly("third");
+    }
+
+    // -------------------- INNER CLASSES --------------------
+
+    private static class MovingClock extends Clock {
+
+        private volatile long millis = 0;
+
+        void advance(long byMillis) {
+            millis += byMillis;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
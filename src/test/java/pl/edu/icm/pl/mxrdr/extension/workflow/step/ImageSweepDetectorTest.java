@@ -0,0 +1,106 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageSweepDetectorTest {
+
+    private final ImageSweepDetector detector = new ImageSweepDetector();
+
+    @Test
+    void shouldDetectAllSweepsFromTheLargest() {
+        // given
+        List<String> fileNames = new ArrayList<>();
+        for (int frame = 1; frame <= 100; frame++) {
+            fileNames.add(String.format("img/crystal1_%04d.cbf", frame));
+        }
+        for (int frame = 1; frame <= 90; frame++) {
+            fileNames.add(String.format("img/crystal2_%04d.cbf", frame));
+        }
+        fileNames.addAll(asList("img/wedge_001.img", "img/wedge_002.img", "img/sample.tar.gz", "img/single_1.img"));
+        Collections.shuffle(fileNames, new Random(0));
+
+        // when
+        List<ImageSweep> sweeps = detector.detect(fileNames);
+
+        // then
+        assertThat(sweeps).extracting(ImageSweep::toString).containsExactly(
+                "img/crystal1_????.cbf 1-100",
+                "img/crystal2_????.cbf 1-90",
+                "img/wedge_???.img 1-2");
+    }
+
+    @Test
+    void shouldListMissingFrames() {
+        // given
+        List<String> fileNames = asList("ZD-3_Pn7.0001", "ZD-3_Pn7.0002", "ZD-3_Pn7.0005", "ZD-3_Pn7.0006", "ZD-3_Pn7.0008");
+
+        // when
+        List<ImageSweep> sweeps = detector.detect(fileNames);
+
+        // then
+        assertThat(sweeps).hasSize(1);
+        assertThat(sweeps.get(0).getTemplate()).isEqualTo("ZD-3_Pn7.????");
+        assertThat(sweeps.get(0).getFrameCount()).isEqualTo(5);
+        assertThat(sweeps.get(0).toString()).isEqualTo("ZD-3_Pn7.???? 1-8 missing:3-4,7");
+    }
+
+    @Test
+    void shouldTakeMasterFilesAsSweeps() {
+        // given
+        List<String> fileNames = asList("abc_master.h5", "abc_data_000001.h5", "abc_data_000002.h5", "def_master.h5");
+
+        // when
+        List<ImageSweep> sweeps = detector.detect(fileNames);
+
+        // then
+        assertThat(sweeps).extracting(ImageSweep::toString).containsExactly("abc_master.h5", "def_master.h5");
+    }
+
+    @Test
+    void shouldDetectSweepsOfNamesPassedOneByOne() {
+        // given
+        int frames = ImageSweepDetector.MAX_CANDIDATE_TEMPLATES * 2;
+        for (int frame = frames; frame >= 1; frame--) {
+            detector.accept(String.format("img/crystal1_%05d.cbf", frame));
+            detector.accept(String.format("img/crystal2_%05d.cbf", frame));
+        }
+        detector.accept("img/crystal3_00001.cbf");
+
+        // when
+        List<ImageSweep> sweeps = detector.sweeps();
+        List<ImageSweep> templates = detector.templates();
+
+        // then
+        assertThat(sweeps).extracting(ImageSweep::toString).containsExactly(
+                "img/crystal1_?????.cbf 1-2000",
+                "img/crystal2_?????.cbf 1-2000");
+        assertThat(templates).extracting(ImageSweep::toString).containsExactly(
+                "img/crystal1_?????.cbf 1-2000",
+                "img/crystal2_?????.cbf 1-2000",
+                "img/crystal3_?????.cbf 1");
+        assertThat(templates.get(0).getFrameCount()).isEqualTo(frames);
+    }
+
+    @Test
+    void shouldParseFormattedSweeps() {
+        // given
+        List<ImageSweep> sweeps = detector.detect(asList(
+                "img/a_01.cbf", "img/a_02.cbf", "img/a_04.cbf", "img/b_master.h5"));
+
+        // when
+        List<ImageSweep> parsed = ImageSweep.parse(ImageSweep.format(sweeps));
+
+        // then
+        assertThat(parsed).extracting(ImageSweep::toString).containsExactly("img/a_??.cbf 1-4 missing:3", "img/b_master.h5");
+        assertThat(parsed.get(0).getFrameCount()).isEqualTo(3);
+        assertThat(parsed.get(0).getMissingFrames()).containsExactly(new ImageSweep.FrameRange(3, 3));
+    }
+}
@@ -0,0 +1,102 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import com.google.common.collect.ImmutableMap;
+import edu.harvard.iq.dataverse.persistence.datafile.DataFile;
+import edu.harvard.iq.dataverse.persistence.datafile.FileMetadata;
+import edu.harvard.iq.dataverse.workflow.step.WorkflowStepParams;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStepTest.InMemoryStorageSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static edu.harvard.iq.dataverse.workflow.step.FilesystemAccessingWorkflowStep.BASE_WORK_DIR_PARAM_NAME;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.IMAGES_CACHE_SIZE_PARAM_NAME;
+
+class ImagesCacheTest {
+
+    private final InMemoryStorageSource storageSource = new InMemoryStorageSource();
+
+    private Path baseWorkDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        baseWorkDir = Files.createTempDirectory("test");
+        baseWorkDir.toFile().deleteOnExit();
+    }
+
+    @Test
+    void shouldFetchCachedImagesWithoutDownloading() throws Exception {
+        // given
+        List<FileMetadata> metadatas = asList(
+                withChecksum(storageSource.add("frame_001.cbf", "frame 1"), DataFile.ChecksumType.MD5, DigestUtils.md5Hex("frame 1")),
+                withChecksum(storageSource.add("frame_002.cbf", "frame 2"), DataFile.ChecksumType.SHA1, DigestUtils.sha1Hex("frame 2")));
+        XdsImagesFetchingStep step = new XdsImagesFetchingStep(new WorkflowStepParams(ImmutableMap.of(
+                BASE_WORK_DIR_PARAM_NAME, baseWorkDir.toString(),
+                IMAGES_CACHE_SIZE_PARAM_NAME, "1")), null, storageSource);
+        Path firstWorkDir = Files.createDirectory(baseWorkDir.resolve("first"));
+        Path secondWorkDir = Files.createDirectory(baseWorkDir.resolve("second"));
+
+        // when
+        step.fetchImagesInto(metadatas, firstWorkDir);
+        List<ImagesManifest.Entry> images = step.fetchImagesInto(metadatas, secondWorkDir);
+
+        // then
+        assertThat(storageSource.reads()).isEqualTo(2);
+        assertThat(images).extracting(ImagesManifest.Entry::getDigest)
+                .containsExactly(DigestUtils.md5Hex("frame 1"), DigestUtils.md5Hex("frame 2"));
+        assertThat(secondWorkDir.resolve("img/frame_002.cbf")).hasContent("frame 2");
+        assertThat(Files.isSameFile(firstWorkDir.resolve("img/frame_001.cbf"), secondWorkDir.resolve("img/frame_001.cbf"))).isTrue();
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedFiles() throws Exception {
+        // given
+        Path cacheDir = baseWorkDir.resolve("cache");
+        ImagesCache cache = new ImagesCache(cacheDir, 10);
+        FileMetadata older = withChecksum(storageSource.add("frame_001.cbf", "frame 1"), DataFile.ChecksumType.MD5, DigestUtils.md5Hex("frame 1"));
+        FileMetadata newer = withChecksum(storageSource.add("frame_002.cbf", "frame 2"), DataFile.ChecksumType.MD5, DigestUtils.md5Hex("frame 2"));
+        Path olderPath = cache.caching(storageSource).getStorage(older).getLocalPath().get();
+        Files.setLastModifiedTime(olderPath, FileTime.fromMillis(0));
+        Path newerPath = cache.caching(storageSource).getStorage(newer).getLocalPath().get();
+
+        // when
+        cache.evict();
+
+        // then
+        assertThat(olderPath).doesNotExist();
+        assertThat(newerPath).hasContent("frame 2");
+    }
+
+    @Test
+    void shouldNotCacheFileNotMatchingChecksum() throws Exception {
+        // given
+        Path cacheDir = baseWorkDir.resolve("cache");
+        ImagesCache cache = new ImagesCache(cacheDir, 10);
+        FileMetadata corrupted = withChecksum(storageSource.add("frame_001.cbf", "frame 1"), DataFile.ChecksumType.SHA1, DigestUtils.sha1Hex("frame 2"));
+
+        // when & then
+        assertThatThrownBy(() -> cache.caching(storageSource).getStorage(corrupted).getLocalPath())
+                .isInstanceOf(IOException.class);
+        assertThat(cacheDir.resolve("sha1/" + DigestUtils.sha1Hex("frame 2"))).doesNotExist();
+        assertThat(Files.list(cacheDir.resolve("tmp")).count()).isEqualTo(0L);
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private static FileMetadata withChecksum(FileMetadata metadata, DataFile.ChecksumType type, String value) {
+        DataFile dataFile = new DataFile();
+        dataFile.setChecksumType(type);
+        dataFile.setChecksumValue(value);
+        metadata.setDataFile(dataFile);
+        return metadata;
+    }
+}
@@ -9,6 +9,7 @@ import edu.harvard.iq.dataverse.persistence.dataset.Dataset;
 import edu.harvard.iq.dataverse.persistence.dataset.DatasetField;
 import edu.harvard.iq.dataverse.persistence.dataset.DatasetFieldType;
 import edu.harvard.iq.dataverse.persistence.dataset.DatasetFieldTypeRepository;
+import edu.harvard.iq.dataverse.persistence.dataset.DatasetVersion;
 import edu.harvard.iq.dataverse.persistence.dataset.FieldType;
 import edu.harvard.iq.dataverse.persistence.workflow.Workflow;
 import edu.harvard.iq.dataverse.persistence.workflow.WorkflowArtifactRepository;
@@ -21,13 +22,17 @@ import edu.harvard.iq.dataverse.workflow.execution.WorkflowExecutionFacade;
 import edu.harvard.iq.dataverse.workflow.execution.WorkflowExecutionJMSTestBase;
 import edu.harvard.iq.dataverse.workflow.execution.WorkflowExecutionScheduler;
 import edu.harvard.iq.dataverse.workflow.execution.WorkflowExecutionService;
+import edu.harvard.iq.dataverse.workflow.execution.WorkflowExecutionStepContext;
 import edu.harvard.iq.dataverse.workflow.execution.WorkflowExecutionWorker;
 import edu.harvard.iq.dataverse.workflow.internalspi.InternalWorkflowStepSPI;
 import edu.harvard.iq.dataverse.workflow.internalspi.SystemProcessStep;
 import edu.harvard.iq.dataverse.workflow.listener.WorkflowExecutionListener;
 import edu.harvard.iq.dataverse.workflow.step.ClearWorkingDirWorkflowStep;
+import edu.harvard.iq.dataverse.workflow.step.Failure;
+import edu.harvard.iq.dataverse.workflow.step.Success;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStep;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStepParams;
+import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
@@ -37,6 +42,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.edu.icm.pl.mxrdr.extension.importer.MxrdrMetadataField;
 import pl.edu.icm.pl.mxrdr.extension.workflow.MxrdrWorkflowStepSPI;
+import pl.edu.icm.pl.mxrdr.extension.workflow.XdsAnalysisScheduler;
+import pl.edu.icm.pl.mxrdr.extension.workflow.XdsProgressTracker;
 
 import javax.enterprise.inject.Instance;
 import javax.naming.NamingException;
@@ -46,7 +53,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Clock;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Stream;
 
 import static edu.harvard.iq.dataverse.persistence.dataset.DatasetMother.givenDataset;
@@ -69,6 +79,7 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static pl.edu.icm.pl.mxrdr.extension.workflow.MxrdrWorkflowStepSPI.MXRDR_PROVIDER_ID;
+import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsAnalysisAdmittingStep.MAX_ANALYSES_PARAM_NAME;
 import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsInputAdjustingStep.ADJUST_RESOLUTION_PARAM_NAME;
 import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsInputAdjustingStep.JOBS_PARAM_NAME;
 
@@ -80,6 +91,7 @@ public class XdsAnalysisWorkflowTest extends WorkflowExecutionJMSTestBase implem
     static final String INPUT_PATH = "/tmp/xds-images/input";
     static final String OUTPUT_PATH = "/tmp/xds-images/output";
     static final String PROCESSING_PATH = "/tmp/xds-images/processing";
+    static final String ADMITTED_STEP_ID = "test-admitted";
 
     LocalDirStorageSource storageSource = new LocalDirStorageSource(INPUT_PATH);
 
@@ -87,7 +99,10 @@ public class XdsAnalysisWorkflowTest extends WorkflowExecutionJMSTestBase implem
     WorkflowArtifactRepository artifacts = persistence.stub(WorkflowArtifactRepository.class);
 
     WorkflowStepRegistry steps = new WorkflowStepRegistry();
-    MxrdrWorkflowStepSPI mxrdrSteps = new MxrdrWorkflowStepSPI(steps, versionsService, fieldTypes);
+    XdsAnalysisScheduler analysisScheduler = new XdsAnalysisScheduler(
+            invocationId -> executionFacade.resume(invocationId, ""), Clock.systemUTC());
+    MxrdrWorkflowStepSPI mxrdrSteps = new MxrdrWorkflowStepSPI(steps, versionsService, fieldTypes,
+            analysisScheduler, new XdsProgressTracker(), new XdsParallelismPlanner(analysisScheduler));
     Instance<WorkflowExecutionListener> executionListeners = mock(Instance.class);
 
     WorkflowExecutionScheduler scheduler = new WorkflowExecutionScheduler() {{
@@ -100,9 +115,11 @@ public class XdsAnalysisWorkflowTest extends WorkflowExecutionJMSTestBase implem
     WorkflowExecutionWorker worker;
 
     Dataset dataset = givenDataset();
+    List<Long> admittedVersions = new CopyOnWriteArrayList<>();
 
     Workflow workflow = givenWorkflow(
             givenWorkflowStep(MXRDR_PROVIDER_ID, XdsValidateMetadataStep.STEP_ID, emptyMap()),
+            givenWorkflowStep(MXRDR_PROVIDER_ID, XdsAnalysisAdmittingStep.STEP_ID, emptyMap()),
             givenWorkflowStep(MXRDR_PROVIDER_ID, XdsImagesFetchingStep.STEP_ID, ImmutableMap.of(BASE_WORK_DIR_PARAM_NAME, PROCESSING_PATH)),
             givenWorkflowStep(MXRDR_PROVIDER_ID, XdsImagesPatternCalculatingStep.STEP_ID, emptyMap()),
             givenWorkflowStep(INTERNAL_PROVIDER_ID, SystemProcessStep.STEP_ID,
@@ -110,16 +127,14 @@ public class XdsAnalysisWorkflowTest extends WorkflowExecutionJMSTestBase implem
             givenWorkflowStep(MXRDR_PROVIDER_ID, XdsMissingInputFillingStep.STEP_ID, emptyMap()),
             givenWorkflowStep(MXRDR_PROVIDER_ID, XdsInputAdjustingStep.STEP_ID,
                     singletonMap(JOBS_PARAM_NAME, "XYCORR;INIT;COLSPOT;IDXREF")),
-            givenWorkflowStep(INTERNAL_PROVIDER_ID, SystemProcessStep.STEP_ID,
-                    singletonMap(COMMAND_PARAM_NAME, "xds_par")),
+            givenWorkflowStep(MXRDR_PROVIDER_ID, XdsRunningStep.STEP_ID, emptyMap()),
+            givenWorkflowStep(MXRDR_PROVIDER_ID, XdsIndexingCheckingStep.STEP_ID, emptyMap()),
             givenWorkflowStep(MXRDR_PROVIDER_ID, XdsInputAdjustingStep.STEP_ID,
                     singletonMap(JOBS_PARAM_NAME, "DEFPIX;INTEGRATE;CORRECT")),
-            givenWorkflowStep(INTERNAL_PROVIDER_ID, SystemProcessStep.STEP_ID,
-                    singletonMap(COMMAND_PARAM_NAME, "xds_par")),
+            givenWorkflowStep(MXRDR_PROVIDER_ID, XdsRunningStep.STEP_ID, emptyMap()),
             givenWorkflowStep(MXRDR_PROVIDER_ID, XdsInputAdjustingStep.STEP_ID,
                     singletonMap(ADJUST_RESOLUTION_PARAM_NAME, "true")),
-            givenWorkflowStep(INTERNAL_PROVIDER_ID, SystemProcessStep.STEP_ID,
-                    singletonMap(COMMAND_PARAM_NAME, "xds_par")),
+            givenWorkflowStep(MXRDR_PROVIDER_ID, XdsRunningStep.STEP_ID, emptyMap()),
             givenWorkflowStep(MXRDR_PROVIDER_ID, XdsOutputImportingStep.STEP_ID, emptyMap()),
             givenWorkflowStep(INTERNAL_PROVIDER_ID, ClearWorkingDirWorkflowStep.STEP_ID, emptyMap())
     );
@@ -178,16 +193,71 @@ public class XdsAnalysisWorkflowTest extends WorkflowExecutionJMSTestBase implem
                 .collect(joining("\n")));
     }
 
+    @Test
+    void shouldResumeAnalysisPausedUntilAdmitted() throws Exception {
+        // given
+        Workflow admission = givenWorkflow(
+                givenWorkflowStep(MXRDR_PROVIDER_ID, XdsAnalysisAdmittingStep.STEP_ID,
+                        singletonMap(MAX_ANALYSES_PARAM_NAME, "1")),
+                givenWorkflowStep(MXRDR_PROVIDER_ID, ADMITTED_STEP_ID, emptyMap()));
+        workflows.save(admission);
+        Dataset waitingDataset = givenDataset();
+        datasets.save(waitingDataset);
+        datasetVersions.save(waitingDataset.getLatestVersion());
+
+        givenMessageConsumer(worker)
+                .callProducer(() -> {
+                    executionFacade.start(admission, givenWorkflowExecutionContext(dataset.getId(), admission));
+                    executionFacade.start(admission, givenWorkflowExecutionContext(waitingDataset.getId(), admission));
+                })
+                .andAwaitMessages(admission.getSteps().size() + 2, TIMEOUT);
+        List<Long> admittedBeforeRelease = new ArrayList<>(admittedVersions);
+
+        // when
+        givenMessageConsumer(worker)
+                .callProducer(() -> analysisScheduler.release(admittedBeforeRelease.get(0)))
+                .andAwaitMessages(admission.getSteps().size() + 1, TIMEOUT);
+
+        // then
+        assertThat(admittedBeforeRelease).hasSize(1);
+        assertThat(analysisScheduler.queueDepth()).isEqualTo(0);
+        assertThat(admittedVersions).containsExactlyInAnyOrder(
+                dataset.getLatestVersion().getId(), waitingDataset.getLatestVersion().getId());
+    }
+
     @Override
     public WorkflowStep getStep(String stepType, WorkflowStepParams stepParameters) {
         switch (stepType) {
             case XdsImagesFetchingStep.STEP_ID:
                 return new XdsImagesFetchingStep(stepParameters, versionsService, storageSource);
+            case ADMITTED_STEP_ID:
+                return new AdmittedRecordingStep();
             default:
                 return mxrdrSteps.getStep(stepType, stepParameters);
         }
     }
 
+    /**
+     * Records dataset versions of analyses which passed admission.
+     */
+    class AdmittedRecordingStep implements WorkflowStep {
+
+        @Override
+        public WorkflowStepResult run(WorkflowExecutionStepContext context) {
+            versionsService.withDatasetVersion(context, DatasetVersion::getId)
+                    .ifPresent(admittedVersions::add);
+            return new Success();
+        }
+
+        @Override
+        public WorkflowStepResult resume(WorkflowExecutionStepContext context, Map<String, String> internalData, String externalData) {
+            throw new UnsupportedOperationException("This step does not pause");
+        }
+
+        @Override
+        public void rollback(WorkflowExecutionStepContext context, Failure reason) { }
+    }
+
     static class LocalDirStorageSource implements XdsImagesFetchingStep.StorageSource {
 
         private final Path dir;
@@ -1,24 +1,46 @@
 package pl.edu.icm.pl.mxrdr.extension.workflow.step;
 
 import static java.lang.Thread.currentThread;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.fail;
+import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.DECOMPRESS_IMAGES_PARAM_NAME;
+import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.FETCH_PARALLELISM_PARAM_NAME;
 import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.IMAGES_DIR_PARAM_DEFAULT;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import edu.harvard.iq.dataverse.persistence.datafile.FileMetadata;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStepParams;
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.NonClosableInputStream;
 import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.Storage;
 import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.StorageSource;
 
@@ -81,6 +103,201 @@ public class XdsImagesFetchingStepTest {
         }
     }
 
+    @Test
+    void shouldStopFetchFilesConcurrentlyWhenDifferentDuplicate() {
+        // given
+        XdsImagesFetchingStep step = new XdsImagesFetchingStep(
+                new WorkflowStepParams(FETCH_PARALLELISM_PARAM_NAME, "4"), null, new ClasspathStorageSource("xds_different_duplicates/"));
+
+        // when & then
+        assertThatThrownBy(() -> step.fetchInto(filesMetadataFromPath("xds_different_duplicates"), tmpDir))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Duplicate file: duplicated1234.img");
+    }
+
+    @Test
+    void shouldFetchFilesConcurrentlyPreservingOrder() throws Exception {
+        // given
+        InMemoryStorageSource storageSource = new InMemoryStorageSource();
+        List<FileMetadata> metadatas = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            metadatas.add(storageSource.add(String.format("frame_%03d.cbf", i), "frame " + i));
+        }
+        XdsImagesFetchingStep step = new XdsImagesFetchingStep(
+                new WorkflowStepParams(FETCH_PARALLELISM_PARAM_NAME, "4"), null, storageSource);
+
+        // when
+        List<String> fetchedNames = step.fetchInto(metadatas, tmpDir);
+
+        // then
+        assertThat(fetchedNames).containsExactlyElementsOf(metadatas.stream()
+                .map(metadata -> "img/" + metadata.getLabel())
+                .collect(toList()));
+        assertThat(tmpDir.resolve("img/frame_042.cbf")).hasContent("frame 42");
+    }
+
+    @Test
+    void shouldRetryFailedFetch() throws Exception {
+        // given
+        InMemoryStorageSource storageSource = new InMemoryStorageSource();
+        FileMetadata first = storageSource.add("frame_001.cbf", "frame 1");
+        FileMetadata second = storageSource.add("frame_002.cbf", "frame 2");
+        storageSource.failReading("frame_002.cbf", 2);
+        XdsImagesFetchingStep step = new XdsImagesFetchingStep(
+                new WorkflowStepParams(FETCH_PARALLELISM_PARAM_NAME, "2"), null, storageSource);
+
+        // when
+        List<String> fetchedNames = step.fetchInto(asList(first, second), tmpDir);
+
+        // then
+        assertThat(fetchedNames).containsExactly("img/frame_001.cbf", "img/frame_002.cbf");
+        assertThat(tmpDir.resolve("img/frame_002.cbf")).hasContent("frame 2");
+    }
+
+    @Test
+    void shouldFailWhenRetriesExhausted() {
+        // given
+        InMemoryStorageSource storageSource = new InMemoryStorageSource();
+        FileMetadata metadata = storageSource.add("frame_001.cbf", "frame 1");
+        storageSource.failReading("frame_001.cbf", 3);
+        XdsImagesFetchingStep step = new XdsImagesFetchingStep(new WorkflowStepParams(), null, storageSource);
+
+        // when & then
+        assertThatThrownBy(() -> step.fetchInto(singletonList(metadata), tmpDir))
+                .isInstanceOf(IOException.class);
+        assertThat(tmpDir.resolve("img/frame_001.cbf")).doesNotExist();
+    }
+
+    @Test
+    void shouldSkipEqualDuplicateReadingEachFileOnce() throws Exception {
+        // given
+        InMemoryStorageSource storageSource = new InMemoryStorageSource();
+        FileMetadata first = storageSource.add("frame_001.cbf", "frame 1");
+        FileMetadata duplicate = storageSource.add("copy/frame_001.cbf", "frame 1");
+        XdsImagesFetchingStep step = new XdsImagesFetchingStep(new WorkflowStepParams(), null, storageSource);
+
+        // when
+        List<String> fetchedNames = step.fetchInto(asList(first, duplicate), tmpDir);
+
+        // then
+        assertThat(fetchedNames).containsExactly("img/frame_001.cbf");
+        assertThat(storageSource.reads).hasValue(2);
+    }
+
+    @Test
+    void shouldWriteManifestOfFetchedImages() throws Exception {
+        // given
+        InMemoryStorageSource storageSource = new InMemoryStorageSource();
+        List<FileMetadata> metadatas = asList(
+                storageSource.add("frame_001.cbf", "frame 1"),
+                storageSource.add("frame_002.cbf", "frame 22"),
+                storageSource.add("README.txt", "not an image"));
+        XdsImagesFetchingStep step = new XdsImagesFetchingStep(new WorkflowStepParams(), null, storageSource);
+        Path manifest = tmpDir.resolve(ImagesManifest.MANIFEST_FILE_NAME);
+
+        // when
+        String digest = ImagesManifest.write(manifest, step.fetchImagesInto(metadatas, tmpDir));
+        List<ImagesManifest.Entry> entries = new ArrayList<>();
+        ImagesManifest.read(manifest, entries::add);
+
+        // then
+        assertThat(entries).extracting(ImagesManifest.Entry::getName).containsExactly("img/frame_001.cbf", "img/frame_002.cbf");
+        assertThat(entries).extracting(ImagesManifest.Entry::getSize).containsExactly(7L, 8L);
+        assertThat(entries.get(0).getDigest()).isEqualTo(DigestUtils.md5Hex("frame 1"));
+        assertThat(digest).isEqualTo(DigestUtils.md5Hex(
+                "img/frame_001.cbf\t7\t" + DigestUtils.md5Hex("frame 1") + "\n" +
+                "img/frame_002.cbf\t8\t" + DigestUtils.md5Hex("frame 22") + "\n"));
+    }
+
+    @Test
+    void shouldDecompressCompressedImages() throws Exception {
+        // given
+        InMemoryStorageSource storageSource = new InMemoryStorageSource();
+        List<FileMetadata> metadatas = asList(
+                storageSource.add("frame_001.cbf.gz", gzipped("frame 1")),
+                storageSource.add("frame_002.cbf.bz2", bzipped("frame 22")),
+                storageSource.add("sample.tar.gz", gzipped("archive")));
+        XdsImagesFetchingStep step = new XdsImagesFetchingStep(
+                new WorkflowStepParams(DECOMPRESS_IMAGES_PARAM_NAME, "true"), null, storageSource);
+
+        // when
+        List<ImagesManifest.Entry> images = step.fetchImagesInto(metadatas, tmpDir);
+
+        // then
+        assertThat(images).extracting(ImagesManifest.Entry::getName)
+                .containsExactly("img/frame_001.cbf", "img/frame_002.cbf", "img/sample.tar.gz");
+        assertThat(images.get(1).getSize()).isEqualTo(8L);
+        assertThat(images.get(1).getDigest()).isEqualTo(DigestUtils.md5Hex("frame 22"));
+        assertThat(tmpDir.resolve("img/frame_001.cbf")).hasContent("frame 1");
+        assertThat(tmpDir.resolve("img/sample.tar.gz")).hasBinaryContent(gzipped("archive"));
+    }
+
+    @Test
+    void shouldFetchOnlyImagesOfLocalZip() throws Exception {
+        // given
+        Path zipPath = tmpDir.resolve("sweep.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(zipPath))) {
+            for (String entryName : asList("sweep/frame_001.cbf", "sweep/processing.log", "sweep/frame_002.cbf")) {
+                zip.putNextEntry(new ZipEntry(entryName));
+                zip.write(entryName.getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        FileMetadata metadata = new FileMetadata();
+        metadata.setLabel("sweep.zip");
+        XdsImagesFetchingStep step = new XdsImagesFetchingStep(
+                new WorkflowStepParams(FETCH_PARALLELISM_PARAM_NAME, "2"), null, fileMetadata -> new Storage() {
+                    @Override
+                    public InputStream getInputStream() throws IOException {
+                        throw new IOException("Local archive should not be streamed");
+                    }
+
+                    @Override
+                    public Optional<Path> getLocalPath() {
+                        return Optional.of(zipPath);
+                    }
+                });
+
+        // when
+        List<String> fetchedNames = step.fetchInto(singletonList(metadata), tmpDir);
+
+        // then
+        assertThat(fetchedNames).containsExactly("img/frame_001.cbf", "img/frame_002.cbf");
+        assertThat(tmpDir.resolve("img/frame_002.cbf")).hasContent("sweep/frame_002.cbf");
+        assertThat(tmpDir.resolve("img/processing.log")).doesNotExist();
+    }
+
+    @Test
+    void shouldPassBulkReadsWithoutClosing() throws Exception {
+        // given
+        AtomicInteger singleByteReads = new AtomicInteger();
+        AtomicInteger closes = new AtomicInteger();
+        InputStream source = new ByteArrayInputStream(new byte[100_000]) {
+            @Override
+            public synchronized int read() {
+                singleByteReads.incrementAndGet();
+                return super.read();
+            }
+
+            @Override
+            public void close() {
+                closes.incrementAndGet();
+            }
+        };
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        // when
+        try (NonClosableInputStream in = new NonClosableInputStream(source)) {
+            in.skip(1_000);
+            in.transferTo(copy);
+        }
+
+        // then
+        assertThat(copy.size()).isEqualTo(99_000);
+        assertThat(singleByteReads).hasValue(0);
+        assertThat(closes).hasValue(0);
+    }
+
     private List<FileMetadata> filesMetadataFromPath(String dirPath) throws IOException, URISyntaxException {
         return Files.list(Paths.get(currentThread().getContextClassLoader().getResource(dirPath).toURI()))
                     .map(filePath -> {
@@ -91,6 +308,22 @@ public class XdsImagesFetchingStepTest {
                     .collect(toList());
     }
 
+    private static byte[] gzipped(String content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] bzipped(String content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new BZip2CompressorOutputStream(compressed)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return compressed.toByteArray();
+    }
+
     static class ClasspathStorageSource implements StorageSource {
 
         private String directory;
@@ -107,4 +340,53 @@ public class XdsImagesFetchingStepTest {
             };
         }
     }
-}
\ No newline at end of file
+
+    static class InMemoryStorageSource implements StorageSource {
+
+        private final Map<String, byte[]> contents = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> failuresLeft = new ConcurrentHashMap<>();
+        private final AtomicInteger reads = new AtomicInteger();
+
+        FileMetadata add(String fileName, String content) {
+            return add(fileName, content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        FileMetadata add(String fileName, byte[] content) {
+            contents.put(fileName, content);
+            FileMetadata metadata = new FileMetadata();
+            metadata.setLabel(fileName);
+            return metadata;
+        }
+
+        int reads() {
+            return reads.get();
+        }
+
+        /**
+         * Makes given number of consecutive reads of the file fail in the middle of the content.
+         */
+        void failReading(String fileName, int failures) {
+            failuresLeft.put(fileName, new AtomicInteger(failures));
+        }
+
+        @Override
+        public Storage getStorage(FileMetadata metadata) {
+            return () -> {
+                reads.incrementAndGet();
+                byte[] content = contents.get(metadata.getLabel());
+                AtomicInteger failures = failuresLeft.get(metadata.getLabel());
+                if (failures == null || failures.getAndDecrement() <= 0) {
+                    return new ByteArrayInputStream(content);
+                }
+                return new SequenceInputStream(
+                        new ByteArrayInputStream(content, 0, content.length / 2),
+                        new InputStream() {
+                            @Override
+                            public int read() throws IOException {
+                                throw new IOException("Connection reset");
+                            }
+                        });
+            };
+        }
+    }
+}
@@ -7,6 +7,8 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.ArgumentsProvider;
 import org.junit.jupiter.params.provider.ArgumentsSource;
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.ImageSweep.FrameRange;
+import pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesPatternCalculatingStep.ImagesPatternScan;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -14,12 +16,14 @@ import java.util.List;
 import java.util.stream.Stream;
 
 import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.createFile;
 import static java.nio.file.Files.createTempDirectory;
 import static java.nio.file.Files.createTempFile;
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.IMAGES_DIR_PARAM_DEFAULT;
+import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsImagesFetchingStep.IMAGES_MANIFEST_PARAM_NAME;
 
 public class XdsImagesPatternCalculatingStepTest implements ArgumentsProvider {
 
@@ -46,7 +50,8 @@ public class XdsImagesPatternCalculatingStepTest implements ArgumentsProvider {
                                     "ZD-3_Pn7.0501",
                                     "ZD-3_Pn7.0661",
                                     "ZD-3_Pn7.0771",
-                                    "ZD-3_Pn7.0891"), "ZD-3_Pn7.????") 
+                                    "ZD-3_Pn7.0891"), "ZD-3_Pn7.????"),
+                Arguments.of(asList("alpha1.img", "bravo1.img", "alpha2.img", "bravo2.img"), "alpha?.img")
         );
     }
 
@@ -75,6 +80,67 @@ public class XdsImagesPatternCalculatingStepTest implements ArgumentsProvider {
         assertThat(fileNames).allMatch(name -> name.endsWith(".img"));
     }
 
+    @Test
+    void shouldReportFramesFollowingPattern() throws IOException {
+        // given
+        Path tmpDir = givenTempDirWithImages(0);
+        for (int frame = 3; frame <= 12; frame++) {
+            createFile(tmpDir.resolve(String.format("%s/pomiar08_1_%05d.cbf", IMAGES_DIR_PARAM_DEFAULT, frame)));
+        }
+        createFile(tmpDir.resolve(IMAGES_DIR_PARAM_DEFAULT + "/pomiar08_1_snapshot.jpg"));
+        XdsImagesPatternCalculatingStep step = new XdsImagesPatternCalculatingStep(new WorkflowStepParams());
+        ImagesPatternScan scan = new ImagesPatternScan();
+        // when
+        step.scanFileNamesIn(tmpDir, scan);
+        // then
+        assertThat(scan.count()).isEqualTo(11);
+        assertThat(scan.pattern()).isEqualTo(IMAGES_DIR_PARAM_DEFAULT + "/pomiar08_1_?????.cbf");
+        assertThat(scan.patternCount()).isEqualTo(10);
+        assertThat(scan.patternFrames()).contains(new FrameRange(3, 12));
+    }
+
+    @Test
+    void shouldReportFramesOfEachTemplate() throws IOException {
+        // given
+        Path tmpDir = givenTempDirWithImages(0);
+        for (int frame = 3; frame <= 12; frame++) {
+            createFile(tmpDir.resolve(String.format("%s/pomiar08_1_%05d.cbf", IMAGES_DIR_PARAM_DEFAULT, frame)));
+        }
+        for (int frame = 1; frame <= 4; frame++) {
+            createFile(tmpDir.resolve(String.format("%s/pomiar08_2_%05d.cbf", IMAGES_DIR_PARAM_DEFAULT, frame)));
+        }
+        createFile(tmpDir.resolve(IMAGES_DIR_PARAM_DEFAULT + "/pomiar08_1_snapshot.jpg"));
+        XdsImagesPatternCalculatingStep step = new XdsImagesPatternCalculatingStep(new WorkflowStepParams());
+        ImageSweepDetector detector = new ImageSweepDetector();
+        // when
+        step.scanFileNamesIn(tmpDir, detector);
+        // then
+        assertThat(XdsImagesPatternCalculatingStep.formatTemplates(detector.templates())).isEqualTo(
+                IMAGES_DIR_PARAM_DEFAULT + "/pomiar08_1_?????.cbf 10 3-12\n"
+                + IMAGES_DIR_PARAM_DEFAULT + "/pomiar08_2_?????.cbf 4 1-4\n"
+                + IMAGES_DIR_PARAM_DEFAULT + "/pomiar08_?_snapshot.jpg 1 1");
+    }
+
+    @Test
+    void shouldScanNamesFromManifest() throws IOException {
+        // given
+        Path tmpDir = createTempDirectory("test");
+        tmpDir.toFile().deleteOnExit();
+        Path manifest = tmpDir.resolve(ImagesManifest.MANIFEST_FILE_NAME);
+        manifest.toFile().deleteOnExit();
+        ImagesManifest.write(manifest, asList(
+                new ImagesManifest.Entry("img/test1.img", 10, "d41d8cd98f00b204e9800998ecf8427e"),
+                new ImagesManifest.Entry("img/test2.img", 10, "d41d8cd98f00b204e9800998ecf8427e")));
+        XdsImagesPatternCalculatingStep step = new XdsImagesPatternCalculatingStep(
+                new WorkflowStepParams(IMAGES_MANIFEST_PARAM_NAME, ImagesManifest.MANIFEST_FILE_NAME));
+        ImagesPatternScan scan = new ImagesPatternScan();
+        // when
+        step.scanFileNamesIn(tmpDir, scan);
+        // then
+        assertThat(scan.count()).isEqualTo(2);
+        assertThat(scan.pattern()).isEqualTo("img/test?.img");
+    }
+
     private static Path givenTempDirWithImages(int imagesCount) throws IOException {
         Path tmpDir = createTempDirectory("test");
         tmpDir.toFile().deleteOnExit();
@@ -0,0 +1,91 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import edu.harvard.iq.dataverse.workflow.step.WorkflowStepParams;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.edu.icm.pl.mxrdr.extension.xds.output.XdsIndexingReport;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsIndexingCheckingStep.MIN_INDEXED_FRACTION_PARAM_NAME;
+import static pl.edu.icm.pl.mxrdr.extension.xds.output.XdsIndexingReport.INDEXING_OUTPUT_FILE_NAME;
+
+class XdsIndexingCheckingStepTest {
+
+    private Path workDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        workDir = Files.createTempDirectory("xds-test-temp");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.list(workDir).forEach(f -> f.toFile().delete());
+        workDir.toFile().delete();
+    }
+
+    // -------------------- TESTS --------------------
+
+    @Test
+    void shouldReadIndexingReport() throws Exception {
+        // given
+        givenIndexingOutput("xds/" + INDEXING_OUTPUT_FILE_NAME);
+
+        // when
+        XdsIndexingReport report = XdsIndexingReport.read(workDir.resolve(INDEXING_OUTPUT_FILE_NAME));
+
+        // then
+        assertThat(report.getIndexedSpots()).isEqualTo(3457L);
+        assertThat(report.getTotalSpots()).isEqualTo(3713L);
+        assertThat(report.getCompatibleLattices()).containsExactly("aP", "aP", "mP", "oP");
+        assertThat(report.getErrors()).isEmpty();
+    }
+
+    @Test
+    void shouldPassSuccessfulIndexing() throws Exception {
+        // given
+        givenIndexingOutput("xds/" + INDEXING_OUTPUT_FILE_NAME);
+        XdsIndexingCheckingStep step = new XdsIndexingCheckingStep(new WorkflowStepParams());
+
+        // when & then
+        step.runInternal(null, workDir);
+    }
+
+    @Test
+    void shouldFailWithErrorReportedByXds() throws Exception {
+        // given
+        givenIndexingOutput("xds/failed-" + INDEXING_OUTPUT_FILE_NAME);
+        XdsIndexingCheckingStep step = new XdsIndexingCheckingStep(new WorkflowStepParams());
+
+        // when & then
+        assertThatThrownBy(() -> step.runInternal(null, workDir))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Indexing failed: INSUFFICIENT PERCENTAGE (< 50%) OF INDEXED REFLECTIONS");
+    }
+
+    @Test
+    void shouldFailWithTooFewIndexedSpots() throws Exception {
+        // given
+        givenIndexingOutput("xds/" + INDEXING_OUTPUT_FILE_NAME);
+        XdsIndexingCheckingStep step = new XdsIndexingCheckingStep(new WorkflowStepParams(MIN_INDEXED_FRACTION_PARAM_NAME, "0.95"));
+
+        // when & then
+        assertThatThrownBy(() -> step.runInternal(null, workDir))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Indexing failed: only 3457 of 3713 spots indexed, at least 95% required");
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private void givenIndexingOutput(String resource) throws IOException {
+        Files.copy(Paths.get(getClass().getClassLoader().getResource(resource).getPath()),
+                workDir.resolve(INDEXING_OUTPUT_FILE_NAME));
+    }
+}
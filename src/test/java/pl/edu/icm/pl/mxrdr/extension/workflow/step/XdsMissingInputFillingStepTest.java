@@ -16,7 +16,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static edu.harvard.iq.dataverse.persistence.dataset.DatasetMother.givenDataset;
 import static edu.harvard.iq.dataverse.persistence.dataset.DatasetMother.givenDatasetFiled;
@@ -149,6 +151,28 @@ class XdsMissingInputFillingStepTest extends WorkflowExecutionTestBase {
         assertThat(lines.get(7)).isEqualTo("MAXIMUM_NUMBER_OF_JOBS=2");
     }
 
+    @Test
+    @DisplayName("Should add planned parallelism params not given explicitly to XDS.INP file")
+    public void shouldAddPlannedParallelismParams() throws Exception {
+        // given
+        Map<String, String> input = new HashMap<>();
+        input.put(XdsMissingInputFillingStep.XDS_INPUT_ADDITIONAL_PARAMS_PARAM_NAME, "MAXIMUM_NUMBER_OF_PROCESSORS|4");
+        input.put(XdsMissingInputFillingStep.PLAN_PARALLELISM_PARAM_NAME, "true");
+        dataset.getLatestVersion().setId(1L);
+        XdsParallelismPlanner planner = new XdsParallelismPlanner(() -> 64, 16);
+        XdsMissingInputFillingStep step = new XdsMissingInputFillingStep(new WorkflowStepParams(input), versionsService, planner);
+
+        // when
+        step.runInternal(stepContext, workDir);
+
+        // then
+        List<String> lines = Files.readAllLines(workDir.resolve(XDS_INPUT_FILE_NAME));
+
+        assertThat(lines.get(6)).isEqualTo("MAXIMUM_NUMBER_OF_JOBS=4");
+        assertThat(lines.get(7)).isEqualTo("MAXIMUM_NUMBER_OF_PROCESSORS=4");
+        assertThat(planner.runningAnalyses()).isEqualTo(1);
+    }
+
     // -------------------- PRIVATE --------------------
 
     private String getFileFromResources(String name) {
@@ -0,0 +1,70 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import org.junit.jupiter.api.Test;
+import pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputDocument;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsParallelismPlanner.JOBS_KEYWORD;
+import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsParallelismPlanner.PROCESSORS_KEYWORD;
+
+public class XdsParallelismPlannerTest {
+
+    private static final XdsInputDocument INPUT = XdsInputDocument.parse(
+            "DATA_RANGE= 1 900\nOSCILLATION_RANGE= 0.1\n");
+
+    private final XdsParallelismPlanner planner = new XdsParallelismPlanner(() -> 64, 16);
+
+    // -------------------- TESTS --------------------
+
+    @Test
+    void shouldUseAllProcessorsForSingleWorkflow() {
+        // when
+        Map<String, String> plan = planner.plan(1L, INPUT);
+
+        // then
+        assertThat(plan).containsExactly(entry(PROCESSORS_KEYWORD, "16"), entry(JOBS_KEYWORD, "4"));
+    }
+
+    @Test
+    void shouldShareProcessorsBetweenRunningWorkflows() {
+        // given
+        planner.plan(1L, INPUT);
+        planner.plan(2L, INPUT);
+        planner.plan(3L, INPUT);
+        planner.release(2L);
+
+        // when
+        Map<String, String> plan = planner.plan(4L, INPUT);
+
+        // then
+        assertThat(planner.runningAnalyses()).isEqualTo(3);
+        assertThat(plan).containsExactly(entry(PROCESSORS_KEYWORD, "10"), entry(JOBS_KEYWORD, "2"));
+    }
+
+    @Test
+    void shouldShareProcessorsBetweenAnalysisSlots() {
+        // given
+        XdsParallelismPlanner planner = new XdsParallelismPlanner(() -> 64, 16, () -> 4);
+
+        // when
+        Map<String, String> plan = planner.plan(1L, INPUT);
+
+        // then
+        assertThat(plan).containsExactly(entry(PROCESSORS_KEYWORD, "16"), entry(JOBS_KEYWORD, "1"));
+    }
+
+    @Test
+    void shouldNotPlanMoreJobsThanBatches() {
+        // given
+        XdsInputDocument input = XdsInputDocument.parse("DATA_RANGE= 1 100\nOSCILLATION_RANGE= 0.1\nDELPHI= 4\n");
+
+        // when
+        Map<String, String> plan = planner.plan(1L, input);
+
+        // then
+        assertThat(plan).containsExactly(entry(PROCESSORS_KEYWORD, "21"), entry(JOBS_KEYWORD, "3"));
+    }
+}
@@ -0,0 +1,131 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.edu.icm.pl.mxrdr.extension.workflow.XdsProgress;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class XdsProgressWatcherTest {
+
+    private final MovingClock clock = new MovingClock();
+    private final List<XdsProgress> progresses = new CopyOnWriteArrayList<>();
+
+    private Path workDir;
+    private XdsProgressWatcher watcher;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        workDir = Files.createTempDirectory("xds-test-temp");
+        watcher = new XdsProgressWatcher(workDir, Collections.singletonMap("INTEGRATE", 100), clock, progresses::add);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        watcher.close();
+        Files.list(workDir).forEach(f -> f.toFile().delete());
+        workDir.toFile().delete();
+    }
+
+    // -------------------- TESTS --------------------
+
+    @Test
+    void shouldCountBatchAsProcessedWhenNextOneStarts() throws Exception {
+        // given
+        append(" ***** INTEGRATE *****\n PROCESSING OF IMAGES        1 ...      10\n    1   0  1.000\n PROCESSING OF IM");
+        awaitRead();
+        clock.advance(TimeUnit.MINUTES.toMillis(1));
+
+        // when
+        append("AGES       11 ...      20\n   11   0  0.998\n");
+        awaitProgresses(1);
+
+        // then
+        XdsProgress progress = progresses.get(0);
+        assertThat(progress.getStage()).isEqualTo("INTEGRATE");
+        assertThat(progress.getProcessedImages()).isEqualTo(10);
+        assertThat(progress.getTotalImages()).isEqualTo(100);
+        assertThat(progress.getRemainingMinutes()).isEqualTo(9L);
+    }
+
+    @Test
+    void shouldCountLastBatchAsProcessedWhenStageIsDone() throws Exception {
+        // given
+        append(" ***** INTEGRATE *****\n PROCESSING OF IMAGES        1 ...      10\n PROCESSING OF IMAGES       11 ...      20\n");
+        awaitProgresses(1);
+        clock.advance(TimeUnit.MINUTES.toMillis(1));
+
+        // when
+        Files.write(workDir.resolve("INTEGRATE.HKL"), "!END_OF_DATA\n".getBytes(StandardCharsets.US_ASCII));
+        awaitProgresses(2);
+
+        // then
+        XdsProgress progress = progresses.get(1);
+        assertThat(progress.getProcessedImages()).isEqualTo(20);
+        assertThat(progress.getRemainingMinutes()).isEqualTo(4L);
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private void append(String text) throws IOException {
+        Files.write(workDir.resolve("INTEGRATE.LP"), text.getBytes(StandardCharsets.US_ASCII),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void awaitRead() throws InterruptedException {
+        watcher.awaitChanges(10, TimeUnit.SECONDS);
+    }
+
+    private void awaitProgresses(int count) throws InterruptedException {
+        for (int i = 0; i < 10 && progresses.size() < count; i++) {
+            watcher.awaitChanges(1, TimeUnit.SECONDS);
+        }
+        assertThat(progresses.size()).isEqualTo(count);
+    }
+
+    // -------------------- INNER CLASSES --------------------
+
+    private static class MovingClock extends Clock {
+
+        private volatile long millis = 0;
+
+        void advance(long byMillis) {
+            millis += byMillis;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
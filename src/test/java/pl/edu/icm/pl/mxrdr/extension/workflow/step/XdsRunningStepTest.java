@@ -0,0 +1,137 @@
+package pl.edu.icm.pl.mxrdr.extension.workflow.step;
+
+import com.google.common.collect.ImmutableMap;
+import edu.harvard.iq.dataverse.workflow.step.WorkflowStepParams;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+
+import static edu.harvard.iq.dataverse.workflow.step.FilesystemAccessingWorkflowStep.BASE_WORK_DIR_PARAM_NAME;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsRunningStep.COMMAND_PARAM_NAME;
+import static pl.edu.icm.pl.mxrdr.extension.workflow.step.XdsRunningStep.OUTPUTS_CACHE_SIZE_PARAM_NAME;
+import static pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputFileProcessor.XDS_INPUT_FILE_NAME;
+
+class XdsRunningStepTest {
+
+    private Path baseWorkDir;
+    private Path runs;
+    private XdsRunningStep step;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        baseWorkDir = Files.createTempDirectory("test");
+        baseWorkDir.toFile().deleteOnExit();
+        runs = baseWorkDir.resolve("runs");
+        Path script = Files.write(baseWorkDir.resolve("xds.sh"),
+                ("echo run >> " + runs + "\ncp " + XDS_INPUT_FILE_NAME + " CORRECT.LP\n").getBytes(StandardCharsets.UTF_8));
+        step = new XdsRunningStep(new WorkflowStepParams(ImmutableMap.of(
+                BASE_WORK_DIR_PARAM_NAME, baseWorkDir.toString(),
+                COMMAND_PARAM_NAME, "sh " + script,
+                OUTPUTS_CACHE_SIZE_PARAM_NAME, "1")));
+    }
+
+    @Test
+    void shouldRestoreOutputsOfRunWithTheSameInput() throws Exception {
+        // given
+        Path firstWorkDir = givenWorkDir("first", "JOB=CORRECT\nMAXIMUM_NUMBER_OF_PROCESSORS=4\n");
+        Path secondWorkDir = givenWorkDir("second", "JOB=CORRECT\nMAXIMUM_NUMBER_OF_PROCESSORS=8\n");
+
+        // when
+        step.runInternal(null, firstWorkDir);
+        step.runInternal(null, secondWorkDir);
+
+        // then
+        assertThat(Files.readAllLines(runs)).containsExactly("run");
+        assertThat(Files.readAllLines(secondWorkDir.resolve("CORRECT.LP")))
+                .containsExactly("JOB=CORRECT", "MAXIMUM_NUMBER_OF_PROCESSORS=4");
+    }
+
+    @Test
+    void shouldRunAgainWithDifferentJobs() throws Exception {
+        // given
+        Path firstWorkDir = givenWorkDir("first", "JOB=XYCORR INIT\n");
+        Path secondWorkDir = givenWorkDir("second", "JOB=CORRECT\n");
+
+        // when
+        step.runInternal(null, firstWorkDir);
+        step.runInternal(null, secondWorkDir);
+
+        // then
+        assertThat(step.inputDigest(firstWorkDir)).isNotEqualTo(step.inputDigest(secondWorkDir));
+        assertThat(Files.readAllLines(runs)).containsExactly("run", "run");
+        assertThat(Files.readAllLines(secondWorkDir.resolve("CORRECT.LP"))).containsExactly("JOB=CORRECT");
+    }
+
+    @Test
+    void shouldIdentifyOutputsOfPrecedingRunsByDigestOfTheRun() throws Exception {
+        // given
+        Path workDir = givenWorkDir("first", "JOB=CORRECT\n");
+        step.runInternal(null, workDir);
+        Path output = workDir.resolve("CORRECT.LP");
+        FileTime outputModified = Files.getLastModifiedTime(output);
+        String digest = step.inputDigest(workDir).get();
+
+        // when
+        Files.write(output, "JOB=COLSPOT\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(output, outputModified);
+        String digestOfUnchangedState = step.inputDigest(workDir).get();
+        Files.write(output, "JOB=XYCORR INIT\n".getBytes(StandardCharsets.UTF_8));
+        String digestOfChangedOutput = step.inputDigest(workDir).get();
+
+        // then
+        assertThat(digestOfUnchangedState).isEqualTo(digest);
+        assertThat(digestOfChangedOutput).isNotEqualTo(digest);
+    }
+
+    @Test
+    void shouldRunAgainWithUpgradedProgram() throws Exception {
+        // given
+        Path program = Files.write(baseWorkDir.resolve("xds"),
+                ("#!/bin/sh\necho run >> " + runs + "\n").getBytes(StandardCharsets.UTF_8));
+        program.toFile().setExecutable(true);
+        XdsRunningStep step = new XdsRunningStep(new WorkflowStepParams(ImmutableMap.of(
+                BASE_WORK_DIR_PARAM_NAME, baseWorkDir.toString(),
+                COMMAND_PARAM_NAME, program.toString(),
+                OUTPUTS_CACHE_SIZE_PARAM_NAME, "1")));
+        Path firstWorkDir = givenWorkDir("first", "JOB=CORRECT\n");
+        Path secondWorkDir = givenWorkDir("second", "JOB=CORRECT\n");
+        step.runInternal(null, firstWorkDir);
+
+        // when
+        Files.write(program, ("#!/bin/sh\necho upgraded run >> " + runs + "\n").getBytes(StandardCharsets.UTF_8));
+        step.runInternal(null, secondWorkDir);
+
+        // then
+        assertThat(Files.readAllLines(runs)).containsExactly("run", "upgraded run");
+    }
+
+    @Test
+    void shouldRunWhenOutputsCacheIsUnusable() throws Exception {
+        // given
+        Files.write(baseWorkDir.resolve(XdsRunningStep.OUTPUTS_CACHE_DIR_PARAM_DEFAULT), new byte[0]);
+        Path workDir = givenWorkDir("first", "JOB=CORRECT\n");
+
+        // when
+        step.runInternal(null, workDir);
+
+        // then
+        assertThat(Files.readAllLines(runs)).containsExactly("run");
+        assertThat(Files.readAllLines(workDir.resolve("CORRECT.LP"))).containsExactly("JOB=CORRECT");
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private Path givenWorkDir(String name, String input) throws IOException {
+        Path workDir = Files.createDirectory(baseWorkDir.resolve(name));
+        ImagesManifest.write(workDir.resolve(ImagesManifest.MANIFEST_FILE_NAME), Collections.emptyList());
+        Files.write(workDir.resolve(XDS_INPUT_FILE_NAME), input.getBytes(StandardCharsets.UTF_8));
+        return workDir;
+    }
+}
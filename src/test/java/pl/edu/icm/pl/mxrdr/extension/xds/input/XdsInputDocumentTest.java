@@ -0,0 +1,77 @@
+package pl.edu.icm.pl.mxrdr.extension.xds.input;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputFileProcessor.XDS_INPUT_FILE_CHARSET;
+
+public class XdsInputDocumentTest {
+
+    // -------------------- TESTS --------------------
+
+    @Test
+    void shouldFormatUnchangedDocumentAsParsed() throws Exception {
+        // given
+        String text = new String(Files.readAllBytes(resource("xds/xar-test-XDS.INP")), XDS_INPUT_FILE_CHARSET);
+
+        // when
+        XdsInputDocument document = XdsInputDocument.parse(text);
+
+        // then
+        assertThat(document.format()).isEqualTo(text);
+    }
+
+    @Test
+    void shouldReadParametersSharingLines() throws Exception {
+        // when
+        XdsInputDocument document = XdsInputDocument.read(resource("xds/xar-test-XDS.INP"), XDS_INPUT_FILE_CHARSET);
+
+        // then
+        assertThat(document.getValue("DETECTOR")).hasValue("PILATUS");
+        assertThat(document.getInteger("OVERLOAD")).hasValue(1048500);
+        assertThat(document.getValue("CLUSTER_RADIUS")).hasValue("2");
+        assertThat(document.getNumber("ORGY")).hasValue(1250.0);
+        assertThat(document.getNumbers("UNIT_CELL_CONSTANTS")).containsExactly(70.0, 80.0, 90.0, 90.0, 90.0, 90.0);
+        assertThat(document.getValue("SPOT_RANGE")).hasValue("");
+        assertThat(document.getValue("REFERENCE_DATA_SET")).isEmpty();
+        assertThat(document.getValue("FRIEDEL'S_LAW")).hasValue("FALSE");
+    }
+
+    @Test
+    void shouldReplaceValuesKeepingCommentsAndOtherParameters() {
+        // given
+        XdsInputDocument document = XdsInputDocument.parse(
+                "JOB= XYCORR INIT ! all jobs\r\n" +
+                "ORGX= XXX ORGY= XXX  ! values from frame header\r\n" +
+                "! ORGX= XXX\r\n" +
+                "STARTING_ANGLE= 0");
+
+        // when
+        boolean jobReplaced = document.replaceValue("JOB", "CORRECT");
+        boolean orgYFilled = document.fillUndefinedValue("ORGY", "1250.00");
+        boolean angleFilled = document.fillUndefinedValue("STARTING_ANGLE", "25.0");
+        document.addParameter("MAXIMUM_NUMBER_OF_JOBS", "2");
+
+        // then
+        assertThat(jobReplaced).isTrue();
+        assertThat(orgYFilled).isTrue();
+        assertThat(angleFilled).isFalse();
+        assertThat(document.isUndefined("ORGX")).isTrue();
+        assertThat(document.format()).isEqualTo(
+                "JOB=CORRECT ! all jobs\r\n" +
+                "ORGX= XXX ORGY=1250.00  ! values from frame header\r\n" +
+                "! ORGX= XXX\r\n" +
+                "STARTING_ANGLE= 0\r\n" +
+                "MAXIMUM_NUMBER_OF_JOBS=2\r\n");
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private Path resource(String name) throws Exception {
+        return Paths.get(getClass().getClassLoader().getResource(name).toURI());
+    }
+}
@@ -0,0 +1,100 @@
+package pl.edu.icm.pl.mxrdr.extension.xds.input;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputFileProcessor.XDS_INPUT_FILE_CHARSET;
+import static pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputFileProcessor.XDS_INPUT_FILE_NAME;
+
+public class XdsInputFileProcessorTest {
+
+    private static final String INPUT = "JOB= XYCORR INIT\nORGX= XXX ORGY= XXX\n";
+
+    private Path workDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        workDir = Files.createTempDirectory("xds-test-temp");
+        Files.write(workDir.resolve(XDS_INPUT_FILE_NAME), INPUT.getBytes(XDS_INPUT_FILE_CHARSET));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(workDir.toFile());
+    }
+
+    // -------------------- TESTS --------------------
+
+    @Test
+    void shouldKeepGivenNumberOfRecentBackups() throws Exception {
+        // when
+        for (long millis = 1; millis <= 3; millis++) {
+            String jobs = "JOBS" + millis;
+            processor(millis)
+                    .withDocumentProcessor(document -> document.replaceValue("JOB", jobs))
+                    .withBackups(2)
+                    .process();
+        }
+
+        // then
+        assertThat(workDirFiles()).containsExactly(XDS_INPUT_FILE_NAME, XDS_INPUT_FILE_NAME + ".2", XDS_INPUT_FILE_NAME + ".3");
+        assertThat(workDir.resolve(XDS_INPUT_FILE_NAME)).hasContent("JOB=JOBS3\nORGX= XXX ORGY= XXX\n");
+        assertThat(workDir.resolve(XDS_INPUT_FILE_NAME + ".3")).hasContent("JOB=JOBS2\nORGX= XXX ORGY= XXX\n");
+    }
+
+    @Test
+    void shouldReplaceFileWithoutBackups() throws Exception {
+        // when
+        processor(1)
+                .withNewParam("MAXIMUM_NUMBER_OF_JOBS", "2")
+                .withBackups(0)
+                .process();
+
+        // then
+        assertThat(workDirFiles()).containsExactly(XDS_INPUT_FILE_NAME);
+        assertThat(workDir.resolve(XDS_INPUT_FILE_NAME)).hasContent(INPUT + "MAXIMUM_NUMBER_OF_JOBS=2\n");
+    }
+
+    @Test
+    void shouldListChangesOfDryRunLeavingFileUnchanged() throws Exception {
+        // when
+        List<String> diff = processor(1)
+                .withDocumentProcessor(document -> document.fillUndefinedValue("ORGY", "1250.00"))
+                .withNewParam("MAXIMUM_NUMBER_OF_JOBS", "2")
+                .dryRun();
+
+        // then
+        assertThat(diff).containsExactly(
+                "@@ 2 @@", "-ORGX= XXX ORGY= XXX", "+ORGX= XXX ORGY=1250.00",
+                "@@ 3 @@", "+MAXIMUM_NUMBER_OF_JOBS=2");
+        assertThat(workDirFiles()).containsExactly(XDS_INPUT_FILE_NAME);
+        assertThat(workDir.resolve(XDS_INPUT_FILE_NAME)).hasContent(INPUT);
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private XdsInputFileProcessor processor(long millis) {
+        return new XdsInputFileProcessor(workDir, XDS_INPUT_FILE_CHARSET, Clock.fixed(Instant.ofEpochMilli(millis), ZoneOffset.UTC));
+    }
+
+    private List<String> workDirFiles() throws IOException {
+        try (Stream<Path> files = Files.list(workDir)) {
+            return files.map(file -> file.getFileName().toString())
+                    .sorted()
+                    .collect(toList());
+        }
+    }
+}
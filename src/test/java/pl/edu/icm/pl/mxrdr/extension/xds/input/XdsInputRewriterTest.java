@@ -0,0 +1,51 @@
+package pl.edu.icm.pl.mxrdr.extension.xds.input;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputParameterProcessor.replaceAnyValue;
+import static pl.edu.icm.pl.mxrdr.extension.xds.input.XdsInputParameterProcessor.replaceUndefinedValue;
+
+public class XdsInputRewriterTest {
+
+    // -------------------- TESTS --------------------
+
+    @Test
+    void shouldPassLinesToProcessorsOfTheirParameters() throws Exception {
+        // given
+        AtomicInteger resolutionSupplies = new AtomicInteger();
+        XdsInputRewriter rewriter = new XdsInputRewriter(asList(
+                replaceAnyValue("JOB", () -> "CORRECT").matchingWholeLine(),
+                replaceUndefinedValue("ORGX", () -> "1224.00"),
+                replaceUndefinedValue("ORGY", () -> "1250.00"),
+                replaceAnyValue("INCLUDE_RESOLUTION_RANGE", () -> {
+                    resolutionSupplies.incrementAndGet();
+                    return "50 2.1";
+                }).matchingWholeLine()));
+
+        // when & then
+        assertThat(rewriter.rewrite("JOB= XYCORR INIT COLSPOT IDXREF")).isEqualTo("JOB=CORRECT");
+        assertThat(rewriter.rewrite("ORGX= XXX ORGY= XXX ! values form frame header"))
+                .isEqualTo("ORGX=1224.00 ORGY=1250.00 ! values form frame header");
+        assertThat(rewriter.rewrite("MAXIMUM_NUMBER_OF_JOBS= 4")).isEqualTo("MAXIMUM_NUMBER_OF_JOBS= 4");
+        assertThat(rewriter.rewrite("!INCLUDE_RESOLUTION_RANGE= 50 0")).isEqualTo("!INCLUDE_RESOLUTION_RANGE= 50 0");
+        assertThat(resolutionSupplies).hasValue(0);
+        assertThat(rewriter.rewrite("INCLUDE_RESOLUTION_RANGE= 50 0")).isEqualTo("INCLUDE_RESOLUTION_RANGE=50 2.1");
+        assertThat(resolutionSupplies).hasValue(1);
+    }
+
+    @Test
+    void shouldPassAllLinesToProcessorsWithoutKeywords() throws Exception {
+        // given
+        XdsInputRewriter rewriter = new XdsInputRewriter(asList(
+                line -> line.trim(),
+                replaceAnyValue("JOB", () -> "CORRECT").matchingWholeLine()));
+
+        // when & then
+        assertThat(rewriter.rewrite("  JOB= XYCORR")).isEqualTo("JOB=CORRECT");
+        assertThat(rewriter.rewrite("  ! comment ")).isEqualTo("! comment");
+    }
+}
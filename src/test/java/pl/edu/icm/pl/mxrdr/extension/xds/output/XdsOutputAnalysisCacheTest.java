@@ -0,0 +1,71 @@
+package pl.edu.icm.pl.mxrdr.extension.xds.output;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.edu.icm.pl.mxrdr.extension.xds.output.XdsOutputFileParser.XDS_OUTPUT_FILE_NAME;
+
+public class XdsOutputAnalysisCacheTest {
+
+    private final XdsOutputAnalysisCache cache = new XdsOutputAnalysisCache();
+
+    private Path workDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        workDir = Files.createTempDirectory("xds-test-temp");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(workDir.toFile());
+    }
+
+    // -------------------- TESTS --------------------
+
+    @Test
+    void shouldAnalyseUnchangedFileOnce() throws Exception {
+        // given
+        Path outputFile = copyToWorkDir("xds/xar-test-CORRECT.LP");
+
+        // when
+        XdsOutputAnalysis analysis = cache.analysisOf(outputFile);
+        XdsOutputAnalysis reusedAnalysis = cache.analysisOf(workDir.resolve(".").resolve(XDS_OUTPUT_FILE_NAME));
+
+        // then
+        assertThat(analysis.getResolutionCutOff()).isEqualTo("2.11");
+        assertThat(analysis.getResultFields()).isNotEmpty();
+        assertThat(reusedAnalysis).isSameAs(analysis);
+    }
+
+    @Test
+    void shouldAnalyseFileAgainWhenChanged() throws Exception {
+        // given
+        Path outputFile = copyToWorkDir("xds/xar-test-CORRECT.LP");
+        XdsOutputAnalysis analysis = cache.analysisOf(outputFile);
+
+        // when
+        copyToWorkDir("xds/no-replace-resolution-range-CORRECT.LP");
+        XdsOutputAnalysis changedAnalysis = cache.analysisOf(outputFile);
+
+        // then
+        assertThat(changedAnalysis).isNotSameAs(analysis);
+        assertThat(changedAnalysis.getResolutionCutOff()).isEmpty();
+    }
+
+    // -------------------- PRIVATE --------------------
+
+    private Path copyToWorkDir(String resource) throws Exception {
+        Path source = Paths.get(getClass().getClassLoader().getResource(resource).toURI());
+        return Files.copy(source, workDir.resolve(XDS_OUTPUT_FILE_NAME), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,62 @@
+package pl.edu.icm.pl.mxrdr.extension.xds.output;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class XdsStatisticsRowTest {
+
+    private final XdsStatisticsRow row = new XdsStatisticsRow();
+
+    // -------------------- TESTS --------------------
+
+    @Test
+    void shouldScanStatisticsRow() {
+        // when
+        boolean scanned = row.scan("    2.11    87346   19842     20410       97.2%      21.6%     23.8%    87341    4.11     24.2%    95.2*   -11    0.760   19201");
+
+        // then
+        assertThat(scanned).isTrue();
+        assertThat(row.value(0)).isEqualTo(2.11);
+        assertThat(row.value(1)).isEqualTo(87346);
+        assertThat(row.value(4)).isEqualTo(97.2);
+        assertThat(row.isPercentage(4)).isTrue();
+        assertThat(row.value(8)).isEqualTo(4.11);
+        assertThat(row.isPercentage(8)).isFalse();
+        assertThat(row.value(10)).isEqualTo(95.2);
+        assertThat(row.value(11)).isEqualTo(-11);
+        assertThat(row.value(12)).isEqualTo(0.76);
+    }
+
+    @Test
+    void shouldRejectRowsWithOtherNumberOfColumns() {
+        // when & then
+        assertThat(row.scan("   50.00       8.14       6.07     7.24      8.13     80.9     5.17     99.3     7.88")).isFalse();
+        assertThat(row.scan("2.11 87346 19842 20410 97.2% 21.6% 23.8% 87341 4.11 24.2% 95.2* -11 0.760 19201 1")).isFalse();
+        assertThat(row.scan("")).isFalse();
+    }
+
+    @Test
+    void shouldReturnNaNForNonNumericColumns() {
+        // when
+        row.scan("LIMIT OBSERVED UNIQUE POSSIBLE OF-DATA observed expected Corr 1.2.3 - . +1- x 0");
+
+        // then
+        assertThat(row.value(0)).isNaN();
+        assertThat(row.value(8)).isNaN();
+        assertThat(row.value(9)).isNaN();
+        assertThat(row.value(10)).isNaN();
+        assertThat(row.value(11)).isNaN();
+        assertThat(row.value(12)).isNaN();
+        assertThat(row.value(13)).isZero();
+    }
+
+    @Test
+    void shouldParseLongValues() {
+        // when
+        row.scan("0.12345678901234567 1 1 1 1 1 1 1 1 1 1 1 1 1");
+
+        // then
+        assertThat(row.value(0)).isEqualTo(0.12345678901234567);
+    }
+}